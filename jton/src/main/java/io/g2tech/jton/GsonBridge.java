@@ -0,0 +1,311 @@
+package io.g2tech.jton;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.internal.LinkedTreeMap;
+
+import io.g2tech.jton.internal.bind.JtonTypeAdapter;
+
+/**
+ * Converts between Gson and JTON trees, see {@link JtonElement#wrap(JsonElement)}
+ * and {@link JtonElement#asGson()}.
+ * <p>
+ * A wrapped Gson object or array becomes a {@link JtonObject} stored as a
+ * {@link GsonMap}, or a {@link JtonArray} stored as a {@link GsonList}. These
+ * read members and elements from the Gson tree and wrap each child when it is
+ * first read. The first change copies only that one level into an ordinary
+ * map or list; its children stay wrapped.
+ * <p>
+ * Gson's element classes cannot be extended, so the other direction has no
+ * views. A wrapped tree that has not been changed through JTON returns its
+ * Gson tree; any other tree is copied with the streaming
+ * {@link JtonTypeAdapter#JTON_ELEMENT} adapter.
+ */
+final class GsonBridge {
+  private GsonBridge() {
+    throw new UnsupportedOperationException();
+  }
+
+  static JtonElement wrap(JsonElement json) {
+    if (json == null || json.isJsonNull()) {
+      return JtonNull.INSTANCE;
+    } else if (json.isJsonObject()) {
+      return new JtonObject(new GsonMap(json.getAsJsonObject()));
+    } else if (json.isJsonArray()) {
+      return new JtonArray(new GsonList(json.getAsJsonArray()));
+    }
+    JsonPrimitive primitive = json.getAsJsonPrimitive();
+    if (primitive.isBoolean()) {
+      return new JtonPrimitive(primitive.getAsBoolean());
+    } else if (primitive.isNumber()) {
+      return new JtonPrimitive(primitive.getAsNumber());
+    }
+    return new JtonPrimitive(primitive.getAsString());
+  }
+
+  static JtonElement copyOf(JsonElement json) {
+    return JtonTypeAdapter.JTON_ELEMENT.fromJsonTree(json);
+  }
+
+  static JsonElement toGson(JtonElement element) {
+    JsonElement source = element.isFrozen() ? null : source(element);
+    return source != null ? source : JtonTypeAdapter.JTON_ELEMENT.toJsonTree(element);
+  }
+
+  /**
+   * Returns the Gson tree {@code element} was wrapped from, or {@code null} if
+   * it was not wrapped or has been changed since.
+   */
+  private static JsonElement source(JtonElement element) {
+    if (element instanceof JtonObject) {
+      Map<String, JtonElement> members = ((JtonObject) element).members();
+      return members instanceof GsonMap ? ((GsonMap) members).source() : null;
+    } else if (element instanceof JtonArray) {
+      List<JtonElement> elements = ((JtonArray) element).elements();
+      return elements instanceof GsonList ? ((GsonList) elements).source() : null;
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if {@code element} still matches the part of the Gson tree it
+   * was wrapped from.
+   */
+  private static boolean isUnchanged(JtonElement element) {
+    return element instanceof JtonPrimitive || element.isJtonNull() || !element.isFrozen() && source(element) != null;
+  }
+
+  /**
+   * The members of a wrapped {@link JsonObject}.
+   */
+  private static final class GsonMap extends AbstractMap<String, JtonElement> {
+    private JsonObject json;
+    private Map<String, JtonElement> wrapped = new ConcurrentHashMap<>();
+    private Map<String, JtonElement> copy;
+
+    GsonMap(JsonObject json) {
+      this.json = json;
+    }
+
+    JsonObject source() {
+      if (copy != null) {
+        return null;
+      }
+      for (JtonElement value : wrapped.values()) {
+        if (!isUnchanged(value)) {
+          return null;
+        }
+      }
+      return json;
+    }
+
+    private Map<String, JtonElement> copy() {
+      if (copy == null) {
+        Map<String, JtonElement> map = new LinkedTreeMap<>();
+        for (Map.Entry<String, JsonElement> e : json.entrySet()) {
+          map.put(e.getKey(), get(e.getKey()));
+        }
+        copy = map;
+        json = null;
+        wrapped = null;
+      }
+      return copy;
+    }
+
+    @Override
+    public JtonElement get(Object key) {
+      if (copy != null) {
+        return copy.get(key);
+      } else if (!(key instanceof String) || !json.has((String) key)) {
+        return null;
+      }
+      return wrapped.computeIfAbsent((String) key, k -> wrap(json.get(k)));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return copy != null ? copy.containsKey(key) : key instanceof String && json.has((String) key);
+    }
+
+    @Override
+    public int size() {
+      return copy != null ? copy.size() : json.size();
+    }
+
+    @Override
+    public JtonElement put(String key, JtonElement value) {
+      return copy().put(key, value);
+    }
+
+    @Override
+    public JtonElement remove(Object key) {
+      return copy().remove(key);
+    }
+
+    @Override
+    public void clear() {
+      copy().clear();
+    }
+
+    @Override
+    public Set<Map.Entry<String, JtonElement>> entrySet() {
+      if (copy != null) {
+        return copy.entrySet();
+      }
+      return new AbstractSet<Map.Entry<String, JtonElement>>() {
+        @Override
+        public int size() {
+          return GsonMap.this.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, JtonElement>> iterator() {
+          Iterator<String> keys = json.keySet().iterator();
+          return new Iterator<Map.Entry<String, JtonElement>>() {
+            private String last;
+
+            @Override
+            public boolean hasNext() {
+              return keys.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, JtonElement> next() {
+              last = keys.next();
+              return new SimpleEntry<String, JtonElement>(last, get(last)) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public JtonElement setValue(JtonElement value) {
+                  put(getKey(), value);
+                  return super.setValue(value);
+                }
+              };
+            }
+
+            @Override
+            public void remove() {
+              if (last == null) {
+                throw new IllegalStateException();
+              }
+              GsonMap.this.remove(last);
+              last = null;
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /**
+   * The elements of a wrapped {@link JsonArray}.
+   */
+  private static final class GsonList extends AbstractList<JtonElement> implements RandomAccess {
+    private JsonArray json;
+    private volatile AtomicReferenceArray<JtonElement> wrapped;
+    private List<JtonElement> copy;
+
+    GsonList(JsonArray json) {
+      this.json = json;
+      this.wrapped = new AtomicReferenceArray<>(json.size());
+    }
+
+    JsonArray source() {
+      if (copy != null) {
+        return null;
+      }
+      for (int i = 0; i < wrapped.length(); i++) {
+        JtonElement element = wrapped.get(i);
+        if (element != null && !isUnchanged(element)) {
+          return null;
+        }
+      }
+      return json;
+    }
+
+    private List<JtonElement> copy() {
+      if (copy == null) {
+        List<JtonElement> list = new ArrayList<>(json.size());
+        for (int i = 0; i < json.size(); i++) {
+          list.add(get(i));
+        }
+        copy = list;
+        json = null;
+        wrapped = null;
+      }
+      return copy;
+    }
+
+    @Override
+    public JtonElement get(int index) {
+      if (copy != null) {
+        return copy.get(index);
+      }
+      AtomicReferenceArray<JtonElement> cache = wrapped;
+      if (index >= cache.length() && index < json.size()) {
+        cache = grow();
+      }
+      JtonElement element = cache.get(index);
+      if (element == null) {
+        element = wrap(json.get(index));
+        if (!cache.compareAndSet(index, null, element)) {
+          element = cache.get(index);
+        }
+      }
+      return element;
+    }
+
+    /**
+     * Extends the cache of wrapped elements to elements added to the Gson
+     * array since the view was created.
+     */
+    private synchronized AtomicReferenceArray<JtonElement> grow() {
+      AtomicReferenceArray<JtonElement> cache = wrapped;
+      if (cache.length() < json.size()) {
+        AtomicReferenceArray<JtonElement> grown = new AtomicReferenceArray<>(json.size());
+        for (int i = 0; i < cache.length(); i++) {
+          grown.set(i, cache.get(i));
+        }
+        wrapped = cache = grown;
+      }
+      return cache;
+    }
+
+    @Override
+    public int size() {
+      return copy != null ? copy.size() : json.size();
+    }
+
+    @Override
+    public JtonElement set(int index, JtonElement element) {
+      return copy().set(index, element);
+    }
+
+    @Override
+    public void add(int index, JtonElement element) {
+      copy().add(index, element);
+      modCount++;
+    }
+
+    @Override
+    public JtonElement remove(int index) {
+      JtonElement removed = copy().remove(index);
+      modCount++;
+      return removed;
+    }
+  }
+}
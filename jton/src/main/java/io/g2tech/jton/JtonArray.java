@@ -5,8 +5,11 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
+import io.g2tech.jton.internal.Instrumentation;
+
 /**
  * A class representing an array type in Jton. An array is a list of
  * {@link JtonElement}s each of which can be of a different type. This is an
@@ -15,6 +18,8 @@ import java.util.stream.Stream;
  */
 public final class JtonArray extends JtonElement implements Iterable<JtonElement> {
   private final List<JtonElement> elements;
+  private int modCount;
+  private boolean frozen;
 
   /**
    * Creates an empty JsonArray.
@@ -27,15 +32,51 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
     elements = new ArrayList<JtonElement>(capacity);
   }
 
+  /**
+   * Creates an array holding {@code elements}, which it takes over.
+   */
+  JtonArray(List<JtonElement> elements) {
+    this.elements = elements;
+  }
+
+  /**
+   * Creates an array holding {@code elements}, frozen without freezing them if
+   * {@code frozen} is set.
+   */
+  JtonArray(List<JtonElement> elements, boolean frozen) {
+    this.elements = elements;
+    this.frozen = frozen;
+  }
+
+  /**
+   * Returns the list holding the elements of this array.
+   */
+  List<JtonElement> elements() {
+    return elements;
+  }
+
   /**
    * Creates a deep copy of this element and all its children
    */
   @Override
   public JtonArray deepCopy() {
+    if (Instrumentation.isCopyMeasured()) {
+      return Instrumentation.copy(this::copyTree);
+    }
+    return copyTree();
+  }
+
+  @Override
+  public JtonArray deepCopyParallel(ForkJoinPool pool) {
+    return (JtonArray) super.deepCopyParallel(pool);
+  }
+
+  @Override
+  JtonArray copyTree() {
     if (!elements.isEmpty()) {
       JtonArray result = new JtonArray(elements.size());
       for (JtonElement element : elements) {
-        result.add(element.deepCopy());
+        result.add(element.copyTree());
       }
       return result;
     }
@@ -49,7 +90,9 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    * @return
    */
   public JtonArray add(Boolean bool) {
+    checkMutable();
     elements.add(bool == null ? JtonNull.INSTANCE : new JtonPrimitive(bool));
+    modCount++;
     return this;
   }
 
@@ -60,7 +103,9 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    * @return
    */
   public JtonArray add(Character character) {
+    checkMutable();
     elements.add(character == null ? JtonNull.INSTANCE : new JtonPrimitive(character));
+    modCount++;
     return this;
   }
 
@@ -71,7 +116,9 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    * @return
    */
   public JtonArray add(Number number) {
+    checkMutable();
     elements.add(number == null ? JtonNull.INSTANCE : new JtonPrimitive(number));
+    modCount++;
     return this;
   }
 
@@ -82,7 +129,9 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    * @return
    */
   public JtonArray add(String string) {
+    checkMutable();
     elements.add(string == null ? JtonNull.INSTANCE : new JtonPrimitive(string));
+    modCount++;
     return this;
   }
 
@@ -93,7 +142,9 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    * @return
    */
   public JtonArray add(JtonElement element) {
+    checkMutable();
     elements.add(element == null ? JtonNull.INSTANCE : element);
+    modCount++;
     return this;
   }
 
@@ -104,7 +155,9 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    * @return
    */
   public JtonArray addAll(JtonArray array) {
+    checkMutable();
     elements.addAll(array.elements);
+    modCount++;
     return this;
   }
 
@@ -119,7 +172,10 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    *                                   bounds
    */
   public JtonElement set(int index, JtonElement element) {
-    return elements.set(index, element == null ? JtonNull.INSTANCE : element);
+    checkMutable();
+    JtonElement previous = elements.set(index, element == null ? JtonNull.INSTANCE : element);
+    modCount++;
+    return previous;
   }
 
   /**
@@ -130,7 +186,12 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    * @return true if this array contained the specified element, false otherwise
    */
   public boolean remove(JtonElement element) {
-    return elements.remove(element);
+    checkMutable();
+    if (elements.remove(element)) {
+      modCount++;
+      return true;
+    }
+    return false;
   }
 
   /**
@@ -144,7 +205,10 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    *                                   bounds
    */
   public JtonElement remove(int index) {
-    return elements.remove(index);
+    checkMutable();
+    JtonElement removed = elements.remove(index);
+    modCount++;
+    return removed;
   }
 
   /**
@@ -174,7 +238,25 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
    * @return an iterator to navigate the elements of the array.
    */
   public Iterator<JtonElement> iterator() {
-    return elements.iterator();
+    Iterator<JtonElement> iterator = elements.iterator();
+    return new Iterator<JtonElement>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public JtonElement next() {
+        return iterator.next();
+      }
+
+      @Override
+      public void remove() {
+        checkMutable();
+        iterator.remove();
+        modCount++;
+      }
+    };
   }
 
   /**
@@ -407,6 +489,60 @@ public final class JtonArray extends JtonElement implements Iterable<JtonElement
     return elements.parallelStream();
   }
 
+  /**
+   * Freezes this array and all its elements. Frozen arrays throw
+   * {@link UnsupportedOperationException} on every change, so they can be
+   * shared safely; {@link #deepCopy()} returns a mutable copy.
+   *
+   * @return this array.
+   */
+  @Override
+  public JtonArray freeze() {
+    if (!frozen) {
+      for (JtonElement element : elements) {
+        element.freeze();
+      }
+      frozen = true;
+    }
+    return this;
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  @Override
+  public JtonArray stripTransients() {
+    for (JtonElement element : elements) {
+      if (isTransient(element)) {
+        checkMutable();
+      } else {
+        element.stripTransients();
+      }
+    }
+    if (elements.removeIf(JtonElement::isTransient)) {
+      modCount++;
+    }
+    return this;
+  }
+
+  private void checkMutable() {
+    if (frozen) {
+      throw new UnsupportedOperationException("frozen");
+    }
+  }
+
+  /**
+   * Returns the number of times this array has been changed through
+   * {@code add}, {@code addAll}, {@code set} or {@code remove}, including
+   * removal through its iterator. Changes to the elements themselves are not
+   * counted.
+   */
+  int modCount() {
+    return modCount;
+  }
+
   @Override
   public boolean equals(Object o) {
     return (o == this) || (o instanceof JtonArray && ((JtonArray) o).elements.equals(elements));
@@ -0,0 +1,465 @@
+package io.g2tech.jton;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+
+import io.g2tech.jton.internal.Murmur3;
+
+/**
+ * A bounded cache of parse trees. Inputs seen before return the same
+ * {@linkplain JtonElement#freeze() frozen} tree instead of being parsed again;
+ * callers that need to change the result take a {@link JtonElement#deepCopy()}.
+ * <p>
+ * Strings and byte arrays are keyed by a 128-bit MurmurHash3 of their content.
+ * Files are keyed by path and revalidated against their size and modification
+ * time on every lookup; a cache created with a reload executor also re-reads
+ * changed files in the background and drops deleted ones.
+ * <p>
+ * The cache holds at most a given total weight, the
+ * {@linkplain JtonElement#estimateRetainedSize() estimated retained size} of
+ * the trees. It evicts the least recently used entries, but when full only
+ * admits a new tree if it has been requested more often than the entry it
+ * would evict, as counted by a small frequency sketch (TinyLFU admission).
+ * Concurrent misses for the same input may parse it more than once.
+ */
+public final class JtonCache implements AutoCloseable {
+  private static final long SEED = 0x6a746f6eL;
+
+  private final long maximumWeight;
+  private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final FrequencySketch sketch = new FrequencySketch();
+  private final ScheduledFuture<?> reloader;
+  private long weight;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+  private final LongAdder reloads = new LongAdder();
+
+  /**
+   * Creates a cache holding trees with a total estimated size of at most
+   * {@code maximumWeight} bytes.
+   */
+  public JtonCache(long maximumWeight) {
+    this(maximumWeight, null, null);
+  }
+
+  /**
+   * Creates a cache that also checks the cached files every {@code interval}
+   * on {@code executor} and reloads the ones that changed.
+   *
+   * @param maximumWeight the maximum total estimated size in bytes.
+   * @param executor      the executor running the reloads, or {@code null}.
+   * @param interval      the time between two checks.
+   */
+  public JtonCache(long maximumWeight, ScheduledExecutorService executor, Duration interval) {
+    if (maximumWeight < 0) {
+      throw new IllegalArgumentException("maximumWeight < 0");
+    }
+    this.maximumWeight = maximumWeight;
+    if (executor != null) {
+      long nanos = interval.toNanos();
+      this.reloader = executor.scheduleWithFixedDelay(this::reloadFiles, nanos, nanos, TimeUnit.NANOSECONDS);
+    } else {
+      this.reloader = null;
+    }
+  }
+
+  /**
+   * Returns the frozen parse tree of {@code json}.
+   *
+   * @throws JsonParseException if {@code json} is not valid JSON.
+   */
+  public JtonElement parse(String json) {
+    Murmur3 hash = new Murmur3(SEED).update(json);
+    ContentKey key = new ContentKey(hash.hash128(), json.length(), false);
+    return get(key, () -> JtonParser.parse(json));
+  }
+
+  /**
+   * Returns the frozen parse tree of {@code json}, decoded and decompressed as
+   * by {@link JtonParser#parse(byte[])}.
+   *
+   * @throws JsonParseException if {@code json} is not valid JSON.
+   */
+  public JtonElement parse(byte[] json) {
+    Murmur3 hash = new Murmur3(SEED).update(json);
+    ContentKey key = new ContentKey(hash.hash128(), json.length, true);
+    return get(key, () -> JtonParser.parse(json));
+  }
+
+  /**
+   * Returns the frozen parse tree of the file at {@code file},
+   * reading it again if its size or modification time changed.
+   *
+   * @throws JsonIOException    if the file cannot be read.
+   * @throws JsonParseException if the file is not valid JSON.
+   */
+  public JtonElement parse(Path file) {
+    Path path = file.toAbsolutePath().normalize();
+    BasicFileAttributes attributes = attributes(path);
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(path);
+    }
+    sketch.increment(path.hashCode());
+    if (entry != null && entry.matches(attributes)) {
+      hits.increment();
+      return entry.value;
+    }
+    misses.increment();
+    return put(path, loadFile(path, attributes)).value;
+  }
+
+  private static BasicFileAttributes attributes(Path path) {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  private static Entry loadFile(Path path, BasicFileAttributes attributes) {
+    JtonElement value;
+    try (InputStream in = Files.newInputStream(path)) {
+      value = JtonParser.parse(in);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+    return new Entry(value.freeze(), attributes.size(), attributes.lastModifiedTime().toMillis());
+  }
+
+  private JtonElement get(ContentKey key, Supplier<JtonElement> parser) {
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(key);
+    }
+    sketch.increment(key.hashCode());
+    if (entry != null) {
+      hits.increment();
+      return entry.value;
+    }
+    misses.increment();
+    return put(key, new Entry(parser.get().freeze(), -1, -1)).value;
+  }
+
+  /**
+   * Caches {@code entry} unless an equal key was cached meanwhile, in which
+   * case the cached entry wins.
+   */
+  private Entry put(Object key, Entry entry) {
+    Entry cached = admit(key, entry);
+    return cached != null ? cached : entry;
+  }
+
+  /**
+   * Caches {@code entry} if the admission policy lets it in, replacing a stale
+   * entry for the same key only once it has been admitted.
+   *
+   * @return the cached entry, or {@code null} if {@code entry} was rejected.
+   */
+  private Entry admit(Object key, Entry entry) {
+    if (entry.weight > maximumWeight) {
+      rejections.increment();
+      return null;
+    }
+    List<Object> evicted = new ArrayList<>();
+    synchronized (this) {
+      Entry existing = entries.get(key);
+      if (existing != null && (existing.size < 0 || existing.sameFile(entry))) {
+        return existing;
+      }
+      int frequency = sketch.frequency(key.hashCode());
+      Iterator<Map.Entry<Object, Entry>> lru = entries.entrySet().iterator();
+      long needed = weight - (existing != null ? existing.weight : 0) + entry.weight - maximumWeight;
+      long freed = 0;
+      while (freed < needed && lru.hasNext()) {
+        Map.Entry<Object, Entry> victim = lru.next();
+        if (victim.getKey().equals(key)) {
+          continue;
+        }
+        if (sketch.frequency(victim.getKey().hashCode()) > frequency) {
+          rejections.increment();
+          return null;
+        }
+        evicted.add(victim.getKey());
+        freed += victim.getValue().weight;
+      }
+      for (Object k : evicted) {
+        weight -= entries.remove(k).weight;
+      }
+      if (existing != null) {
+        weight -= entries.remove(key).weight;
+      }
+      entries.put(key, entry);
+      weight += entry.weight;
+    }
+    evictions.add(evicted.size());
+    return entry;
+  }
+
+  private void reloadFiles() {
+    List<Map.Entry<Object, Entry>> files = new ArrayList<>();
+    synchronized (this) {
+      for (Map.Entry<Object, Entry> e : entries.entrySet()) {
+        if (e.getKey() instanceof Path) {
+          files.add(e);
+        }
+      }
+    }
+    for (Map.Entry<Object, Entry> e : files) {
+      Path path = (Path) e.getKey();
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (!e.getValue().matches(attributes)) {
+          Entry loaded = loadFile(path, attributes);
+          if (admit(path, loaded) == loaded) {
+            reloads.increment();
+          }
+        }
+      } catch (NoSuchFileException ex) {
+        invalidate(path);
+      } catch (IOException | JsonParseException ex) {
+        // keep the last good tree until the file is readable again
+      }
+    }
+  }
+
+  /**
+   * Removes the cached tree of {@code file}.
+   */
+  public synchronized void invalidate(Path file) {
+    Entry entry = entries.remove(file.toAbsolutePath().normalize());
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+  }
+
+  /**
+   * Removes all cached trees.
+   */
+  public synchronized void invalidateAll() {
+    entries.clear();
+    weight = 0;
+  }
+
+  /**
+   * Returns a snapshot of the cache statistics.
+   */
+  public Stats stats() {
+    synchronized (this) {
+      return new Stats(hits.sum(), misses.sum(), evictions.sum(), rejections.sum(), reloads.sum(), entries.size(),
+          weight);
+    }
+  }
+
+  /**
+   * Stops the background reloading, if any. Cached trees stay available.
+   */
+  @Override
+  public void close() {
+    if (reloader != null) {
+      reloader.cancel(false);
+    }
+  }
+
+  /**
+   * Statistics of a {@link JtonCache}.
+   */
+  public static final class Stats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long rejectionCount;
+    private final long reloadCount;
+    private final int size;
+    private final long weight;
+
+    Stats(long hitCount, long missCount, long evictionCount, long rejectionCount, long reloadCount, int size,
+        long weight) {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.rejectionCount = rejectionCount;
+      this.reloadCount = reloadCount;
+      this.size = size;
+      this.weight = weight;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     */
+    public long getHitCount() {
+      return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that had to parse.
+     */
+    public long getMissCount() {
+      return missCount;
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     */
+    public double getHitRate() {
+      long total = hitCount + missCount;
+      return total == 0 ? 1.0 : (double) hitCount / total;
+    }
+
+    /**
+     * Returns the number of trees evicted to make room for others.
+     */
+    public long getEvictionCount() {
+      return evictionCount;
+    }
+
+    /**
+     * Returns the number of parsed trees not cached because they were too
+     * large or requested less often than the trees they would replace.
+     */
+    public long getRejectionCount() {
+      return rejectionCount;
+    }
+
+    /**
+     * Returns the number of files reloaded in the background.
+     */
+    public long getReloadCount() {
+      return reloadCount;
+    }
+
+    /**
+     * Returns the number of cached trees.
+     */
+    public int getSize() {
+      return size;
+    }
+
+    /**
+     * Returns the total estimated size of the cached trees in bytes.
+     */
+    public long getWeight() {
+      return weight;
+    }
+
+    @Override
+    public String toString() {
+      return "JtonCache.Stats[hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+          + ", rejections=" + rejectionCount + ", reloads=" + reloadCount + ", size=" + size + ", weight=" + weight
+          + "]";
+    }
+  }
+
+  private static final class Entry {
+    final JtonElement value;
+    final long weight;
+    final long size;
+    final long modified;
+
+    Entry(JtonElement value, long size, long modified) {
+      this.value = value;
+      this.weight = value.estimateRetainedSize();
+      this.size = size;
+      this.modified = modified;
+    }
+
+    boolean matches(BasicFileAttributes attributes) {
+      return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+    }
+
+    boolean sameFile(Entry other) {
+      return size == other.size && modified == other.modified;
+    }
+  }
+
+  private static final class ContentKey {
+    private final long h1;
+    private final long h2;
+    private final int length;
+    private final boolean bytes;
+
+    ContentKey(long[] hash, int length, boolean bytes) {
+      this.h1 = hash[0];
+      this.h2 = hash[1];
+      this.length = length;
+      this.bytes = bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ContentKey)) {
+        return false;
+      }
+      ContentKey other = (ContentKey) o;
+      return h1 == other.h1 && h2 == other.h2 && length == other.length && bytes == other.bytes;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (h1 ^ h1 >>> 32);
+    }
+  }
+
+  /**
+   * A count-min sketch of 4-bit counters over key hashes. All counters are
+   * halved once the number of increments reaches ten times the width, so old
+   * popularity fades.
+   */
+  private static final class FrequencySketch {
+    private static final int WIDTH = 1 << 14;
+    private static final int[] SEEDS = { 0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f };
+
+    private final byte[] counters = new byte[WIDTH * SEEDS.length];
+    private int additions;
+
+    synchronized void increment(int hash) {
+      for (int i = 0; i < SEEDS.length; i++) {
+        int index = index(hash, i);
+        if (counters[index] < 15) {
+          counters[index]++;
+        }
+      }
+      if (++additions == 10 * WIDTH) {
+        for (int i = 0; i < counters.length; i++) {
+          counters[i] >>= 1;
+        }
+        additions /= 2;
+      }
+    }
+
+    synchronized int frequency(int hash) {
+      int min = 15;
+      for (int i = 0; i < SEEDS.length; i++) {
+        min = Math.min(min, counters[index(hash, i)]);
+      }
+      return min;
+    }
+
+    private static int index(int hash, int row) {
+      int h = hash * SEEDS[row];
+      h ^= h >>> 17;
+      return row * WIDTH + (h & (WIDTH - 1));
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package io.g2tech.jton;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+
+import io.g2tech.jton.internal.Instrumentation;
+import io.g2tech.jton.internal.JtonOutput;
+import io.g2tech.jton.internal.JtonPrinter;
+import io.g2tech.jton.internal.TextParser;
+
+/**
+ * Reusable parser and writer state for hot paths handling many small
+ * documents. {@link JtonParser#parse(String)} sets up a new Gson reader with its
+ * buffers for every document, which dominates the cost of parsing a few hundred
+ * bytes. A context keeps a char buffer, the parser's container stack and an
+ * output buffer, so in steady state parsing allocates only the resulting tree
+ * and writing only the resulting string.
+ * <p>
+ * Results are the same as those of {@link JtonParser#parse(String)} and
+ * {@link JtonElement#toString(String)}. Documents are parsed with a strict
+ * parser working on a reused char buffer first; input it rejects, including
+ * the lenient extensions, is parsed again with the regular parser, which
+ * reports the same error.
+ * <p>
+ * A context is not thread-safe. Either own one per worker, or use
+ * {@link #forCurrentThread()}. Buffers grown by a large document are released
+ * after it, so a context never retains more than about
+ * {@value #MAX_RETAINED} bytes.
+ */
+public final class JtonContext {
+  private static final int MAX_RETAINED = 64 * 1024;
+  private static final ThreadLocal<JtonContext> CONTEXTS = ThreadLocal.withInitial(JtonContext::new);
+
+  private TextParser parser;
+  private char[] chars = new char[1024];
+  private final StringBuilder text = new StringBuilder(256);
+  private final JtonOutput out = JtonOutput.of(text);
+  private boolean busy;
+
+  /**
+   * Returns the context of the current thread.
+   */
+  public static JtonContext forCurrentThread() {
+    return CONTEXTS.get();
+  }
+
+  /**
+   * Parses {@code json} like {@link JtonParser#parse(String)}.
+   *
+   * @throws JsonParseException if {@code json} is not valid JSON.
+   */
+  public JtonElement parse(String json) {
+    if (Instrumentation.isParseMeasured()) {
+      return Instrumentation.parse(() -> read(json), json::length);
+    }
+    return read(json);
+  }
+
+  /**
+   * Parses {@code length} bytes of JSON starting at {@code offset} like
+   * {@link JtonParser#parse(byte[], int, int)}, including the detection of
+   * compression and encoding.
+   *
+   * @throws JsonParseException if the input is not valid JSON.
+   */
+  public JtonElement parse(byte[] json, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > json.length - length) {
+      throw new IndexOutOfBoundsException();
+    } else if (busy) {
+      return JtonParser.parse(json, offset, length);
+    }
+    if (Instrumentation.isParseMeasured()) {
+      return Instrumentation.parse(() -> read(json, offset, length), () -> length);
+    }
+    return read(json, offset, length);
+  }
+
+  private JtonElement read(String json) {
+    int length = json.length();
+    if (busy) {
+      return JtonParser.read(new StringReader(json));
+    }
+    if (chars.length < length) {
+      chars = new char[Math.max(length, chars.length * 2)];
+    }
+    json.getChars(0, length, chars, 0);
+    try {
+      busy = true;
+      return parser().parse(chars, 0, length);
+    } catch (JsonSyntaxException e) {
+      return JtonParser.read(new StringReader(json));
+    } finally {
+      release(length);
+    }
+  }
+
+  private JtonElement read(byte[] json, int offset, int length) {
+    int decoded = decode(json, offset, length);
+    if (decoded < 0) {
+      return JtonParser.read(json, offset, length);
+    }
+    try {
+      busy = true;
+      return parser().parse(chars, 0, decoded);
+    } catch (JsonSyntaxException e) {
+      return JtonParser.read(json, offset, length);
+    } finally {
+      release(length);
+    }
+  }
+
+  private TextParser parser() {
+    TextParser p = parser;
+    if (p == null) {
+      parser = p = new TextParser();
+    }
+    return p;
+  }
+
+  private void release(int length) {
+    busy = false;
+    if (length > MAX_RETAINED) {
+      reset();
+    }
+  }
+
+  /**
+   * Decodes UTF-8 input into {@link #chars}, skipping a byte order mark.
+   *
+   * @return the number of chars, or -1 for input the regular parser handles:
+   *         compressed, UTF-16 or malformed input, and input with zero bytes.
+   */
+  private int decode(byte[] b, int offset, int length) {
+    int i = offset;
+    int end = offset + length;
+    if (length >= 3 && b[i] == (byte) 0xef && b[i + 1] == (byte) 0xbb && b[i + 2] == (byte) 0xbf) {
+      i += 3;
+    }
+    if (chars.length < length) {
+      chars = new char[Math.max(length, chars.length * 2)];
+    }
+    char[] c = chars;
+    int n = 0;
+    while (i < end) {
+      int b0 = b[i];
+      if (b0 > 0) {
+        c[n++] = (char) b0;
+        i++;
+      } else if ((b0 & 0xe0) == 0xc0 && i + 1 < end && (b[i + 1] & 0xc0) == 0x80) {
+        int cp = (b0 & 0x1f) << 6 | (b[i + 1] & 0x3f);
+        if (cp < 0x80) {
+          return -1;
+        }
+        c[n++] = (char) cp;
+        i += 2;
+      } else if ((b0 & 0xf0) == 0xe0 && i + 2 < end && (b[i + 1] & 0xc0) == 0x80 && (b[i + 2] & 0xc0) == 0x80) {
+        int cp = (b0 & 0x0f) << 12 | (b[i + 1] & 0x3f) << 6 | (b[i + 2] & 0x3f);
+        if (cp < 0x800 || Character.isSurrogate((char) cp)) {
+          return -1;
+        }
+        c[n++] = (char) cp;
+        i += 3;
+      } else if ((b0 & 0xf8) == 0xf0 && i + 3 < end && (b[i + 1] & 0xc0) == 0x80 && (b[i + 2] & 0xc0) == 0x80
+          && (b[i + 3] & 0xc0) == 0x80) {
+        int cp = (b0 & 0x07) << 18 | (b[i + 1] & 0x3f) << 12 | (b[i + 2] & 0x3f) << 6 | (b[i + 3] & 0x3f);
+        if (cp < 0x10000 || cp > Character.MAX_CODE_POINT) {
+          return -1;
+        }
+        c[n++] = Character.highSurrogate(cp);
+        c[n++] = Character.lowSurrogate(cp);
+        i += 4;
+      } else {
+        return -1;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Returns {@code element} as a compact string, like
+   * {@link JtonElement#toString()}.
+   *
+   * @throws IllegalStateException if {@code element} is a transient primitive.
+   */
+  public String toString(JtonElement element) {
+    return toString(element, null);
+  }
+
+  /**
+   * Returns {@code element} as a string, like
+   * {@link JtonElement#toString(String)}.
+   *
+   * @throws IllegalStateException if {@code element} is a transient primitive.
+   */
+  public String toString(JtonElement element, String indent) {
+    if (busy) {
+      return element.toString(indent);
+    }
+    JtonPrinter printer = JtonPrinter.of(indent);
+    busy = true;
+    try {
+      text.setLength(0);
+      if (Instrumentation.isSerializeMeasured()) {
+        Instrumentation.serialize(() -> {
+          printer.print(element, out, 0);
+          return text.length();
+        });
+      } else {
+        printer.print(element, out, 0);
+      }
+      return text.toString();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    } finally {
+      release(text.length());
+    }
+  }
+
+  /**
+   * Releases buffers grown beyond their initial size. Called automatically after
+   * documents larger than {@value #MAX_RETAINED} bytes.
+   */
+  public void reset() {
+    if (busy) {
+      throw new IllegalStateException("JtonContext is in use");
+    }
+    parser = null;
+    if (chars.length > 1024) {
+      chars = new char[1024];
+    }
+    text.setLength(0);
+    text.trimToSize();
+    text.ensureCapacity(256);
+  }
+}
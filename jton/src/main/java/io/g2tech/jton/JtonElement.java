@@ -1,14 +1,19 @@
 package io.g2tech.jton;
 
-import com.google.gson.stream.JsonWriter;
+import com.google.gson.JsonElement;
 
-import io.g2tech.jton.internal.Streams;
+import io.g2tech.jton.internal.CanonicalPrinter;
+import io.g2tech.jton.internal.Instrumentation;
+import io.g2tech.jton.internal.JtonPrinter;
+import io.g2tech.jton.internal.Visitors;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Optional;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A class representing an element of Jton. It could either be a
@@ -22,6 +27,88 @@ public abstract class JtonElement {
    */
   public abstract JtonElement deepCopy();
 
+  /**
+   * Returns a deep copy of this element without measuring it. Containers copy
+   * their children through this method so that only the outermost
+   * {@link #deepCopy()} is reported to the metrics listener.
+   */
+  JtonElement copyTree() {
+    return deepCopy();
+  }
+
+  /**
+   * Returns a deep copy of this element like {@link #deepCopy()}, copying large
+   * arrays and objects in parallel. Small trees are copied sequentially.
+   *
+   * @param pool the pool to copy in, or {@code null} for the
+   *             {@linkplain ForkJoinPool#commonPool() common pool}.
+   */
+  public JtonElement deepCopyParallel(ForkJoinPool pool) {
+    if (Instrumentation.isCopyMeasured()) {
+      return Instrumentation.copy(() -> JtonParallel.deepCopy(this, pool));
+    }
+    return JtonParallel.deepCopy(this, pool);
+  }
+
+  /**
+   * Returns {@link #equals(Object)}, comparing large arrays and objects in
+   * parallel. Small trees are compared sequentially.
+   *
+   * @param pool the pool to compare in, or {@code null} for the
+   *             {@linkplain ForkJoinPool#commonPool() common pool}.
+   */
+  public boolean equalsParallel(Object o, ForkJoinPool pool) {
+    return JtonParallel.equals(this, o, pool);
+  }
+
+  /**
+   * Returns {@link #hashCode()}, hashing large arrays and objects in parallel.
+   * Small trees are hashed sequentially.
+   *
+   * @param pool the pool to hash in, or {@code null} for the
+   *             {@linkplain ForkJoinPool#commonPool() common pool}.
+   */
+  public int hashCodeParallel(ForkJoinPool pool) {
+    return JtonParallel.hashCode(this, pool);
+  }
+
+  /**
+   * Makes this element and all its children unmodifiable, so the tree can be
+   * shared between threads and callers. Primitives and nulls are immutable
+   * already.
+   *
+   * @return this element.
+   */
+  public JtonElement freeze() {
+    return this;
+  }
+
+  /**
+   * Returns true if this element cannot be changed.
+   *
+   * @see #freeze()
+   */
+  public boolean isFrozen() {
+    return true;
+  }
+
+  /**
+   * Removes all transient primitives from the arrays and objects in this tree,
+   * together with their member names, for example before the tree is cached or
+   * shared. Primitives and nulls are left as they are.
+   *
+   * @throws UnsupportedOperationException if a frozen container holds a
+   *                                       transient primitive.
+   * @return this element.
+   */
+  public JtonElement stripTransients() {
+    return this;
+  }
+
+  static boolean isTransient(JtonElement element) {
+    return element instanceof JtonPrimitive && ((JtonPrimitive) element).isJtonTransient();
+  }
+
   /**
    * provides check for verifying if this element is an array or not.
    *
@@ -297,6 +384,119 @@ public abstract class JtonElement {
     throw new UnsupportedOperationException(getClass().getSimpleName());
   }
 
+  /**
+   * Applies an RFC 7386 JSON merge patch to this element. Neither this element
+   * nor {@code patch} is modified.
+   *
+   * @param patch the merge patch.
+   * @return the patched element, sharing unchanged subtrees with this element
+   *         and {@code patch}.
+   * @see JtonMerger#mergePatch(JtonElement, JtonElement)
+   */
+  public JtonElement mergePatch(JtonElement patch) {
+    return JtonMerger.mergePatch(this, patch);
+  }
+
+  /**
+   * Deep merges {@code overlay} into this element with
+   * {@link JtonMerger#DEFAULT}: objects are merged recursively and other
+   * values, including arrays, are replaced. Neither element is modified.
+   *
+   * @param overlay the element taking precedence.
+   * @return the merged element, sharing unchanged subtrees with this element
+   *         and {@code overlay}.
+   */
+  public JtonElement merge(JtonElement overlay) {
+    return JtonMerger.DEFAULT.merge(this, overlay);
+  }
+
+  /**
+   * Estimates the number of heap bytes retained by this element and all its
+   * children, for the object layout of the running VM. See {@link JtonStats}
+   * for what the estimate covers.
+   *
+   * @return the estimated retained size in bytes.
+   */
+  public long estimateRetainedSize() {
+    return JtonStats.retainedSize(this);
+  }
+
+  /**
+   * Returns statistics about this element and all its children.
+   *
+   * @return the statistics, collected in a single pass over the tree.
+   */
+  public JtonStats stats() {
+    return JtonStats.of(this);
+  }
+
+  /**
+   * Returns a lazy, read-only view of this object or array, to which
+   * transformations such as {@link JtonView#filterKeys filterKeys},
+   * {@link JtonView#renameKeys(java.util.Map) renameKeys} and
+   * {@link JtonView#mapValues(java.util.function.Function) mapValues} can be added.
+   * {@link JtonView#element()} returns the result as a frozen element that
+   * computes its members or elements from this one on access, so it can be
+   * serialized without copying this tree.
+   */
+  public JtonView view() {
+    return new JtonView(this);
+  }
+
+  /**
+   * Returns {@code json} as a JTON tree without copying it. Objects and arrays
+   * read their members and elements from the Gson tree, converting each child
+   * when it is first accessed; the first change to an object or array through
+   * the JTON API copies only that one level. The Gson tree must not be changed
+   * while the view is in use.
+   * <p>
+   * Wrapped objects are stored as maps, see {@link JtonObject}. Concurrent
+   * reads are safe; changes need exclusive access, as usual.
+   *
+   * @param json the Gson tree, {@code null} for {@link JtonNull}.
+   * @see #copyOf(JsonElement)
+   */
+  public static JtonElement wrap(JsonElement json) {
+    return GsonBridge.wrap(json);
+  }
+
+  /**
+   * Returns a copy of {@code json} as an independent JTON tree. The Gson tree is
+   * streamed into the copy without an intermediate string, and numbers keep
+   * their exact digits.
+   *
+   * @param json the Gson tree.
+   * @see #wrap(JsonElement)
+   */
+  public static JtonElement copyOf(JsonElement json) {
+    return GsonBridge.copyOf(json);
+  }
+
+  /**
+   * Returns this element as a Gson tree. A tree returned by
+   * {@link #wrap(JsonElement)} that has not been changed or frozen since returns
+   * the Gson tree it wraps, so trees can cross between both APIs for free;
+   * otherwise the tree is streamed into a new Gson tree. Transient primitives
+   * inside arrays and objects are skipped, together with their member names.
+   *
+   * @throws IllegalStateException if this element is a transient primitive.
+   */
+  public JsonElement asGson() {
+    return GsonBridge.toGson(this);
+  }
+
+  /**
+   * Reports this element and all its children to {@code visitor}, in the order
+   * they would be written by {@link #toString()}. Transient primitives inside
+   * arrays and objects are skipped, together with their member names.
+   *
+   * @param visitor receives the structure of this element.
+   * @throws IllegalStateException if this element is a transient primitive.
+   */
+  public void accept(JtonVisitor visitor) {
+    Visitors.walk(this, visitor);
+  }
+
   /**
    * Returns a String representation of this element.
    */
@@ -316,15 +516,115 @@ public abstract class JtonElement {
    * @return a string representation of this element.
    */
   public String toString(String indent) {
-    try {
-      StringWriter stringWriter = new StringWriter();
-      JsonWriter jsonWriter = new JsonWriter(stringWriter);
-      jsonWriter.setIndent(Optional.ofNullable(indent).orElse(""));
-      jsonWriter.setLenient(true);
-      Streams.write(this, jsonWriter);
-      return stringWriter.toString();
-    } catch (IOException e) {
-      throw new AssertionError(e);
+    return JtonPrinter.of(indent).toString(this);
+  }
+
+  /**
+   * Writes the String representation of this element to {@code out}.
+   *
+   * @param out    the destination.
+   * @param indent a string containing only whitespace, see
+   *               {@link #toString(String)}.
+   * @throws IOException if {@code out} fails.
+   */
+  public void writeTo(Appendable out, String indent) throws IOException {
+    JtonPrinter.of(indent).print(this, out);
+  }
+
+  /**
+   * Writes the String representation of this element to {@code out}, encoded as
+   * UTF-8. The stream is neither flushed nor closed.
+   *
+   * @param out    the destination.
+   * @param indent a string containing only whitespace, see
+   *               {@link #toString(String)}.
+   * @throws IOException if {@code out} fails.
+   */
+  public void writeTo(OutputStream out, String indent) throws IOException {
+    JtonPrinter.of(indent).print(this, out);
+  }
+
+  /**
+   * Writes the String representation of this element to {@code channel},
+   * encoded as UTF-8, printing large arrays and objects in parallel. Ranges of
+   * children are printed into separate buffers, which are written in order with
+   * gathering writes while the next ranges are printed. The output is the same
+   * as that of {@link #writeTo(OutputStream, String)}. Trees estimated to be
+   * small are streamed sequentially through a fixed-size buffer.
+   *
+   * @param channel the destination, which is not closed.
+   * @param indent  a string containing only whitespace, see
+   *                {@link #toString(String)}.
+   * @param pool    the pool to print in, or {@code null} for the
+   *                {@linkplain ForkJoinPool#commonPool() common pool}.
+   * @throws IOException if {@code channel} fails.
+   */
+  public void writeToParallel(WritableByteChannel channel, String indent, ForkJoinPool pool) throws IOException {
+    if (Instrumentation.isSerializeMeasured()) {
+      Instrumentation.serialize(() -> JtonParallel.write(this, channel, indent, pool));
+    } else {
+      JtonParallel.write(this, channel, indent, pool);
     }
   }
+
+  /**
+   * Returns the canonical form of this element, as defined by RFC 8785: compact,
+   * with object members sorted by name and numbers written as by ECMAScript.
+   * Logically equal trees have the same canonical form regardless of member
+   * order. Transient primitives inside arrays and objects are skipped, together
+   * with their member names.
+   * <p>
+   * Numbers are converted to doubles first, so integers beyond 2<sup>53</sup>
+   * may lose precision.
+   *
+   * @throws IllegalStateException    if this element is a transient primitive.
+   * @throws IllegalArgumentException if the tree holds NaN or infinite numbers.
+   */
+  public String toCanonicalString() {
+    return CanonicalPrinter.toString(this);
+  }
+
+  /**
+   * Writes the canonical form of this element to {@code out}, encoded as UTF-8.
+   * The stream is neither flushed nor closed.
+   *
+   * @param out the destination.
+   * @throws IOException if {@code out} fails.
+   * @see #toCanonicalString()
+   */
+  public void writeCanonicalTo(OutputStream out) throws IOException {
+    CanonicalPrinter.print(this, out);
+  }
+
+  /**
+   * Updates {@code digest} with the canonical UTF-8 bytes of this element and
+   * completes it, without building the canonical text.
+   *
+   * @param digest the digest to update, for example SHA-256.
+   * @return the hash of the canonical form.
+   * @see #toCanonicalString()
+   */
+  public byte[] digest(MessageDigest digest) {
+    CanonicalPrinter.digest(this, digest);
+    return digest.digest();
+  }
+
+  /**
+   * Returns a 64-bit content hash of this element: the low half of
+   * {@link #contentHash128()}. Logically equal trees have the same hash.
+   */
+  public long contentHash64() {
+    return CanonicalPrinter.hash128(this)[0];
+  }
+
+  /**
+   * Returns a 128-bit content hash of this element, as two longs with the low
+   * half first. This is the x64 MurmurHash3 with seed 0 of the canonical UTF-8
+   * bytes, see {@link #toCanonicalString()}, computed without building the
+   * canonical text. The hash is fast but not cryptographic; use
+   * {@link #digest(MessageDigest)} for signatures.
+   */
+  public long[] contentHash128() {
+    return CanonicalPrinter.hash128(this);
+  }
 }
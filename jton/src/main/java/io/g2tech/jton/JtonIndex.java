@@ -0,0 +1,461 @@
+package io.g2tech.jton;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.internal.LazilyParsedNumber;
+
+/**
+ * A secondary index over the elements of a {@link JtonArray}, keyed by the
+ * values found at one or more member paths of each element. A path is a list
+ * of member names separated by dots, such as {@code "sku"} or
+ * {@code "price.amount"}. Elements where a path is missing are not indexed.
+ * <p>
+ * A {@linkplain #hash(JtonArray, String...) hash index} answers equality
+ * lookups in constant time; a {@linkplain #sorted(JtonArray, String...) sorted
+ * index} also answers range lookups. Keys are compared by value: numbers are
+ * equal if they are numerically equal, whatever their representation, and
+ * {@code null} matches {@link JtonNull}.
+ * <p>
+ * The index notices when the array is changed through {@code add},
+ * {@code set} or {@code remove} and is rebuilt on the next lookup. Changes to
+ * the indexed elements themselves are not noticed; call {@link #rebuild()}
+ * after them. Lookups may run concurrently as long as the array is not changed
+ * at the same time.
+ */
+public final class JtonIndex {
+  private static final Object NULL = new Object() {
+    @Override
+    public String toString() {
+      return "null";
+    }
+  };
+
+  private static final Comparator<Object> ORDER = JtonIndex::compare;
+
+  private final JtonArray array;
+  private final JtonPath[] paths;
+  private final boolean sorted;
+  private volatile Snapshot snapshot;
+
+  private JtonIndex(JtonArray array, String[] paths, boolean sorted) {
+    if (paths.length == 0) {
+      throw new IllegalArgumentException("No paths");
+    }
+    this.array = array;
+    this.paths = new JtonPath[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      this.paths[i] = JtonPath.members(paths[i].split("\\.", -1));
+    }
+    this.sorted = sorted;
+    this.snapshot = build();
+  }
+
+  /**
+   * Creates a hash index answering equality lookups.
+   *
+   * @param array the array to index.
+   * @param paths the member paths forming the key.
+   * @return the index.
+   */
+  public static JtonIndex hash(JtonArray array, String... paths) {
+    return new JtonIndex(array, paths, false);
+  }
+
+  /**
+   * Creates a sorted index answering equality and range lookups. Keys order
+   * null before booleans, booleans before numbers, numbers before strings and
+   * strings before arrays and objects.
+   *
+   * @param array the array to index.
+   * @param paths the member paths forming the key.
+   * @return the index.
+   */
+  public static JtonIndex sorted(JtonArray array, String... paths) {
+    return new JtonIndex(array, paths, true);
+  }
+
+  /**
+   * Returns the elements whose key equals {@code key}, in array order.
+   *
+   * @param key one value per path: a {@link JtonElement}, {@link Number},
+   *            {@link String}, {@link Character}, {@link Boolean} or
+   *            {@code null}.
+   * @return the matching elements, empty if there are none.
+   */
+  public List<JtonElement> get(Object... key) {
+    Snapshot s = current();
+    return s.elements(s.find(lookupKey(key)));
+  }
+
+  /**
+   * Returns the first element whose key equals {@code key}.
+   *
+   * @see #get(Object...)
+   * @return the element, or {@code null} if there is none.
+   */
+  public JtonElement getFirst(Object... key) {
+    List<JtonElement> elements = get(key);
+    return elements.isEmpty() ? null : elements.get(0);
+  }
+
+  /**
+   * Returns the elements whose key lies between {@code from} and {@code to}, in
+   * key order. Bounds of a composite index are lists of values and may cover
+   * only the leading paths.
+   *
+   * @param from          the lower bound, or {@code null} for none.
+   * @param fromInclusive whether keys equal to {@code from} match.
+   * @param to            the upper bound, or {@code null} for none.
+   * @param toInclusive   whether keys equal to {@code to} match.
+   * @return the matching elements.
+   * @throws UnsupportedOperationException if this is a hash index.
+   */
+  public List<JtonElement> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+    if (!sorted) {
+      throw new UnsupportedOperationException("range lookup on a hash index");
+    }
+    SortedSnapshot s = (SortedSnapshot) current();
+    int start = from == null ? 0 : s.bound(boundKey(from), !fromInclusive);
+    int end = to == null ? s.keys.length : s.bound(boundKey(to), toInclusive);
+    return s.elements(start < end ? Arrays.copyOfRange(s.rows, start, end) : new int[0]);
+  }
+
+  /**
+   * Returns true if the array has changed since the index was built.
+   */
+  public boolean isStale() {
+    Snapshot s = snapshot;
+    return s.modCount != array.modCount();
+  }
+
+  /**
+   * Rebuilds the index from the current contents of the array.
+   */
+  public void rebuild() {
+    snapshot = build();
+  }
+
+  /**
+   * Returns the number of indexed elements.
+   */
+  public int size() {
+    return current().size;
+  }
+
+  private Snapshot current() {
+    Snapshot s = snapshot;
+    if (s.modCount != array.modCount()) {
+      synchronized (this) {
+        s = snapshot;
+        if (s.modCount != array.modCount()) {
+          snapshot = s = build();
+        }
+      }
+    }
+    return s;
+  }
+
+  private Snapshot build() {
+    int modCount = array.modCount();
+    int n = array.size();
+    Object[] keys = new Object[n];
+    int[] rows = new int[n];
+    int size = 0;
+    for (int row = 0; row < n; row++) {
+      Object key = elementKey(array.get(row));
+      if (key != null) {
+        keys[size] = key;
+        rows[size++] = row;
+      }
+    }
+    return sorted ? new SortedSnapshot(modCount, keys, rows, size) : new HashSnapshot(modCount, keys, rows, size);
+  }
+
+  private Object elementKey(JtonElement element) {
+    if (paths.length == 1) {
+      return key(paths[0].get(element));
+    }
+    Object[] key = new Object[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      if ((key[i] = key(paths[i].get(element))) == null) {
+        return null;
+      }
+    }
+    return Arrays.asList(key);
+  }
+
+  private Object lookupKey(Object[] key) {
+    if (key == null) {
+      key = new Object[] { null };
+    }
+    if (key.length != paths.length) {
+      throw new IllegalArgumentException("Expected " + paths.length + " key values but got " + key.length);
+    }
+    if (paths.length == 1) {
+      return value(key[0]);
+    }
+    Object[] values = new Object[key.length];
+    for (int i = 0; i < key.length; i++) {
+      values[i] = value(key[i]);
+    }
+    return Arrays.asList(values);
+  }
+
+  private Object boundKey(Object bound) {
+    if (paths.length == 1) {
+      return value(bound);
+    }
+    if (!(bound instanceof List)) {
+      throw new IllegalArgumentException("Bounds of a composite index must be lists");
+    }
+    List<?> components = (List<?>) bound;
+    Object[] values = new Object[components.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = value(components.get(i));
+    }
+    return Arrays.asList(values);
+  }
+
+  /**
+   * Normalizes a lookup value the same way element values are normalized.
+   */
+  private static Object value(Object value) {
+    if (value == null) {
+      return NULL;
+    } else if (value instanceof JtonElement) {
+      Object key = key((JtonElement) value);
+      if (key == null) {
+        throw new IllegalArgumentException("Cannot look up a transient value");
+      }
+      return key;
+    } else if (value instanceof Number) {
+      return number((Number) value);
+    } else if (value instanceof String || value instanceof Boolean) {
+      return value;
+    } else if (value instanceof Character) {
+      return value.toString();
+    }
+    throw new IllegalArgumentException("Unsupported key type " + value.getClass());
+  }
+
+  /**
+   * Returns the key of an element value: {@link #NULL}, a {@link Boolean}, a
+   * {@link Long} for integral numbers, a {@link Double} for other numbers, a
+   * {@link String}, or the element itself for arrays and objects. Missing and
+   * transient values have no key.
+   */
+  private static Object key(JtonElement element) {
+    if (element == null) {
+      return null;
+    } else if (element.isJtonNull()) {
+      return NULL;
+    } else if (element instanceof JtonPrimitive) {
+      JtonPrimitive primitive = (JtonPrimitive) element;
+      if (primitive.isJtonTransient()) {
+        return null;
+      } else if (primitive.isNumber()) {
+        return number(primitive.getAsNumber());
+      } else if (primitive.isBoolean()) {
+        return primitive.getAsBoolean();
+      }
+      return primitive.getAsString();
+    }
+    return element;
+  }
+
+  private static Object number(Number n) {
+    if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+      return n.longValue();
+    }
+    double d;
+    if (n instanceof LazilyParsedNumber) {
+      String text = n.toString();
+      try {
+        return Long.parseLong(text);
+      } catch (NumberFormatException e) {
+        d = Double.parseDouble(text);
+      }
+    } else {
+      d = n.doubleValue();
+    }
+    long l = (long) d;
+    if (l == d && l != Long.MAX_VALUE && l != Long.MIN_VALUE) {
+      return l;
+    }
+    return d;
+  }
+
+  private static int rank(Object key) {
+    if (key == NULL) {
+      return 0;
+    } else if (key instanceof Boolean) {
+      return 1;
+    } else if (key instanceof Number) {
+      return 2;
+    } else if (key instanceof String) {
+      return 3;
+    }
+    return 4;
+  }
+
+  private static int compare(Object a, Object b) {
+    if (a instanceof List && b instanceof List) {
+      List<?> x = (List<?>) a;
+      List<?> y = (List<?>) b;
+      int n = Math.min(x.size(), y.size());
+      for (int i = 0; i < n; i++) {
+        int c = compare(x.get(i), y.get(i));
+        if (c != 0) {
+          return c;
+        }
+      }
+      return 0;
+    }
+    int c = Integer.compare(rank(a), rank(b));
+    if (c != 0) {
+      return c;
+    } else if (a instanceof Long && b instanceof Long) {
+      return Long.compare((Long) a, (Long) b);
+    } else if (a instanceof Number) {
+      c = Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+      if (c != 0) {
+        return c;
+      }
+      // NaN and the infinities only tie with themselves
+      BigDecimal p = decimal((Number) a);
+      return p == null ? 0 : p.compareTo(decimal((Number) b));
+    } else if (a instanceof Boolean) {
+      return Boolean.compare((Boolean) a, (Boolean) b);
+    } else if (a instanceof String) {
+      return ((String) a).compareTo((String) b);
+    } else if (a == NULL) {
+      return 0;
+    }
+    return a.toString().compareTo(b.toString());
+  }
+
+  /**
+   * Returns the exact value of a number key, or null if it is NaN or infinite.
+   */
+  private static BigDecimal decimal(Number n) {
+    return n instanceof Double && !Double.isFinite(n.doubleValue()) ? null : new BigDecimal(n.toString());
+  }
+
+  private abstract class Snapshot {
+    final int modCount;
+    final int size;
+
+    Snapshot(int modCount, int size) {
+      this.modCount = modCount;
+      this.size = size;
+    }
+
+    abstract int[] find(Object key);
+
+    List<JtonElement> elements(int[] rows) {
+      if (rows.length == 0) {
+        return Collections.emptyList();
+      }
+      List<JtonElement> elements = new ArrayList<>(rows.length);
+      for (int row : rows) {
+        elements.add(array.get(row));
+      }
+      return elements;
+    }
+  }
+
+  private final class HashSnapshot extends Snapshot {
+    /**
+     * Maps keys to a row as an {@link Integer}, or to several rows as an
+     * {@code int[]}.
+     */
+    private final Map<Object, Object> rows;
+
+    HashSnapshot(int modCount, Object[] keys, int[] rows, int size) {
+      super(modCount, size);
+      Map<Object, Object> map = new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+      Map<Object, List<Integer>> duplicates = null;
+      for (int i = 0; i < size; i++) {
+        Object previous = map.putIfAbsent(keys[i], rows[i]);
+        if (previous != null) {
+          if (duplicates == null) {
+            duplicates = new HashMap<>();
+          }
+          duplicates.computeIfAbsent(keys[i], k -> new ArrayList<>(Collections.singletonList((Integer) previous)))
+              .add(rows[i]);
+        }
+      }
+      if (duplicates != null) {
+        for (Map.Entry<Object, List<Integer>> e : duplicates.entrySet()) {
+          map.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+      }
+      this.rows = map;
+    }
+
+    @Override
+    int[] find(Object key) {
+      Object found = rows.get(key);
+      if (found == null) {
+        return new int[0];
+      } else if (found instanceof Integer) {
+        return new int[] { (Integer) found };
+      }
+      return (int[]) found;
+    }
+  }
+
+  private final class SortedSnapshot extends Snapshot {
+    final Object[] keys;
+    final int[] rows;
+
+    SortedSnapshot(int modCount, Object[] keys, int[] rows, int size) {
+      super(modCount, size);
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      // stable, so equal keys stay in array order
+      Arrays.sort(order, (a, b) -> ORDER.compare(keys[a], keys[b]));
+      this.keys = new Object[size];
+      this.rows = new int[size];
+      for (int i = 0; i < size; i++) {
+        this.keys[i] = keys[order[i]];
+        this.rows[i] = rows[order[i]];
+      }
+    }
+
+    @Override
+    int[] find(Object key) {
+      int start = bound(key, false);
+      int end = bound(key, true);
+      return start < end ? Arrays.copyOfRange(rows, start, end) : new int[0];
+    }
+
+    /**
+     * Returns the index of the first key greater than {@code key}, or greater
+     * than or equal to it if {@code after} is false.
+     */
+    int bound(Object key, boolean after) {
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        int c = compare(keys[mid], key);
+        if (c < 0 || (after && c == 0)) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package io.g2tech.jton;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * Thrown when parsing stops because the input exceeds one of the limits of its
+ * {@link JtonParseOptions}.
+ */
+public final class JtonLimitExceededException extends JsonParseException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The limits of {@link JtonParseOptions}.
+   */
+  public enum Limit {
+    INPUT_SIZE("input size"),
+    DEPTH("depth"),
+    NODES("number of nodes"),
+    STRING_LENGTH("string length"),
+    NUMBER_LENGTH("number length"),
+    MEMBERS("number of members");
+
+    private final String description;
+
+    Limit(String description) {
+      this.description = description;
+    }
+  }
+
+  private final Limit limit;
+  private final long maximum;
+
+  /**
+   * @param limit   the limit that was exceeded.
+   * @param maximum the configured maximum.
+   * @param path    the JSON path where parsing stopped, or {@code null} if not
+   *                known.
+   */
+  public JtonLimitExceededException(Limit limit, long maximum, String path) {
+    super("Maximum " + limit.description + " of " + maximum + " exceeded" + (path == null ? "" : " at " + path));
+    this.limit = limit;
+    this.maximum = maximum;
+  }
+
+  /**
+   * Returns the limit that was exceeded.
+   */
+  public Limit getLimit() {
+    return limit;
+  }
+
+  /**
+   * Returns the configured maximum of that limit.
+   */
+  public long getMaximum() {
+    return maximum;
+  }
+}
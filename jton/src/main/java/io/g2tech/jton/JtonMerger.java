@@ -0,0 +1,313 @@
+package io.g2tech.jton;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Merges an overlay tree into a base tree. Objects are merged member by
+ * member, recursively; everything else in the overlay replaces the base value,
+ * except arrays, which are combined according to the {@link ArrayStrategy}.
+ * <p>
+ * Neither input is modified. The result is built only along the paths the
+ * overlay touches and shares every other subtree with the inputs, so merging
+ * costs about as much as the size of the overlay. Changing a shared subtree
+ * changes it in all trees; use {@link JtonElement#deepCopy()} on the result
+ * to get an independent tree. Objects and arrays with at least
+ * {@link #withParallelThreshold(int) a threshold} of members to merge are
+ * merged in parallel.
+ * <p>
+ * Mergers are immutable and thread-safe.
+ */
+public final class JtonMerger {
+  private static final int CHUNK = 256;
+
+  /**
+   * Merges objects recursively, replaces arrays and keeps nulls from the
+   * overlay as values.
+   */
+  public static final JtonMerger DEFAULT = new JtonMerger(ArrayStrategy.REPLACE, null, false, 4096, null);
+
+  private static final JtonMerger MERGE_PATCH = DEFAULT.withNullDeletes(true);
+
+  /**
+   * How arrays found at the same place in both trees are combined.
+   */
+  public enum ArrayStrategy {
+    /** The overlay array replaces the base array. */
+    REPLACE,
+    /** The overlay elements are appended to the base elements. */
+    APPEND,
+    /**
+     * Object elements with equal values of a key member are merged; the other
+     * overlay elements are appended. Overlay elements sharing a key are merged
+     * in turn, later ones taking precedence.
+     */
+    BY_KEY
+  }
+
+  private final ArrayStrategy arrays;
+  private final String arrayKey;
+  private final boolean nullDeletes;
+  private final int parallelThreshold;
+  private final ForkJoinPool pool;
+
+  private JtonMerger(ArrayStrategy arrays, String arrayKey, boolean nullDeletes, int parallelThreshold,
+      ForkJoinPool pool) {
+    this.arrays = arrays;
+    this.arrayKey = arrayKey;
+    this.nullDeletes = nullDeletes;
+    this.parallelThreshold = parallelThreshold;
+    this.pool = pool;
+  }
+
+  /**
+   * Returns a merger that combines arrays with {@code strategy}.
+   *
+   * @throws IllegalArgumentException for {@link ArrayStrategy#BY_KEY}, which
+   *                                  needs a key, see
+   *                                  {@link #withArraysByKey(String)}.
+   */
+  public JtonMerger withArrays(ArrayStrategy strategy) {
+    if (strategy == ArrayStrategy.BY_KEY) {
+      throw new IllegalArgumentException("BY_KEY needs a key member");
+    }
+    return new JtonMerger(strategy, null, nullDeletes, parallelThreshold, pool);
+  }
+
+  /**
+   * Returns a merger that merges object elements of arrays whose member
+   * {@code key} has equal values.
+   */
+  public JtonMerger withArraysByKey(String key) {
+    if (key == null) {
+      throw new NullPointerException("key == null");
+    }
+    return new JtonMerger(ArrayStrategy.BY_KEY, key, nullDeletes, parallelThreshold, pool);
+  }
+
+  /**
+   * Returns a merger that, if {@code nullDeletes} is true, removes members
+   * whose overlay value is {@link JtonNull} instead of setting them to null.
+   */
+  public JtonMerger withNullDeletes(boolean nullDeletes) {
+    return new JtonMerger(arrays, arrayKey, nullDeletes, parallelThreshold, pool);
+  }
+
+  /**
+   * Returns a merger that merges objects and arrays with at least
+   * {@code threshold} overlay members in parallel.
+   */
+  public JtonMerger withParallelThreshold(int threshold) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("threshold < 1");
+    }
+    return new JtonMerger(arrays, arrayKey, nullDeletes, threshold, pool);
+  }
+
+  /**
+   * Returns a merger that runs parallel merges in {@code pool} instead of the
+   * {@linkplain ForkJoinPool#commonPool() common pool}.
+   */
+  public JtonMerger withPool(ForkJoinPool pool) {
+    return new JtonMerger(arrays, arrayKey, nullDeletes, parallelThreshold, pool);
+  }
+
+  /**
+   * Applies an RFC 7386 JSON merge patch to {@code target}: members of
+   * {@code patch} that are null remove the member, objects are patched
+   * recursively and any other value, including arrays, replaces the target
+   * value.
+   *
+   * @param target the document to patch.
+   * @param patch  the merge patch.
+   * @return the patched document, sharing unchanged subtrees with the inputs.
+   */
+  public static JtonElement mergePatch(JtonElement target, JtonElement patch) {
+    return MERGE_PATCH.merge(target, patch);
+  }
+
+  /**
+   * Merges {@code overlay} into {@code base}.
+   *
+   * @return the merged tree, sharing unchanged subtrees with the inputs.
+   */
+  public JtonElement merge(JtonElement base, JtonElement overlay) {
+    return value(base, overlay);
+  }
+
+  /**
+   * Merges each overlay in turn, later overlays taking precedence.
+   *
+   * @return the merged tree, sharing unchanged subtrees with the inputs.
+   */
+  public JtonElement merge(JtonElement base, JtonElement... overlays) {
+    JtonElement result = base;
+    for (JtonElement overlay : overlays) {
+      result = value(result, overlay);
+    }
+    return result;
+  }
+
+  private JtonElement value(JtonElement base, JtonElement overlay) {
+    if (overlay == null) {
+      return base == null ? JtonNull.INSTANCE : base;
+    } else if (overlay instanceof JtonObject) {
+      if (base instanceof JtonObject) {
+        return object((JtonObject) base, (JtonObject) overlay);
+      }
+      return nullDeletes ? object(new JtonObject(), (JtonObject) overlay) : overlay;
+    } else if (overlay instanceof JtonArray && base instanceof JtonArray) {
+      return array((JtonArray) base, (JtonArray) overlay);
+    }
+    return overlay;
+  }
+
+  private JtonObject object(JtonObject base, JtonObject overlay) {
+    int n = overlay.size();
+    String[] names = new String[n];
+    JtonElement[] merged = new JtonElement[n];
+    int i = 0;
+    for (Map.Entry<String, JtonElement> e : overlay.entrySet()) {
+      names[i] = e.getKey();
+      merged[i++] = e.getValue();
+    }
+    JtonElement[] bases = new JtonElement[n];
+    for (i = 0; i < n; i++) {
+      bases[i] = base.get(names[i]);
+    }
+    mergeAll(bases, merged, n);
+    JtonObject result = base.shallowCopy();
+    for (i = 0; i < n; i++) {
+      if (nullDeletes && merged[i].isJtonNull()) {
+        result.remove(names[i]);
+      } else {
+        result.add(names[i], merged[i]);
+      }
+    }
+    return result;
+  }
+
+  private JtonArray array(JtonArray base, JtonArray overlay) {
+    switch (arrays) {
+    case APPEND:
+      JtonArray appended = new JtonArray(base.size() + overlay.size());
+      appended.addAll(base);
+      appended.addAll(overlay);
+      return appended;
+    case BY_KEY:
+      return byKey(base, overlay);
+    default:
+      return overlay;
+    }
+  }
+
+  private JtonArray byKey(JtonArray base, JtonArray overlay) {
+    Map<JtonElement, Integer> positions = new HashMap<>();
+    for (int i = 0; i < base.size(); i++) {
+      JtonElement key = key(base.get(i));
+      if (key != null) {
+        positions.putIfAbsent(key, i);
+      }
+    }
+    int n = overlay.size();
+    JtonElement[] bases = new JtonElement[n];
+    JtonElement[] merged = new JtonElement[n];
+    int[] targets = new int[n];
+    int pairs = 0;
+    boolean[] hit = new boolean[base.size()];
+    List<JtonElement> appended = new ArrayList<>();
+    // later overlay elements with a key already seen, merged in order at the end
+    List<Integer> repeatTargets = new ArrayList<>();
+    List<JtonElement> repeats = new ArrayList<>();
+    for (JtonElement element : overlay) {
+      JtonElement key = key(element);
+      Integer position = key == null ? null : positions.get(key);
+      if (position == null) {
+        if (key != null) {
+          positions.put(key, base.size() + appended.size());
+        }
+        appended.add(element);
+      } else if (position < hit.length && !hit[position]) {
+        hit[position] = true;
+        bases[pairs] = base.get(position);
+        merged[pairs] = element;
+        targets[pairs++] = position;
+      } else {
+        repeatTargets.add(position);
+        repeats.add(element);
+      }
+    }
+    mergeAll(bases, merged, pairs);
+    JtonArray result = new JtonArray(base.size() + appended.size());
+    result.addAll(base);
+    for (int i = 0; i < pairs; i++) {
+      result.set(targets[i], merged[i]);
+    }
+    for (JtonElement element : appended) {
+      result.add(element);
+    }
+    for (int i = 0; i < repeats.size(); i++) {
+      int target = repeatTargets.get(i);
+      result.set(target, value(result.get(target), repeats.get(i)));
+    }
+    return result;
+  }
+
+  private JtonElement key(JtonElement element) {
+    return element instanceof JtonObject ? ((JtonObject) element).get(arrayKey) : null;
+  }
+
+  /**
+   * Replaces each of the first {@code n} overlay values with its merge into the
+   * corresponding base value.
+   */
+  private void mergeAll(JtonElement[] bases, JtonElement[] overlays, int n) {
+    if (n < parallelThreshold) {
+      mergeRange(bases, overlays, 0, n);
+      return;
+    }
+    MergeTask task = new MergeTask(bases, overlays, 0, n);
+    if (ForkJoinTask.inForkJoinPool()) {
+      task.invoke();
+    } else {
+      (pool != null ? pool : ForkJoinPool.commonPool()).invoke(task);
+    }
+  }
+
+  private void mergeRange(JtonElement[] bases, JtonElement[] overlays, int from, int to) {
+    for (int i = from; i < to; i++) {
+      overlays[i] = value(bases[i], overlays[i]);
+    }
+  }
+
+  private final class MergeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final JtonElement[] bases;
+    private final JtonElement[] overlays;
+    private final int from;
+    private final int to;
+
+    MergeTask(JtonElement[] bases, JtonElement[] overlays, int from, int to) {
+      this.bases = bases;
+      this.overlays = overlays;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= CHUNK) {
+        mergeRange(bases, overlays, from, to);
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new MergeTask(bases, overlays, from, mid), new MergeTask(bases, overlays, mid, to));
+      }
+    }
+  }
+}
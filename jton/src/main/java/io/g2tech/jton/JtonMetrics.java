@@ -0,0 +1,219 @@
+package io.g2tech.jton;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registration point for the {@link JtonMetricsListener} and a ready-made
+ * {@link Recorder} that aggregates the measurements into counters and
+ * histograms.
+ * <p>
+ * Independently of the listener, parsing, serialization and deep copies emit
+ * the JDK Flight Recorder events {@code io.g2tech.jton.JtonParse},
+ * {@code io.g2tech.jton.JtonSerialize} and {@code io.g2tech.jton.JtonDeepCopy}
+ * when they are enabled in the recording.
+ */
+public final class JtonMetrics {
+  private static volatile JtonMetricsListener listener;
+
+  private JtonMetrics() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Registers the listener receiving all measurements, replacing the previous
+   * one. Pass {@code null} to switch measuring off.
+   *
+   * @param listener the listener, or {@code null}.
+   */
+  public static void setListener(JtonMetricsListener listener) {
+    JtonMetrics.listener = listener;
+  }
+
+  /**
+   * Returns the registered listener, or {@code null} if there is none.
+   */
+  public static JtonMetricsListener getListener() {
+    return listener;
+  }
+
+  /**
+   * A listener that aggregates measurements into lock-free counters and
+   * histograms. {@link #snapshot()} flattens them into named values for
+   * export to a monitoring system.
+   */
+  public static final class Recorder implements JtonMetricsListener {
+    private final LongAdder parseFailures = new LongAdder();
+    private final LongAdder serializeFailures = new LongAdder();
+    private final LongAdder nodesParsed = new LongAdder();
+    private final LongAdder nodesCopied = new LongAdder();
+    private final Histogram parseNanos = new Histogram();
+    private final Histogram parseSize = new Histogram();
+    private final Histogram parseDepth = new Histogram();
+    private final Histogram serializeNanos = new Histogram();
+    private final Histogram serializeSize = new Histogram();
+    private final Histogram copyNanos = new Histogram();
+
+    @Override
+    public void parsed(long size, int nodes, int maxDepth, long nanos) {
+      parseNanos.record(nanos);
+      parseSize.record(size);
+      parseDepth.record(maxDepth);
+      nodesParsed.add(nodes);
+    }
+
+    @Override
+    public void parseFailed(long size, Throwable error, long nanos) {
+      parseFailures.increment();
+    }
+
+    @Override
+    public void serialized(long size, long nanos) {
+      serializeNanos.record(nanos);
+      serializeSize.record(size);
+    }
+
+    @Override
+    public void serializeFailed(Throwable error, long nanos) {
+      serializeFailures.increment();
+    }
+
+    @Override
+    public void copied(int nodes, long nanos) {
+      copyNanos.record(nanos);
+      nodesCopied.add(nodes);
+    }
+
+    public Histogram getParseNanos() {
+      return parseNanos;
+    }
+
+    public Histogram getParseSize() {
+      return parseSize;
+    }
+
+    public Histogram getParseDepth() {
+      return parseDepth;
+    }
+
+    public Histogram getSerializeNanos() {
+      return serializeNanos;
+    }
+
+    public Histogram getSerializeSize() {
+      return serializeSize;
+    }
+
+    public Histogram getCopyNanos() {
+      return copyNanos;
+    }
+
+    public long getParseFailures() {
+      return parseFailures.sum();
+    }
+
+    public long getSerializeFailures() {
+      return serializeFailures.sum();
+    }
+
+    public long getNodesParsed() {
+      return nodesParsed.sum();
+    }
+
+    public long getNodesCopied() {
+      return nodesCopied.sum();
+    }
+
+    /**
+     * Returns all values keyed by dotted names such as {@code parse.count},
+     * {@code parse.bytes.sum} or {@code serialize.nanos.p99}, in a stable order.
+     */
+    public Map<String, Long> snapshot() {
+      Map<String, Long> result = new LinkedHashMap<>();
+      parseNanos.export("parse.nanos", result);
+      parseSize.export("parse.bytes", result);
+      parseDepth.export("parse.depth", result);
+      result.put("parse.count", parseNanos.getCount());
+      result.put("parse.failures", getParseFailures());
+      result.put("parse.nodes", getNodesParsed());
+      serializeNanos.export("serialize.nanos", result);
+      serializeSize.export("serialize.bytes", result);
+      result.put("serialize.count", serializeNanos.getCount());
+      result.put("serialize.failures", getSerializeFailures());
+      copyNanos.export("copy.nanos", result);
+      result.put("copy.count", copyNanos.getCount());
+      result.put("copy.nodes", getNodesCopied());
+      return result;
+    }
+  }
+
+  /**
+   * A lock-free histogram of non-negative values with power-of-two buckets.
+   * Percentiles are reported as the upper bound of the bucket they fall in, so
+   * they are accurate to within a factor of two. Negative values (unknown
+   * sizes) are ignored.
+   */
+  public static final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+      if (value < 0) {
+        return;
+      }
+      buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+      count.increment();
+      sum.add(value);
+      if (value > max.get()) {
+        max.accumulateAndGet(value, Math::max);
+      }
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getSum() {
+      return sum.sum();
+    }
+
+    public long getMax() {
+      return max.get();
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the {@code q}-quantile.
+     *
+     * @param q a quantile between 0 and 1.
+     */
+    public long getPercentile(double q) {
+      long total = 0;
+      long[] counts = new long[64];
+      for (int i = 0; i < 64; i++) {
+        counts[i] = buckets.get(i);
+        total += counts[i];
+      }
+      long rank = (long) Math.ceil(q * total);
+      long seen = 0;
+      for (int i = 0; i < 64; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) {
+          return i == 0 ? 0 : Math.min((1L << i) - 1, getMax());
+        }
+      }
+      return 0;
+    }
+
+    void export(String name, Map<String, Long> into) {
+      into.put(name + ".sum", getSum());
+      into.put(name + ".max", getMax());
+      into.put(name + ".p50", getPercentile(0.5));
+      into.put(name + ".p99", getPercentile(0.99));
+    }
+  }
+}
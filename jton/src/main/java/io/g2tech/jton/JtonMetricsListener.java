@@ -0,0 +1,64 @@
+package io.g2tech.jton;
+
+/**
+ * Receives measurements from the parse, serialization and deep copy paths. A
+ * listener is registered with {@link JtonMetrics#setListener}; while none is
+ * registered (and the JFR events are disabled) these paths are not measured at
+ * all.
+ * <p>
+ * Sizes are in bytes for byte input and output and in characters for
+ * {@link String}, {@link java.io.Reader} and {@link Appendable} input and
+ * output; {@code -1} means the size is unknown. Callbacks run on the thread
+ * that did the work and should return quickly.
+ */
+public interface JtonMetricsListener {
+
+  /**
+   * Called after a document has been parsed.
+   *
+   * @param size     the size of the input.
+   * @param nodes    the number of elements in the resulting tree.
+   * @param maxDepth the nesting depth of the resulting tree; a primitive root
+   *                 has depth 0.
+   * @param nanos    the time spent parsing.
+   */
+  default void parsed(long size, int nodes, int maxDepth, long nanos) {
+  }
+
+  /**
+   * Called when parsing fails.
+   *
+   * @param size  the size of the input consumed before the failure.
+   * @param error the failure.
+   * @param nanos the time spent until the failure.
+   */
+  default void parseFailed(long size, Throwable error, long nanos) {
+  }
+
+  /**
+   * Called after a tree has been serialized.
+   *
+   * @param size  the size of the output.
+   * @param nanos the time spent serializing.
+   */
+  default void serialized(long size, long nanos) {
+  }
+
+  /**
+   * Called when serialization fails.
+   *
+   * @param error the failure.
+   * @param nanos the time spent until the failure.
+   */
+  default void serializeFailed(Throwable error, long nanos) {
+  }
+
+  /**
+   * Called after a tree has been deep-copied.
+   *
+   * @param nodes the number of elements in the copy.
+   * @param nanos the time spent copying.
+   */
+  default void copied(int nodes, long nanos) {
+  }
+}
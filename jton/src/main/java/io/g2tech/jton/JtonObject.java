@@ -2,26 +2,151 @@ package io.g2tech.jton;
 
 import com.google.gson.internal.LinkedTreeMap;
 
+import io.g2tech.jton.internal.Instrumentation;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A class representing an object type in Jton. An object consists of name-value
  * pairs where names are strings, and values are any other type of
  * {@link JtonElement}. This allows for a creating a tree of JtonElements. The
  * member elements of this object are maintained in order they were added.
+ * <p>
+ * Objects whose member names were added in the same order share a
+ * {@link Shape} holding the names and keep only an array of values. Objects
+ * that outgrow the shape tree switch to a map for good.
+ * <p>
+ * A {@linkplain #freeze() frozen} object rejects all changes.
  */
 public final class JtonObject extends JtonElement {
-	private final LinkedTreeMap<String, JtonElement> members = new LinkedTreeMap<String, JtonElement>();
+	private static final JtonElement[] NO_VALUES = {};
+
+	/**
+	 * Marks frozen objects stored as maps; frozen objects with a shape use the
+	 * frozen twin of the shape instead, so neither needs an extra field.
+	 */
+	private static final JtonElement[] FROZEN = {};
+
+	private Shape shape = Shape.EMPTY;
+	private JtonElement[] values = NO_VALUES;
+	private Map<String, JtonElement> members;
+
+	/**
+	 * Creates an empty object.
+	 */
+	public JtonObject() {
+	}
+
+	/**
+	 * Creates an object stored as the map {@code members}, which it takes over.
+	 */
+	JtonObject(Map<String, JtonElement> members) {
+		this.shape = null;
+		this.values = null;
+		this.members = members;
+	}
+
+	/**
+	 * Creates an object stored as the map {@code members}, frozen without
+	 * freezing its values if {@code frozen} is set.
+	 */
+	JtonObject(Map<String, JtonElement> members, boolean frozen) {
+		this(members);
+		if (frozen) {
+			this.values = FROZEN;
+		}
+	}
 
 	/**
 	 * Creates a deep copy of this element and all its children
 	 */
 	@Override
 	public JtonObject deepCopy() {
+		if (Instrumentation.isCopyMeasured()) {
+			return Instrumentation.copy(this::copyTree);
+		}
+		return copyTree();
+	}
+
+	@Override
+	public JtonObject deepCopyParallel(ForkJoinPool pool) {
+		return (JtonObject) super.deepCopyParallel(pool);
+	}
+
+	@Override
+	JtonObject copyTree() {
+		JtonObject result = new JtonObject();
+		if (shape != null) {
+			int size = shape.size();
+			JtonElement[] copy = size == 0 ? NO_VALUES : new JtonElement[size];
+			for (int i = 0; i < size; i++) {
+				copy[i] = values[i].copyTree();
+			}
+			result.shape = shape.thawed();
+			result.values = copy;
+		} else {
+			for (Map.Entry<String, JtonElement> entry : members.entrySet()) {
+				result.add(entry.getKey(), entry.getValue().copyTree());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a copy of this object that shares its member values.
+	 */
+	JtonObject shallowCopy() {
+		JtonObject result = new JtonObject();
+		if (shape != null) {
+			result.shape = shape.thawed();
+			result.values = shape.size() == 0 ? NO_VALUES : Arrays.copyOf(values, shape.size());
+		} else {
+			for (Map.Entry<String, JtonElement> entry : members.entrySet()) {
+				result.add(entry.getKey(), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the member values in iteration order.
+	 */
+	JtonElement[] valueArray() {
+		if (shape != null) {
+			return Arrays.copyOf(values, shape.size());
+		}
+		JtonElement[] result = new JtonElement[members.size()];
+		int i = 0;
+		for (JtonElement value : members.values()) {
+			result[i++] = value;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a mutable object with the members of this object, in the same
+	 * order, but the values {@code newValues}, given in iteration order.
+	 */
+	JtonObject withValues(JtonElement[] newValues) {
 		JtonObject result = new JtonObject();
-		for (Map.Entry<String, JtonElement> entry : members.entrySet()) {
-			result.add(entry.getKey(), entry.getValue().deepCopy());
+		if (shape != null) {
+			result.shape = shape.thawed();
+			result.values = newValues.length == 0 ? NO_VALUES : newValues;
+		} else {
+			int i = 0;
+			for (String key : members.keySet()) {
+				result.add(key, newValues[i++]);
+			}
 		}
 		return result;
 	}
@@ -37,10 +162,46 @@ public final class JtonObject extends JtonElement {
 	 * @return 
 	 */
 	public JtonObject add(String property, JtonElement value) {
-		members.put(property, value == null ? JtonNull.INSTANCE : value);
+		checkMutable();
+		if (value == null) {
+			value = JtonNull.INSTANCE;
+		}
+		if (shape == null) {
+			members.put(property, value);
+			return this;
+		} else if (property == null) {
+			throw new NullPointerException("key == null");
+		}
+		int slot = shape.slot(property);
+		if (slot >= 0) {
+			values[slot] = value;
+			return this;
+		}
+		Shape next = shape.transition(property);
+		if (next == null) {
+			toMap().put(property, value);
+			return this;
+		}
+		int size = shape.size();
+		if (size == values.length) {
+			values = Arrays.copyOf(values, Math.max(size + 1, next.expectedSize()));
+		}
+		values[size] = value;
+		shape = next;
 		return this;
 	}
 
+	private LinkedTreeMap<String, JtonElement> toMap() {
+		LinkedTreeMap<String, JtonElement> map = new LinkedTreeMap<String, JtonElement>();
+		for (int i = 0; i < shape.size(); i++) {
+			map.put(shape.key(i), values[i]);
+		}
+		members = map;
+		shape = null;
+		values = null;
+		return map;
+	}
+
 	/**
 	 * Removes the {@code property} from this {@link JtonObject}.
 	 *
@@ -49,7 +210,22 @@ public final class JtonObject extends JtonElement {
 	 * @since 1.3
 	 */
 	public JtonElement remove(String property) {
-		return members.remove(property);
+		checkMutable();
+		if (shape == null) {
+			return members.remove(property);
+		}
+		int slot = property == null ? -1 : shape.slot(property);
+		return slot < 0 ? null : removeSlot(slot);
+	}
+
+	private JtonElement removeSlot(int slot) {
+		checkMutable();
+		JtonElement removed = values[slot];
+		int size = shape.size();
+		System.arraycopy(values, slot + 1, values, slot, size - slot - 1);
+		values[size - 1] = null;
+		shape = shape.without(slot);
+		return removed;
 	}
 
 	/**
@@ -111,7 +287,10 @@ public final class JtonObject extends JtonElement {
 	 * @return a set of members of this object.
 	 */
 	public Set<Map.Entry<String, JtonElement>> entrySet() {
-		return members.entrySet();
+		if (shape == null) {
+			return values == FROZEN ? Collections.unmodifiableMap(members).entrySet() : members.entrySet();
+		}
+		return new EntrySet();
 	}
 
 	/**
@@ -120,7 +299,10 @@ public final class JtonObject extends JtonElement {
 	 * @return a set of member keys as Strings
 	 */
 	public Set<String> keySet() {
-		return members.keySet();
+		if (shape == null) {
+			return values == FROZEN ? Collections.unmodifiableSet(members.keySet()) : members.keySet();
+		}
+		return new KeySet();
 	}
 
 	/**
@@ -129,7 +311,7 @@ public final class JtonObject extends JtonElement {
 	 * @return the number of key/value pairs in the object.
 	 */
 	public int size() {
-		return members.size();
+		return shape == null ? members.size() : shape.size();
 	}
 
 	/**
@@ -140,7 +322,10 @@ public final class JtonObject extends JtonElement {
 	 * @return true if there is a member with the specified name, false otherwise.
 	 */
 	public boolean has(String memberName) {
-		return members.containsKey(memberName);
+		if (shape == null) {
+			return members.containsKey(memberName);
+		}
+		return memberName != null && shape.slot(memberName) >= 0;
 	}
 
 	/**
@@ -150,7 +335,11 @@ public final class JtonObject extends JtonElement {
 	 * @return the member matching the name. Null if no such member exists.
 	 */
 	public JtonElement get(String memberName) {
-		return members.get(memberName);
+		if (shape == null) {
+			return members.get(memberName);
+		}
+		int slot = memberName == null ? -1 : shape.slot(memberName);
+		return slot < 0 ? null : values[slot];
 	}
 
 	/**
@@ -160,7 +349,7 @@ public final class JtonObject extends JtonElement {
 	 * @return the {@link JtonPrimitive} corresponding to the specified member.
 	 */
 	public JtonPrimitive getAsJsonPrimitive(String memberName) {
-		return (JtonPrimitive) members.get(memberName);
+		return (JtonPrimitive) get(memberName);
 	}
 
 	/**
@@ -170,7 +359,7 @@ public final class JtonObject extends JtonElement {
 	 * @return the {@link JsonArray} corresponding to the specified member.
 	 */
 	public JtonArray getAsJsonArray(String memberName) {
-		return (JtonArray) members.get(memberName);
+		return (JtonArray) get(memberName);
 	}
 
 	/**
@@ -180,16 +369,289 @@ public final class JtonObject extends JtonElement {
 	 * @return the {@link JsonObject} corresponding to the specified member.
 	 */
 	public JtonObject getAsJsonObject(String memberName) {
-		return (JtonObject) members.get(memberName);
+		return (JtonObject) get(memberName);
 	}
 
+	/**
+	 * Freezes this object and all its children. Frozen objects throw
+	 * {@link UnsupportedOperationException} on every change, so they can be
+	 * shared safely; {@link #deepCopy()} returns a mutable copy.
+	 *
+	 * @return this object.
+	 */
+	@Override
+	public JtonObject freeze() {
+		if (isFrozen()) {
+			return this;
+		}
+		for (Map.Entry<String, JtonElement> entry : entrySet()) {
+			entry.getValue().freeze();
+		}
+		if (shape != null) {
+			shape = shape.frozen();
+		} else {
+			values = FROZEN;
+		}
+		return this;
+	}
+
+	@Override
+	public boolean isFrozen() {
+		return shape != null ? shape.isFrozen() : values == FROZEN;
+	}
+
+	@Override
+	public JtonObject stripTransients() {
+		List<String> stripped = null;
+		for (Map.Entry<String, JtonElement> entry : entrySet()) {
+			JtonElement value = entry.getValue();
+			if (isTransient(value)) {
+				checkMutable();
+				if (stripped == null) {
+					stripped = new ArrayList<>();
+				}
+				stripped.add(entry.getKey());
+			} else {
+				value.stripTransients();
+			}
+		}
+		if (stripped != null) {
+			for (String property : stripped) {
+				remove(property);
+			}
+		}
+		return this;
+	}
+
+	private void checkMutable() {
+		if (isFrozen()) {
+			throw new UnsupportedOperationException("frozen");
+		}
+	}
+
+	/**
+	 * Returns the number of value slots held by this object, or -1 if its members
+	 * are stored in a map.
+	 */
+	int capacity() {
+		return shape == null ? -1 : values.length;
+	}
+
+	/**
+	 * Returns the map holding the members of this object, or {@code null} if it
+	 * has a shape.
+	 */
+	Map<String, JtonElement> members() {
+		return members;
+	}
+
+	/**
+	 * Returns the shape of this object, or {@code null} if its members are stored
+	 * in a map.
+	 */
+	Shape shape() {
+		return shape;
+	}
+
+	/**
+	 * Returns the value in {@code slot} of this object's shape.
+	 */
+	JtonElement valueAt(int slot) {
+		return values[slot];
+	}
+
+	/**
+	 * Compares members regardless of their order, like {@link Map#equals(Object)}.
+	 */
 	@Override
 	public boolean equals(Object o) {
-		return (o == this) || (o instanceof JtonObject && ((JtonObject) o).members.equals(members));
+		if (o == this) {
+			return true;
+		} else if (!(o instanceof JtonObject)) {
+			return false;
+		}
+		JtonObject other = (JtonObject) o;
+		if (shape != null && other.shape != null && shape.thawed() == other.shape.thawed()) {
+			for (int i = 0; i < shape.size(); i++) {
+				if (!values[i].equals(other.values[i])) {
+					return false;
+				}
+			}
+			return true;
+		} else if (size() != other.size()) {
+			return false;
+		}
+		for (Map.Entry<String, JtonElement> e : entrySet()) {
+			if (!e.getValue().equals(other.get(e.getKey()))) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	@Override
 	public int hashCode() {
-		return members.hashCode();
+		if (shape == null) {
+			return members.hashCode();
+		}
+		int h = 0;
+		for (int i = 0; i < shape.size(); i++) {
+			h += shape.key(i).hashCode() ^ values[i].hashCode();
+		}
+		return h;
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<String, JtonElement>> {
+		@Override
+		public int size() {
+			return JtonObject.this.size();
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, JtonElement>> iterator() {
+			return new SlotIterator<Map.Entry<String, JtonElement>>() {
+				@Override
+				Map.Entry<String, JtonElement> get(Shape shape, int slot) {
+					return new SlotEntry(shape, slot);
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object key = e.getKey();
+			JtonElement value = key instanceof String ? get((String) key) : null;
+			return value != null && value.equals(e.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (contains(o)) {
+				JtonObject.this.remove((String) ((Map.Entry<?, ?>) o).getKey());
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private final class KeySet extends AbstractSet<String> {
+		@Override
+		public int size() {
+			return JtonObject.this.size();
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return new SlotIterator<String>() {
+				@Override
+				String get(Shape shape, int slot) {
+					return shape.key(slot);
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof String && has((String) o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return o instanceof String && JtonObject.this.remove((String) o) != null;
+		}
+	}
+
+	/**
+	 * Iterates over the slots of the current shape. Adding or removing members
+	 * other than through {@link #remove()} changes the shape and fails the
+	 * iteration.
+	 */
+	private abstract class SlotIterator<T> implements Iterator<T> {
+		private Shape expected = shape;
+		private int next;
+		private int last = -1;
+
+		abstract T get(Shape shape, int slot);
+
+		@Override
+		public boolean hasNext() {
+			return next < expected.size();
+		}
+
+		@Override
+		public T next() {
+			if (shape != expected) {
+				throw new ConcurrentModificationException();
+			} else if (next >= expected.size()) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return get(expected, last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			} else if (shape != expected) {
+				throw new ConcurrentModificationException();
+			}
+			removeSlot(last);
+			expected = shape;
+			next = last;
+			last = -1;
+		}
+	}
+
+	private final class SlotEntry implements Map.Entry<String, JtonElement> {
+		private final Shape owner;
+		private final int slot;
+
+		SlotEntry(Shape owner, int slot) {
+			this.owner = owner;
+			this.slot = slot;
+		}
+
+		@Override
+		public String getKey() {
+			return owner.key(slot);
+		}
+
+		@Override
+		public JtonElement getValue() {
+			return shape == owner ? values[slot] : get(getKey());
+		}
+
+		@Override
+		public JtonElement setValue(JtonElement value) {
+			JtonElement old = getValue();
+			add(getKey(), value);
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			JtonElement value = getValue();
+			return getKey().equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			JtonElement value = getValue();
+			return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
 	}
 }
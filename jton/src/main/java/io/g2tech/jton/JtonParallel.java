@@ -0,0 +1,486 @@
+package io.g2tech.jton;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+import io.g2tech.jton.internal.JtonOutput;
+import io.g2tech.jton.internal.JtonPrinter;
+
+/**
+ * Fork-join implementations of {@link JtonElement#deepCopy()},
+ * {@link Object#equals(Object)}, {@link Object#hashCode()} and
+ * {@link JtonElement#writeTo(OutputStream, String)} for large trees.
+ * <p>
+ * The children of a container are processed in ranges whose estimated number
+ * of nodes is about {@value #GRAIN}. The size of a subtree is estimated from
+ * its size and the sizes of its children, all of them for containers of up to
+ * {@value #WEIGHT_SAMPLE} children and that many evenly spaced ones, including
+ * the last, for larger ones. Envelopes with scalar members first and a huge
+ * array last are therefore split like the array itself. A child
+ * whose estimate exceeds the grain is split again, and smaller ones use the
+ * sequential methods, so the results are always those of the sequential
+ * methods. Trees estimated below {@value #SEQUENTIAL_THRESHOLD} nodes are not
+ * handed to the pool at all.
+ */
+final class JtonParallel {
+  private static final int GRAIN = 1024;
+  private static final long SEQUENTIAL_THRESHOLD = 1 << 14;
+  private static final int WRITE_GRAIN = 1 << 13;
+  private static final int WINDOW_PER_THREAD = 4;
+  private static final int MAX_GATHER = 64;
+  private static final int WEIGHT_SAMPLE = 16;
+
+  private JtonParallel() {
+    throw new UnsupportedOperationException();
+  }
+
+  static JtonElement deepCopy(JtonElement element, ForkJoinPool pool) {
+    if (weight(element) < SEQUENTIAL_THRESHOLD) {
+      return element.copyTree();
+    }
+    JtonElement[] result = new JtonElement[1];
+    run(pool, () -> result[0] = copy(element));
+    return result[0];
+  }
+
+  static boolean equals(JtonElement element, Object o, ForkJoinPool pool) {
+    if (!(o instanceof JtonElement) || weight(element) < SEQUENTIAL_THRESHOLD) {
+      return element.equals(o);
+    }
+    boolean[] result = new boolean[1];
+    run(pool, () -> {
+      AtomicBoolean differs = new AtomicBoolean();
+      compare(element, (JtonElement) o, differs);
+      result[0] = !differs.get();
+    });
+    return result[0];
+  }
+
+  static int hashCode(JtonElement element, ForkJoinPool pool) {
+    if (weight(element) < SEQUENTIAL_THRESHOLD) {
+      return element.hashCode();
+    }
+    int[] result = new int[1];
+    run(pool, () -> result[0] = hash(element));
+    return result[0];
+  }
+
+  /**
+   * Writes {@code element} to {@code channel} encoded as UTF-8 and returns the
+   * number of bytes written.
+   */
+  static long write(JtonElement element, WritableByteChannel channel, String indent, ForkJoinPool pool)
+      throws IOException {
+    JtonPrinter printer = JtonPrinter.of(indent);
+    if (weight(element) < SEQUENTIAL_THRESHOLD) {
+      // streamed through a small buffer, so a misjudged tree costs no memory
+      JtonOutput out = JtonOutput.utf8(Channels.newOutputStream(channel), new byte[WRITE_GRAIN]);
+      printer.print(element, out, 0);
+      out.flush();
+      return out.count();
+    }
+    ChunkWriter writer = new ChunkWriter(channel, printer, pool != null ? pool : ForkJoinPool.commonPool());
+    writer.container(element, 0);
+    return writer.finish();
+  }
+
+  private static void run(ForkJoinPool pool, Runnable body) {
+    RecursiveAction task = new RecursiveAction() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected void compute() {
+        body.run();
+      }
+    };
+    if (ForkJoinTask.inForkJoinPool()) {
+      task.invoke();
+    } else {
+      (pool != null ? pool : ForkJoinPool.commonPool()).invoke(task);
+    }
+  }
+
+  private static JtonElement copy(JtonElement element) {
+    if (weight(element) <= GRAIN) {
+      return element.copyTree();
+    }
+    JtonElement[] children = children(element);
+    JtonElement[] copies = new JtonElement[children.length];
+    forEach(children, i -> copies[i] = copy(children[i]));
+    if (element instanceof JtonObject) {
+      return ((JtonObject) element).withValues(copies);
+    }
+    JtonArray result = new JtonArray(copies.length);
+    for (JtonElement copy : copies) {
+      result.add(copy);
+    }
+    return result;
+  }
+
+  /**
+   * Sets {@code differs} if {@code a} does not equal {@code b}. Gives up early
+   * once it is set.
+   */
+  private static void compare(JtonElement a, JtonElement b, AtomicBoolean differs) {
+    if (differs.get()) {
+      return;
+    } else if (weight(a) <= GRAIN || a.getClass() != b.getClass() || a == b) {
+      if (!a.equals(b)) {
+        differs.set(true);
+      }
+      return;
+    }
+    JtonElement[] left = children(a);
+    JtonElement[] right;
+    if (a instanceof JtonObject) {
+      JtonObject other = (JtonObject) b;
+      if (other.size() != left.length) {
+        differs.set(true);
+        return;
+      }
+      right = new JtonElement[left.length];
+      int i = 0;
+      for (String key : ((JtonObject) a).keySet()) {
+        right[i] = other.get(key);
+        if (right[i++] == null) {
+          differs.set(true);
+          return;
+        }
+      }
+    } else {
+      right = children(b);
+      if (right.length != left.length) {
+        differs.set(true);
+        return;
+      }
+    }
+    JtonElement[] others = right;
+    forEach(left, i -> compare(left[i], others[i], differs));
+  }
+
+  private static int hash(JtonElement element) {
+    if (weight(element) <= GRAIN) {
+      return element.hashCode();
+    }
+    JtonElement[] children = children(element);
+    int[] hashes = new int[children.length];
+    forEach(children, i -> hashes[i] = hash(children[i]));
+    int h;
+    if (element instanceof JtonObject) {
+      h = 0;
+      int i = 0;
+      for (String key : ((JtonObject) element).keySet()) {
+        h += key.hashCode() ^ hashes[i++];
+      }
+    } else {
+      h = 1;
+      for (int hash : hashes) {
+        h = 31 * h + hash;
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Runs {@code body} for the index of every child, in parallel ranges of about
+   * {@value #GRAIN} estimated nodes.
+   */
+  private static void forEach(JtonElement[] children, IntConsumer body) {
+    new RangeTask(children, body, 0, children.length).invoke();
+  }
+
+  private static JtonElement[] children(JtonElement element) {
+    if (element instanceof JtonObject) {
+      return ((JtonObject) element).valueArray();
+    }
+    JtonArray array = (JtonArray) element;
+    JtonElement[] children = new JtonElement[array.size()];
+    int i = 0;
+    for (JtonElement child : array) {
+      children[i++] = child;
+    }
+    return children;
+  }
+
+  /**
+   * Estimates the number of nodes of {@code element} two levels deep, from its
+   * size and the sizes of up to {@value #WEIGHT_SAMPLE} children.
+   */
+  private static long weight(JtonElement element) {
+    int size = size(element);
+    if (size == 0) {
+      return 1;
+    }
+    int samples = Math.min(size, WEIGHT_SAMPLE);
+    long grandchildren = 0;
+    if (element instanceof JtonArray) {
+      JtonArray array = (JtonArray) element;
+      for (int k = 0; k < samples; k++) {
+        grandchildren += size(array.get(sample(k, samples, size)));
+      }
+    } else {
+      JtonObject object = (JtonObject) element;
+      if (object.shape() != null) {
+        for (int k = 0; k < samples; k++) {
+          grandchildren += size(object.valueAt(sample(k, samples, size)));
+        }
+      } else {
+        // no random access: objects stored as maps are weighed in full
+        samples = 0;
+        for (JtonElement value : object.members().values()) {
+          grandchildren += size(value);
+          samples++;
+        }
+      }
+    }
+    return samples == 0 ? 1 + size : 1 + size + grandchildren * size / samples;
+  }
+
+  /**
+   * Returns the index of sample {@code k} of {@code samples} spread evenly over
+   * {@code size} children, the last one being the last child.
+   */
+  private static int sample(int k, int samples, int size) {
+    return samples == 1 ? 0 : (int) ((long) k * (size - 1) / (samples - 1));
+  }
+
+  private static int size(JtonElement element) {
+    if (element instanceof JtonArray) {
+      return ((JtonArray) element).size();
+    } else if (element instanceof JtonObject) {
+      return ((JtonObject) element).size();
+    }
+    return 0;
+  }
+
+  private static final class RangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final JtonElement[] children;
+    private final IntConsumer body;
+    private final int from;
+    private final int to;
+
+    RangeTask(JtonElement[] children, IntConsumer body, int from, int to) {
+      this.children = children;
+      this.body = body;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      int n = to - from;
+      if (n > 1 && (long) n * (1 + size(children[from])) > GRAIN) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new RangeTask(children, body, from, mid), new RangeTask(children, body, mid, to));
+      } else {
+        for (int i = from; i < to; i++) {
+          body.accept(i);
+        }
+      }
+    }
+  }
+
+  /**
+   * A growable byte buffer that a range is printed into.
+   */
+  private static final class Chunk extends ByteArrayOutputStream {
+    Chunk() {
+      super(1024);
+    }
+
+    JtonOutput output() {
+      return JtonOutput.utf8(this, new byte[1024]);
+    }
+
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+
+  /**
+   * Walks the large containers of a tree on the calling thread, forks the
+   * printing of ranges of small children and writes the results in order.
+   */
+  private static final class ChunkWriter {
+    private final WritableByteChannel channel;
+    private final JtonPrinter printer;
+    private final ForkJoinPool pool;
+    private final int window;
+    private final ArrayDeque<ForkJoinTask<ByteBuffer>> pending = new ArrayDeque<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private Chunk text = new Chunk();
+    private JtonOutput textOut = text.output();
+    private long written;
+
+    ChunkWriter(WritableByteChannel channel, JtonPrinter printer, ForkJoinPool pool) {
+      this.channel = channel;
+      this.printer = printer;
+      this.pool = pool;
+      this.window = WINDOW_PER_THREAD * pool.getParallelism();
+    }
+
+    /**
+     * Writes {@code element}, an array or object, nested {@code depth} levels
+     * deep, the same way {@link JtonPrinter} does.
+     */
+    void container(JtonElement element, int depth) throws IOException {
+      boolean isObject = element instanceof JtonObject;
+      JtonElement[] children = children(element);
+      String[] keys = isObject ? ((JtonObject) element).keySet().toArray(new String[0]) : null;
+      textOut.write(isObject ? '{' : '[');
+      boolean empty = true;
+      int i = 0;
+      while (i < children.length) {
+        JtonElement child = children[i];
+        if (weight(child) > WRITE_GRAIN) {
+          if (!empty) {
+            textOut.write(',');
+          }
+          empty = false;
+          printer.newline(textOut, depth + 1);
+          if (isObject) {
+            printer.name(keys[i], textOut);
+            textOut.write(printer.separator());
+          }
+          container(child, depth + 1);
+          i++;
+          continue;
+        }
+        int from = i;
+        long weight = 0;
+        boolean any = false;
+        while (i < children.length && weight <= WRITE_GRAIN) {
+          long w = weight(children[i]);
+          if (w > WRITE_GRAIN) {
+            break;
+          }
+          weight += w;
+          any |= !JtonPrinter.isSkipped(children[i]);
+          i++;
+        }
+        if (any) {
+          range(children, keys, from, i, depth + 1, !empty);
+          empty = false;
+        }
+      }
+      if (!empty) {
+        printer.newline(textOut, depth);
+      }
+      textOut.write(isObject ? '}' : ']');
+    }
+
+    /**
+     * Forks the printing of children {@code from} to {@code to}, preceded by a
+     * comma if {@code comma} is set.
+     */
+    private void range(JtonElement[] children, String[] keys, int from, int to, int depth, boolean comma)
+        throws IOException {
+      flushText();
+      ForkJoinTask<ByteBuffer> task = ForkJoinTask.adapt(() -> {
+        Chunk chunk = new Chunk();
+        JtonOutput out = chunk.output();
+        boolean first = !comma;
+        for (int i = from; i < to; i++) {
+          JtonElement child = children[i];
+          if (JtonPrinter.isSkipped(child)) {
+            continue;
+          }
+          if (!first) {
+            out.write(',');
+          }
+          first = false;
+          printer.newline(out, depth);
+          if (keys != null) {
+            printer.name(keys[i], out);
+            out.write(printer.separator());
+          }
+          printer.print(child, out, depth);
+        }
+        out.flush();
+        return chunk.toByteBuffer();
+      });
+      pool.execute(task);
+      pending.add(task);
+      if (pending.size() >= window) {
+        drain(window / 2);
+      }
+    }
+
+    /**
+     * Queues the brackets and names written since the last range.
+     */
+    private void flushText() throws IOException {
+      textOut.flush();
+      if (text.size() > 0) {
+        ByteBuffer buffer = text.toByteBuffer();
+        ForkJoinTask<ByteBuffer> done = ForkJoinTask.adapt(() -> buffer);
+        done.complete(buffer);
+        pending.add(done);
+        text = new Chunk();
+        textOut = text.output();
+      }
+    }
+
+    /**
+     * Writes queued buffers in order until at most {@code keep} are left.
+     */
+    private void drain(int keep) throws IOException {
+      while (pending.size() > keep) {
+        int n = 0;
+        while (n < gather.length && pending.size() > keep && (n == 0 || pending.peekFirst().isDone())) {
+          gather[n++] = pending.pollFirst().join();
+        }
+        written += write(channel, gather, n);
+        Arrays.fill(gather, 0, n, null);
+      }
+    }
+
+    long finish() throws IOException {
+      flushText();
+      drain(0);
+      return written;
+    }
+
+    /**
+     * Writes {@code n} buffers, with a gathering write if the channel supports
+     * it.
+     */
+    static long write(WritableByteChannel channel, ByteBuffer[] buffers, int n) throws IOException {
+      long total = 0;
+      for (int i = 0; i < n; i++) {
+        total += buffers[i].remaining();
+      }
+      if (channel instanceof GatheringByteChannel) {
+        GatheringByteChannel gathering = (GatheringByteChannel) channel;
+        int first = 0;
+        while (first < n) {
+          gathering.write(buffers, first, n - first);
+          while (first < n && !buffers[first].hasRemaining()) {
+            first++;
+          }
+        }
+      } else {
+        for (int i = 0; i < n; i++) {
+          while (buffers[i].hasRemaining()) {
+            channel.write(buffers[i]);
+          }
+        }
+      }
+      return total;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package io.g2tech.jton;
+
+/**
+ * Limits and syntax rules for {@link JtonParser#parse(String, JtonParseOptions)}
+ * and its overloads, for parsing input from untrusted sources.
+ *
+ * <pre>
+ * private static final JtonParseOptions REQUESTS = JtonParseOptions.DEFAULT
+ *     .withMaxInputSize(1 &lt;&lt; 20)
+ *     .withMaxDepth(64)
+ *     .withMaxStringLength(64 * 1024)
+ *     .withStrict(true);
+ * </pre>
+ *
+ * Limits are checked while the input is read, so oversize input fails with a
+ * {@link JtonLimitExceededException} as soon as a limit is crossed rather than
+ * after the tree is built. Byte arrays and strings that are too long are
+ * rejected before parsing starts. Containers are tracked without recursion, so
+ * deeply nested input cannot overflow the stack either.
+ * <p>
+ * Options are immutable; every {@code with} method returns a copy.
+ */
+public final class JtonParseOptions {
+  /**
+   * No limits and the same lenient rules as {@link JtonParser#parse(String)}.
+   */
+  public static final JtonParseOptions DEFAULT = new JtonParseOptions(Long.MAX_VALUE, Integer.MAX_VALUE,
+      Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, false);
+
+  private final long maxInputSize;
+  private final int maxDepth;
+  private final long maxNodes;
+  private final int maxStringLength;
+  private final int maxNumberLength;
+  private final int maxMembers;
+  private final boolean strict;
+
+  private JtonParseOptions(long maxInputSize, int maxDepth, long maxNodes, int maxStringLength, int maxNumberLength,
+      int maxMembers, boolean strict) {
+    this.maxInputSize = maxInputSize;
+    this.maxDepth = maxDepth;
+    this.maxNodes = maxNodes;
+    this.maxStringLength = maxStringLength;
+    this.maxNumberLength = maxNumberLength;
+    this.maxMembers = maxMembers;
+    this.strict = strict;
+  }
+
+  private static long checkLimit(long limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Negative limit: " + limit);
+    }
+    return limit;
+  }
+
+  /**
+   * Returns options that accept at most {@code maxInputSize} bytes of byte
+   * input or chars of character input. Compressed input is counted after
+   * decompression.
+   */
+  public JtonParseOptions withMaxInputSize(long maxInputSize) {
+    return new JtonParseOptions(checkLimit(maxInputSize), maxDepth, maxNodes, maxStringLength, maxNumberLength,
+        maxMembers, strict);
+  }
+
+  /**
+   * Returns options that accept at most {@code maxDepth} levels of nested arrays
+   * and objects. A depth of 0 accepts only a single scalar value.
+   */
+  public JtonParseOptions withMaxDepth(int maxDepth) {
+    return new JtonParseOptions(maxInputSize, (int) checkLimit(maxDepth), maxNodes, maxStringLength,
+        maxNumberLength, maxMembers, strict);
+  }
+
+  /**
+   * Returns options that accept at most {@code maxNodes} values in total,
+   * counting arrays and objects as well as scalars.
+   */
+  public JtonParseOptions withMaxNodes(long maxNodes) {
+    return new JtonParseOptions(maxInputSize, maxDepth, checkLimit(maxNodes), maxStringLength, maxNumberLength,
+        maxMembers, strict);
+  }
+
+  /**
+   * Returns options that accept strings and member names of at most
+   * {@code maxStringLength} chars after unescaping.
+   */
+  public JtonParseOptions withMaxStringLength(int maxStringLength) {
+    return new JtonParseOptions(maxInputSize, maxDepth, maxNodes, (int) checkLimit(maxStringLength),
+        maxNumberLength, maxMembers, strict);
+  }
+
+  /**
+   * Returns options that accept numbers of at most {@code maxNumberLength}
+   * chars, which bounds the cost of converting them later.
+   */
+  public JtonParseOptions withMaxNumberLength(int maxNumberLength) {
+    return new JtonParseOptions(maxInputSize, maxDepth, maxNodes, maxStringLength,
+        (int) checkLimit(maxNumberLength), maxMembers, strict);
+  }
+
+  /**
+   * Returns options that accept at most {@code maxMembers} members per object
+   * and elements per array. Duplicate member names count every time.
+   */
+  public JtonParseOptions withMaxMembers(int maxMembers) {
+    return new JtonParseOptions(maxInputSize, maxDepth, maxNodes, maxStringLength, maxNumberLength,
+        (int) checkLimit(maxMembers), strict);
+  }
+
+  /**
+   * Returns options that reject the lenient extensions accepted by default,
+   * such as comments, unquoted or single-quoted strings, NaN and empty input.
+   */
+  public JtonParseOptions withStrict(boolean strict) {
+    return new JtonParseOptions(maxInputSize, maxDepth, maxNodes, maxStringLength, maxNumberLength, maxMembers,
+        strict);
+  }
+
+  public long getMaxInputSize() {
+    return maxInputSize;
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  public long getMaxNodes() {
+    return maxNodes;
+  }
+
+  public int getMaxStringLength() {
+    return maxStringLength;
+  }
+
+  public int getMaxNumberLength() {
+    return maxNumberLength;
+  }
+
+  public int getMaxMembers() {
+    return maxMembers;
+  }
+
+  public boolean isStrict() {
+    return strict;
+  }
+
+  @Override
+  public String toString() {
+    return "JtonParseOptions[maxInputSize=" + maxInputSize + ", maxDepth=" + maxDepth + ", maxNodes=" + maxNodes
+        + ", maxStringLength=" + maxStringLength + ", maxNumberLength=" + maxNumberLength + ", maxMembers="
+        + maxMembers + ", strict=" + strict + "]";
+  }
+}
@@ -0,0 +1,255 @@
+package io.g2tech.jton;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Flow.Processor} that parses a stream of UTF-8 encoded
+ * {@link ByteBuffer}s and publishes every complete top-level
+ * {@link JtonElement} to its subscribers. Parsing is done by a
+ * {@link JtonPushParser}, so no thread ever blocks waiting for input.
+ * <p>
+ * Buffers are requested one at a time. Parsed elements are only submitted
+ * while every subscriber's buffer has room; the rest wait in the processor,
+ * and the next buffer is not requested until they have all been submitted.
+ * A slow subscriber therefore throttles the upstream publisher through demand
+ * rather than by blocking a thread. A syntax error cancels the upstream
+ * subscription and, once the elements parsed before it have been submitted,
+ * completes the subscribers exceptionally.
+ */
+public final class JtonParseProcessor extends SubmissionPublisher<JtonElement>
+    implements Flow.Processor<ByteBuffer, JtonElement> {
+  private final Queue<JtonElement> pending = new ConcurrentLinkedQueue<>();
+  private final JtonPushParser parser = new JtonPushParser(pending::add);
+  private final List<Tracking> tracked = new CopyOnWriteArrayList<>();
+  private final AtomicInteger wip = new AtomicInteger();
+  private volatile long submitted;
+  private volatile Flow.Subscription subscription;
+  private volatile boolean requested;
+  private volatile boolean done;
+  private volatile Throwable failure;
+
+  /**
+   * Creates a processor that delivers to subscribers using the
+   * {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+   */
+  public JtonParseProcessor() {
+    super();
+  }
+
+  /**
+   * Creates a processor that delivers to subscribers using the given executor
+   * and per-subscriber buffer capacity.
+   *
+   * @param executor          the executor used for delivery to subscribers.
+   * @param maxBufferCapacity the maximum capacity of each subscriber's buffer.
+   */
+  public JtonParseProcessor(Executor executor, int maxBufferCapacity) {
+    super(executor, maxBufferCapacity);
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super JtonElement> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber");
+    if (isSubscribed(subscriber)) {
+      subscriber.onError(new IllegalStateException("Duplicate subscribe"));
+      return;
+    }
+    Tracking tracking = new Tracking(subscriber);
+    synchronized (tracked) {
+      tracking.start = submitted;
+      tracked.add(tracking);
+      super.subscribe(tracking);
+    }
+  }
+
+  @Override
+  public boolean isSubscribed(Flow.Subscriber<? super JtonElement> subscriber) {
+    return getSubscribers().contains(subscriber);
+  }
+
+  @Override
+  public List<Flow.Subscriber<? super JtonElement>> getSubscribers() {
+    List<Flow.Subscriber<? super JtonElement>> subscribers = new ArrayList<>();
+    for (Flow.Subscriber<? super JtonElement> s : super.getSubscribers()) {
+      subscribers.add(s instanceof Tracking ? ((Tracking) s).delegate : s);
+    }
+    return subscribers;
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (this.subscription != null) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    drain();
+  }
+
+  @Override
+  public void onNext(ByteBuffer item) {
+    if (failure != null) {
+      // a buffer already in flight when the subscription was cancelled
+      return;
+    }
+    requested = false;
+    try {
+      parser.feed(item);
+    } catch (RuntimeException e) {
+      subscription.cancel();
+      fail(e);
+    }
+    drain();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    fail(throwable);
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    if (failure == null) {
+      try {
+        parser.endOfInput();
+      } catch (RuntimeException e) {
+        fail(e);
+      }
+    }
+    done = true;
+    drain();
+  }
+
+  /**
+   * Records {@code throwable} unless an earlier error was recorded, which is
+   * the one passed on to the subscribers.
+   */
+  private synchronized void fail(Throwable throwable) {
+    if (failure == null) {
+      failure = throwable;
+    }
+  }
+
+  /**
+   * Submits pending elements as far as the subscribers' buffers allow, then
+   * requests more input or closes. Called from the upstream and from every
+   * delivery; only one thread drains at a time.
+   */
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      JtonElement next;
+      while ((next = pending.peek()) != null && hasRoom()) {
+        pending.poll();
+        synchronized (tracked) {
+          submit(next);
+          submitted++;
+        }
+      }
+      if (next == null && !isClosed()) {
+        if (failure != null) {
+          if (backlog() == 0) {
+            closeExceptionally(failure);
+          }
+        } else if (done) {
+          close();
+        } else if (!requested && subscription != null) {
+          requested = true;
+          subscription.request(1);
+        }
+      }
+      missed = wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  /**
+   * Returns true if no subscriber's buffer is full, so that
+   * {@link #submit(Object)} returns without waiting. Counts the elements each
+   * subscriber has been sent and has taken itself, as the publisher's own lag
+   * estimate only catches up after a batch of deliveries.
+   */
+  private boolean hasRoom() {
+    return backlog() < getMaxBufferCapacity();
+  }
+
+  /**
+   * Returns the largest number of elements submitted to a subscriber but not
+   * yet delivered. An error is only signalled once this is zero, as it would
+   * overtake buffered elements.
+   */
+  private long backlog() {
+    long backlog = 0;
+    for (Tracking tracking : tracked) {
+      backlog = Math.max(backlog, submitted - tracking.start - tracking.delivered);
+    }
+    return backlog;
+  }
+
+  /**
+   * Passes signals to a subscriber, counts its deliveries and resumes
+   * draining after each one, as it frees a slot in that subscriber's buffer.
+   */
+  private final class Tracking implements Flow.Subscriber<JtonElement> {
+    final Flow.Subscriber<? super JtonElement> delegate;
+    long start;
+    volatile long delivered;
+
+    Tracking(Flow.Subscriber<? super JtonElement> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      delegate.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+          subscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+          subscription.cancel();
+          release();
+        }
+      });
+    }
+
+    @Override
+    public void onNext(JtonElement item) {
+      delivered++;
+      delegate.onNext(item);
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      release();
+      delegate.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      release();
+      delegate.onComplete();
+    }
+
+    private void release() {
+      tracked.remove(this);
+      drain();
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package io.g2tech.jton;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 
@@ -11,7 +12,16 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.MalformedJsonException;
 
+import io.g2tech.jton.JtonLimitExceededException.Limit;
+
+import io.g2tech.jton.internal.CountingInputStream;
+import io.g2tech.jton.internal.CountingReader;
+import io.g2tech.jton.internal.Instrumentation;
+import io.g2tech.jton.internal.JtonInput;
+import io.g2tech.jton.internal.LimitedParser;
 import io.g2tech.jton.internal.Streams;
+import io.g2tech.jton.internal.StructuralParser;
+import io.g2tech.jton.internal.Visitors;
 
 /**
  * A parser to parse JSON into a parse tree of {@link JtonElement}s
@@ -31,7 +41,10 @@ public final class JtonParser {
    * @throws JsonParseException if the specified text is not valid JSON
    */
   public static JtonElement parse(String json) {
-    return parse(new StringReader(json));
+    if (Instrumentation.isParseMeasured()) {
+      return Instrumentation.parse(() -> read(new StringReader(json)), json::length);
+    }
+    return read(new StringReader(json));
   }
 
   /**
@@ -43,9 +56,86 @@ public final class JtonParser {
    * @throws JsonParseException if the specified text is not valid JSON
    */
   public static JtonElement parse(Reader reader) throws JsonIOException, JsonSyntaxException {
+    if (Instrumentation.isParseMeasured()) {
+      CountingReader counting = new CountingReader(reader);
+      return Instrumentation.parse(() -> read(counting), counting::getCount);
+    }
+    return read(reader);
+  }
+
+  /**
+   * Parses the JSON read from the specified stream into a parse tree. Gzip
+   * compressed input is decompressed, and the input is decoded as UTF-16 if it
+   * starts with a UTF-16 byte order mark or a zero byte and as UTF-8 otherwise.
+   * The stream is read to the end of the first value but not closed.
+   *
+   * @param in JSON text, possibly gzip compressed
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JsonParseException if the specified text is not valid JSON
+   */
+  public static JtonElement parse(InputStream in) throws JsonIOException, JsonSyntaxException {
+    if (Instrumentation.isParseMeasured()) {
+      CountingInputStream counting = new CountingInputStream(in);
+      return Instrumentation.parse(() -> read(counting), counting::getCount);
+    }
+    return read(in);
+  }
+
+  /**
+   * Parses the specified JSON bytes into a parse tree, detecting compression
+   * and encoding like {@link #parse(InputStream)}.
+   *
+   * @param json JSON text, possibly gzip compressed
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JsonParseException if the specified text is not valid JSON
+   */
+  public static JtonElement parse(byte[] json) throws JsonSyntaxException {
+    return parse(json, 0, json.length);
+  }
+
+  /**
+   * Parses {@code length} bytes of JSON starting at {@code offset} into a parse
+   * tree, detecting compression and encoding like {@link #parse(InputStream)}.
+   *
+   * @param json   JSON text, possibly gzip compressed
+   * @param offset the index of the first byte to parse
+   * @param length the number of bytes to parse
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JsonParseException if the specified text is not valid JSON
+   */
+  public static JtonElement parse(byte[] json, int offset, int length) throws JsonSyntaxException {
+    if (offset < 0 || length < 0 || offset > json.length - length) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (Instrumentation.isParseMeasured()) {
+      return Instrumentation.parse(() -> read(json, offset, length), () -> length);
+    }
+    return read(json, offset, length);
+  }
+
+  private static JtonElement read(InputStream in) {
+    try (Reader reader = JtonInput.open(in)) {
+      return read(reader);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  static JtonElement read(byte[] json, int offset, int length) {
+    try (Reader reader = JtonInput.open(json, offset, length)) {
+      return read(reader);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  static JtonElement read(Reader reader) {
     try {
       JsonReader jsonReader = new JsonReader(reader);
-      JtonElement element = parse(jsonReader);
+      JtonElement element = read(jsonReader);
       if (!element.isJtonNull() && jsonReader.peek() != JsonToken.END_DOCUMENT) {
         throw new JsonSyntaxException("Did not consume the entire document.");
       }
@@ -59,6 +149,263 @@ public final class JtonParser {
     }
   }
 
+  /**
+   * Parses the specified JSON string into a parse tree, enforcing the limits and
+   * syntax rules of {@code options}.
+   *
+   * @param json    JSON text
+   * @param options limits and syntax rules
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JtonLimitExceededException if the text exceeds a limit
+   * @throws JsonParseException         if the specified text is not valid JSON
+   */
+  public static JtonElement parse(String json, JtonParseOptions options) {
+    if (json.length() > options.getMaxInputSize()) {
+      throw new JtonLimitExceededException(Limit.INPUT_SIZE, options.getMaxInputSize(), null);
+    }
+    if (Instrumentation.isParseMeasured()) {
+      return Instrumentation.parse(() -> read(new StringReader(json), options), json::length);
+    }
+    return read(new StringReader(json), options);
+  }
+
+  /**
+   * Parses the JSON read from {@code reader} into a parse tree, enforcing the
+   * limits and syntax rules of {@code options}. The input size is counted in
+   * chars.
+   *
+   * @param reader  JSON text
+   * @param options limits and syntax rules
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JtonLimitExceededException if the text exceeds a limit
+   * @throws JsonParseException         if the specified text is not valid JSON
+   */
+  public static JtonElement parse(Reader reader, JtonParseOptions options)
+      throws JsonIOException, JsonSyntaxException {
+    Reader limited = JtonInput.limit(reader, options.getMaxInputSize());
+    if (Instrumentation.isParseMeasured()) {
+      CountingReader counting = new CountingReader(limited);
+      return Instrumentation.parse(() -> read(counting, options), counting::getCount);
+    }
+    return read(limited, options);
+  }
+
+  /**
+   * Parses the JSON read from the specified stream into a parse tree, detecting
+   * compression and encoding like {@link #parse(InputStream)} and enforcing the
+   * limits and syntax rules of {@code options}. The input size is counted in
+   * bytes after decompression.
+   *
+   * @param in      JSON text, possibly gzip compressed
+   * @param options limits and syntax rules
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JtonLimitExceededException if the text exceeds a limit
+   * @throws JsonParseException         if the specified text is not valid JSON
+   */
+  public static JtonElement parse(InputStream in, JtonParseOptions options)
+      throws JsonIOException, JsonSyntaxException {
+    if (Instrumentation.isParseMeasured()) {
+      CountingInputStream counting = new CountingInputStream(in);
+      return Instrumentation.parse(() -> read(counting, options), counting::getCount);
+    }
+    return read(in, options);
+  }
+
+  /**
+   * Parses the specified JSON bytes into a parse tree, detecting compression
+   * and encoding like {@link #parse(InputStream)} and enforcing the limits and
+   * syntax rules of {@code options}. Input longer than the maximum input size
+   * is rejected before it is read.
+   *
+   * @param json    JSON text, possibly gzip compressed
+   * @param options limits and syntax rules
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JtonLimitExceededException if the text exceeds a limit
+   * @throws JsonParseException         if the specified text is not valid JSON
+   */
+  public static JtonElement parse(byte[] json, JtonParseOptions options) throws JsonSyntaxException {
+    return parse(json, 0, json.length, options);
+  }
+
+  /**
+   * Parses {@code length} bytes of JSON starting at {@code offset} into a parse
+   * tree, enforcing the limits and syntax rules of {@code options}.
+   *
+   * @param json    JSON text, possibly gzip compressed
+   * @param offset  the index of the first byte to parse
+   * @param length  the number of bytes to parse
+   * @param options limits and syntax rules
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JtonLimitExceededException if the text exceeds a limit
+   * @throws JsonParseException         if the specified text is not valid JSON
+   * @see #parse(byte[], JtonParseOptions)
+   */
+  public static JtonElement parse(byte[] json, int offset, int length, JtonParseOptions options)
+      throws JsonSyntaxException {
+    if (offset < 0 || length < 0 || offset > json.length - length) {
+      throw new IndexOutOfBoundsException();
+    } else if (length > options.getMaxInputSize()) {
+      throw new JtonLimitExceededException(Limit.INPUT_SIZE, options.getMaxInputSize(), null);
+    }
+    if (Instrumentation.isParseMeasured()) {
+      return Instrumentation.parse(() -> read(json, offset, length, options), () -> length);
+    }
+    return read(json, offset, length, options);
+  }
+
+  private static JtonElement read(InputStream in, JtonParseOptions options) {
+    try (Reader reader = JtonInput.open(in, options.getMaxInputSize())) {
+      return read(reader, options);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  private static JtonElement read(byte[] json, int offset, int length, JtonParseOptions options) {
+    try (Reader reader = JtonInput.open(json, offset, length, options.getMaxInputSize())) {
+      return read(reader, options);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  private static JtonElement read(Reader reader, JtonParseOptions options) {
+    try {
+      JsonReader jsonReader = new JsonReader(reader);
+      jsonReader.setLenient(!options.isStrict());
+      JtonElement element = LimitedParser.parse(jsonReader, options);
+      // like parse(Reader), trailing content is checked strictly
+      jsonReader.setLenient(false);
+      if ((options.isStrict() || !element.isJtonNull()) && jsonReader.peek() != JsonToken.END_DOCUMENT) {
+        throw new JsonSyntaxException("Did not consume the entire document.");
+      }
+      return element;
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  /**
+   * Parses the specified UTF-8 encoded JSON into a parse tree using the indexed
+   * parser. The input is first scanned for structural characters in blocks of 64
+   * bytes, then the tree is built from that index. Unlike the other
+   * {@code parse} methods this one is strict and rejects lenient extensions such
+   * as comments or unquoted strings.
+   *
+   * @param json UTF-8 encoded JSON text
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JsonSyntaxException if the specified text is not valid JSON
+   */
+  public static JtonElement parseUtf8(byte[] json) throws JsonSyntaxException {
+    return parseUtf8(json, 0, json.length);
+  }
+
+  /**
+   * Parses {@code length} bytes of UTF-8 encoded JSON starting at
+   * {@code offset} into a parse tree using the indexed parser.
+   *
+   * @param json   UTF-8 encoded JSON text
+   * @param offset the index of the first byte to parse
+   * @param length the number of bytes to parse
+   * @return a parse tree of {@link JtonElement}s corresponding to the specified
+   *         JSON
+   * @throws JsonSyntaxException if the specified text is not valid JSON
+   * @see #parseUtf8(byte[])
+   */
+  public static JtonElement parseUtf8(byte[] json, int offset, int length) throws JsonSyntaxException {
+    if (offset < 0 || length < 0 || offset > json.length - length) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (Instrumentation.isParseMeasured()) {
+      return Instrumentation.parse(() -> new StructuralParser().parse(json, offset, length), () -> length);
+    }
+    return new StructuralParser().parse(json, offset, length);
+  }
+
+  /**
+   * Parses the specified UTF-8 encoded JSON with the indexed parser and reports
+   * its structure to {@code visitor} instead of building a parse tree. Keys and
+   * strings are passed as views where possible. Like
+   * {@link #parseUtf8(byte[])}, this method is strict.
+   *
+   * @param json    UTF-8 encoded JSON text
+   * @param visitor receives the structure of the document
+   * @throws JsonSyntaxException if the specified text is not valid JSON
+   */
+  public static void parseUtf8(byte[] json, JtonVisitor visitor) throws JsonSyntaxException {
+    parseUtf8(json, 0, json.length, visitor);
+  }
+
+  /**
+   * Parses {@code length} bytes of UTF-8 encoded JSON starting at
+   * {@code offset} and reports its structure to {@code visitor}.
+   *
+   * @param json    UTF-8 encoded JSON text
+   * @param offset  the index of the first byte to parse
+   * @param length  the number of bytes to parse
+   * @param visitor receives the structure of the document
+   * @throws JsonSyntaxException if the specified text is not valid JSON
+   * @see #parseUtf8(byte[], JtonVisitor)
+   */
+  public static void parseUtf8(byte[] json, int offset, int length, JtonVisitor visitor)
+      throws JsonSyntaxException {
+    if (offset < 0 || length < 0 || offset > json.length - length) {
+      throw new IndexOutOfBoundsException();
+    }
+    new StructuralParser().parse(json, offset, length, visitor);
+  }
+
+  /**
+   * Parses the JSON read from {@code reader} and reports its structure to
+   * {@code visitor} instead of building a parse tree. The same lenient rules as
+   * for {@link #parse(Reader)} apply.
+   *
+   * @param reader  JSON text
+   * @param visitor receives the structure of the document
+   * @throws JsonParseException if the specified text is not valid JSON
+   */
+  public static void parse(Reader reader, JtonVisitor visitor) throws JsonIOException, JsonSyntaxException {
+    JsonReader jsonReader = new JsonReader(reader);
+    jsonReader.setLenient(true);
+    if (!Visitors.read(jsonReader, visitor)) {
+      return;
+    }
+    try {
+      if (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+        throw new JsonSyntaxException("Did not consume the entire document.");
+      }
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  /**
+   * Parses the JSON read from {@code in}, detecting compression and encoding
+   * like {@link #parse(InputStream)}, and reports its structure to
+   * {@code visitor}.
+   *
+   * @param in      JSON text, possibly gzip compressed
+   * @param visitor receives the structure of the document
+   * @throws JsonParseException if the specified text is not valid JSON
+   */
+  public static void parse(InputStream in, JtonVisitor visitor) throws JsonIOException, JsonSyntaxException {
+    try (Reader reader = JtonInput.open(in)) {
+      parse(reader, visitor);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
   /**
    * Returns the next value from the JSON stream as a parse tree.
    *
@@ -66,6 +413,13 @@ public final class JtonParser {
    *                            text is not valid JSON
    */
   public static JtonElement parse(JsonReader reader) throws JsonIOException, JsonSyntaxException {
+    if (Instrumentation.isParseMeasured()) {
+      return Instrumentation.parse(() -> read(reader), () -> -1);
+    }
+    return read(reader);
+  }
+
+  private static JtonElement read(JsonReader reader) {
     boolean lenient = reader.isLenient();
     reader.setLenient(true);
     try {
@@ -0,0 +1,334 @@
+package io.g2tech.jton;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compiled accessor for the element at a fixed path below a root element,
+ * such as {@code "a.b[3].c"}. A path is a sequence of member names separated
+ * by dots and array indices in brackets; names containing dots or brackets can
+ * be quoted, as in {@code "a[\"x.y\"]"}. The empty path denotes the root.
+ *
+ * <pre>
+ * private static final JtonPath PRICE = JtonPath.compile("items[0].price.amount");
+ * ...
+ * long amount = PRICE.getLong(order);
+ * </pre>
+ *
+ * Each member step remembers the slot its name occupied in the last object
+ * {@link Shape} it was resolved in, so repeated access to documents with the
+ * same layout reads the value directly instead of searching the names. Objects
+ * stored as maps are searched as usual.
+ * <p>
+ * Paths are immutable apart from that cache and can be shared between
+ * threads.
+ */
+public final class JtonPath {
+  private static final Step[] NO_STEPS = {};
+
+  private final String path;
+  private final Step[] steps;
+
+  private JtonPath(String path, Step[] steps) {
+    this.path = path;
+    this.steps = steps;
+  }
+
+  /**
+   * Compiles {@code path}.
+   *
+   * @throws IllegalArgumentException if {@code path} is malformed.
+   */
+  public static JtonPath compile(String path) {
+    List<Step> steps = new ArrayList<>();
+    int n = path.length();
+    int i = 0;
+    while (i < n) {
+      int start = i;
+      char c = path.charAt(i);
+      if (c == '[') {
+        i++;
+        if (i < n && (path.charAt(i) == '"' || path.charAt(i) == '\'')) {
+          char quote = path.charAt(i++);
+          StringBuilder name = new StringBuilder();
+          while (i < n && path.charAt(i) != quote) {
+            if (path.charAt(i) == '\\' && i + 1 < n) {
+              i++;
+            }
+            name.append(path.charAt(i++));
+          }
+          if (i + 1 >= n || path.charAt(i + 1) != ']') {
+            throw malformed(path, i);
+          }
+          i += 2;
+          steps.add(new Step(path.substring(0, start), name.toString(), -1));
+        } else {
+          int end = path.indexOf(']', i);
+          if (end <= i) {
+            throw malformed(path, i);
+          }
+          for (int j = i; j < end; j++) {
+            if (path.charAt(j) < '0' || path.charAt(j) > '9') {
+              throw malformed(path, j);
+            }
+          }
+          int index;
+          try {
+            index = Integer.parseInt(path.substring(i, end));
+          } catch (NumberFormatException e) {
+            throw malformed(path, i);
+          }
+          i = end + 1;
+          steps.add(new Step(path.substring(0, start), null, index));
+        }
+      } else {
+        if (c == '.' && i > 0) {
+          i++;
+        } else if (i > 0 || c == '.') {
+          throw malformed(path, i);
+        }
+        int from = i;
+        while (i < n && path.charAt(i) != '.' && path.charAt(i) != '[') {
+          i++;
+        }
+        if (from == i) {
+          throw malformed(path, i);
+        }
+        steps.add(new Step(path.substring(0, start), path.substring(from, i), -1));
+      }
+    }
+    return new JtonPath(path, steps.toArray(NO_STEPS));
+  }
+
+  private static IllegalArgumentException malformed(String path, int position) {
+    return new IllegalArgumentException("Malformed path at " + position + ": " + path);
+  }
+
+  /**
+   * Returns a path of plain member names, which may contain any character.
+   */
+  static JtonPath members(String[] names) {
+    Step[] steps = new Step[names.length];
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i < names.length; i++) {
+      steps[i] = new Step(path.toString(), names[i], -1);
+      path.append(i == 0 ? "" : ".").append(names[i]);
+    }
+    return new JtonPath(path.toString(), steps);
+  }
+
+  /**
+   * Returns the element at this path below {@code root}.
+   *
+   * @return the element, or {@code null} if a member or index along the path is
+   *         missing. An explicit null is returned as {@link JtonNull}.
+   */
+  public JtonElement get(JtonElement root) {
+    JtonElement element = root;
+    for (Step step : steps) {
+      if (element == null) {
+        return null;
+      }
+      element = step.get(element);
+    }
+    return element;
+  }
+
+  /**
+   * Returns true if there is an element at this path below {@code root}, even if
+   * it is {@link JtonNull}.
+   */
+  public boolean has(JtonElement root) {
+    return get(root) != null;
+  }
+
+  /**
+   * Returns the element at this path below {@code root}, or
+   * {@code defaultValue} if it is missing or null.
+   */
+  public JtonElement getOrDefault(JtonElement root, JtonElement defaultValue) {
+    JtonElement element = get(root);
+    return element == null || element.isJtonNull() ? defaultValue : element;
+  }
+
+  /**
+   * Returns the element at this path below {@code root} as a string.
+   *
+   * @throws IllegalStateException if the element is missing or null.
+   * @see JtonElement#getAsString()
+   */
+  public String getString(JtonElement root) {
+    return value(root).getAsString();
+  }
+
+  /**
+   * Returns the element at this path below {@code root} as a long.
+   *
+   * @throws IllegalStateException if the element is missing or null.
+   * @see JtonElement#getAsLong()
+   */
+  public long getLong(JtonElement root) {
+    return value(root).getAsLong();
+  }
+
+  /**
+   * Returns the element at this path below {@code root} as an int.
+   *
+   * @throws IllegalStateException if the element is missing or null.
+   * @see JtonElement#getAsInt()
+   */
+  public int getInt(JtonElement root) {
+    return value(root).getAsInt();
+  }
+
+  /**
+   * Returns the element at this path below {@code root} as a double.
+   *
+   * @throws IllegalStateException if the element is missing or null.
+   * @see JtonElement#getAsDouble()
+   */
+  public double getDouble(JtonElement root) {
+    return value(root).getAsDouble();
+  }
+
+  /**
+   * Returns the element at this path below {@code root} as a boolean.
+   *
+   * @throws IllegalStateException if the element is missing or null.
+   * @see JtonElement#getAsBoolean()
+   */
+  public boolean getBoolean(JtonElement root) {
+    return value(root).getAsBoolean();
+  }
+
+  private JtonElement value(JtonElement root) {
+    JtonElement element = get(root);
+    if (element == null || element.isJtonNull()) {
+      throw new IllegalStateException("No value at " + path);
+    }
+    return element;
+  }
+
+  /**
+   * Sets the element at this path below {@code root} to {@code value}. Missing
+   * or null members and array elements along the path are created as objects or
+   * arrays, depending on the step that follows them; arrays are padded with
+   * nulls up to the index.
+   *
+   * @param root  the root element.
+   * @param value the new value, {@code null} for {@link JtonNull}.
+   * @return the previous element at this path, or {@code null} if there was
+   *         none.
+   * @throws IllegalArgumentException      if this is the empty path.
+   * @throws IllegalStateException         if an element along the path is not
+   *                                       the object or array the path needs.
+   * @throws UnsupportedOperationException if a container to be changed is
+   *                                       frozen.
+   */
+  public JtonElement set(JtonElement root, JtonElement value) {
+    if (steps.length == 0) {
+      throw new IllegalArgumentException("Cannot set the root");
+    }
+    JtonElement element = root;
+    int last = steps.length - 1;
+    for (int i = 0; i < last; i++) {
+      Step step = steps[i];
+      JtonElement next = step.get(element);
+      if (next == null || next.isJtonNull()) {
+        next = steps[i + 1].name == null ? new JtonArray() : new JtonObject();
+        step.put(element, next);
+      }
+      element = next;
+    }
+    return steps[last].put(element, value == null ? JtonNull.INSTANCE : value);
+  }
+
+  /**
+   * Returns the path this accessor was compiled from.
+   */
+  @Override
+  public String toString() {
+    return path;
+  }
+
+  /**
+   * One member name or array index of a path.
+   */
+  private static final class Step {
+    private final String parent;
+    private final String name;
+    private final int index;
+
+    /**
+     * The shape and slot of the last lookup. The cache holds only final fields,
+     * so threads racing on it see either a complete entry or none, and the worst
+     * outcome is an extra search.
+     */
+    private Cache cache;
+
+    Step(String parent, String name, int index) {
+      this.parent = parent;
+      this.name = name;
+      this.index = index;
+    }
+
+    JtonElement get(JtonElement element) {
+      if (name == null) {
+        if (!(element instanceof JtonArray)) {
+          return null;
+        }
+        JtonArray array = (JtonArray) element;
+        return index < array.size() ? array.get(index) : null;
+      } else if (!(element instanceof JtonObject)) {
+        return null;
+      }
+      JtonObject object = (JtonObject) element;
+      Shape shape = object.shape();
+      if (shape == null) {
+        return object.get(name);
+      }
+      shape = shape.thawed();
+      Cache c = cache;
+      int slot;
+      if (c != null && c.shape == shape) {
+        slot = c.slot;
+      } else {
+        slot = shape.slot(name);
+        cache = new Cache(shape, slot);
+      }
+      return slot < 0 ? null : object.valueAt(slot);
+    }
+
+    JtonElement put(JtonElement element, JtonElement value) {
+      if (name == null) {
+        if (!(element instanceof JtonArray)) {
+          throw new IllegalStateException("Not a JSON Array at '" + parent + "': " + element);
+        }
+        JtonArray array = (JtonArray) element;
+        if (index < array.size()) {
+          return array.set(index, value);
+        }
+        while (array.size() < index) {
+          array.add(JtonNull.INSTANCE);
+        }
+        array.add(value);
+        return null;
+      } else if (!(element instanceof JtonObject)) {
+        throw new IllegalStateException("Not a JSON Object at '" + parent + "': " + element);
+      }
+      JtonElement previous = get(element);
+      ((JtonObject) element).add(name, value);
+      return previous;
+    }
+  }
+
+  private static final class Cache {
+    final Shape shape;
+    final int slot;
+
+    Cache(Shape shape, int slot) {
+      this.shape = shape;
+      this.slot = slot;
+    }
+  }
+}
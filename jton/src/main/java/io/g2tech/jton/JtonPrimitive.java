@@ -1,8 +1,12 @@
 package io.g2tech.jton;
 
 import com.google.gson.internal.$Gson$Preconditions;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.function.Supplier;
 
 import com.google.gson.internal.LazilyParsedNumber;
 
@@ -12,6 +16,18 @@ import com.google.gson.internal.LazilyParsedNumber;
  */
 public final class JtonPrimitive extends JtonElement {
 
+	/**
+	 * How strongly a transient primitive holds on to its value.
+	 */
+	public enum ReferenceStrength {
+		/** The value is held until the primitive is unreachable. */
+		STRONG,
+		/** The value may be cleared when memory runs low, see {@link SoftReference}. */
+		SOFT,
+		/** The value may be cleared once it is not otherwise reachable, see {@link WeakReference}. */
+		WEAK
+	}
+
 	private final Object value;
 	
 	private boolean jtonTransient = false;
@@ -73,6 +89,41 @@ public final class JtonPrimitive extends JtonElement {
 		}
 	}
 
+	/**
+	 * Creates a transient primitive holding {@code value} with the given
+	 * reference strength. Transient primitives are skipped when the tree is
+	 * written.
+	 *
+	 * @param value    the value, possibly {@code null}.
+	 * @param strength how strongly the value is held.
+	 */
+	public JtonPrimitive(Object value, ReferenceStrength strength) {
+		this(value, strength, null);
+	}
+
+	/**
+	 * Creates a transient primitive holding {@code value} with the given
+	 * reference strength, which is computed by {@code recompute} when it is
+	 * first needed, if {@code value} is {@code null}, and again after it has
+	 * been cleared. Concurrent readers may compute the value more than once.
+	 * <p>
+	 * Unless it is strong and has no {@code recompute} supplier, the primitive
+	 * is only equal to primitives created with the same {@code recompute}
+	 * supplier and strength, or to itself if there is none, so that its hash
+	 * code doesn't change when the value is cleared or recomputed.
+	 *
+	 * @param value     the initial value, or {@code null} to compute it lazily.
+	 * @param strength  how strongly the value is held.
+	 * @param recompute computes the value, or {@code null} if it cannot be
+	 *                  recomputed.
+	 */
+	public JtonPrimitive(Object value, ReferenceStrength strength, Supplier<?> recompute) {
+		$Gson$Preconditions.checkNotNull(strength);
+		this.value = strength == ReferenceStrength.STRONG && recompute == null ? value
+				: new TransientValue(value, strength, recompute);
+		this.jtonTransient = true;
+	}
+
 	/**
 	 * Returns the same value as primitives are immutable.
 	 */
@@ -85,8 +136,23 @@ public final class JtonPrimitive extends JtonElement {
 		return jtonTransient;
 	}
 	
+	/**
+	 * Returns the value of this primitive. For a transient primitive whose value
+	 * has been cleared this is {@code null}, unless it can be recomputed.
+	 */
 	public Object getValue() {
-		return value;
+		return value();
+	}
+
+	/**
+	 * Returns the strength with which this primitive holds its value.
+	 */
+	public ReferenceStrength getReferenceStrength() {
+		return value instanceof TransientValue ? ((TransientValue) value).strength : ReferenceStrength.STRONG;
+	}
+
+	private Object value() {
+		return value instanceof TransientValue ? ((TransientValue) value).get() : value;
 	}
 
 	/**
@@ -95,7 +161,7 @@ public final class JtonPrimitive extends JtonElement {
 	 * @return true if this primitive contains a boolean value, false otherwise.
 	 */
 	public boolean isBoolean() {
-		return value instanceof Boolean;
+		return value() instanceof Boolean;
 	}
 
 	/**
@@ -106,7 +172,7 @@ public final class JtonPrimitive extends JtonElement {
 	@Override
 	public boolean getAsBoolean() {
 		if (isBoolean()) {
-			return ((Boolean) value).booleanValue();
+			return ((Boolean) value()).booleanValue();
 		}
 		// Check to see if the value as a String is "true" in any case.
 		return Boolean.parseBoolean(getAsString());
@@ -118,7 +184,7 @@ public final class JtonPrimitive extends JtonElement {
 	 * @return true if this primitive contains a Number, false otherwise.
 	 */
 	public boolean isNumber() {
-		return value instanceof Number;
+		return value() instanceof Number;
 	}
 
 	/**
@@ -129,6 +195,7 @@ public final class JtonPrimitive extends JtonElement {
 	 */
 	@Override
 	public Number getAsNumber() {
+		Object value = value();
 		return value instanceof String ? new LazilyParsedNumber((String) value) : (Number) value;
 	}
 
@@ -138,7 +205,7 @@ public final class JtonPrimitive extends JtonElement {
 	 * @return true if this primitive contains a String value, false otherwise.
 	 */
 	public boolean isString() {
-		return value instanceof String;
+		return value() instanceof String;
 	}
 
 	/**
@@ -151,9 +218,9 @@ public final class JtonPrimitive extends JtonElement {
 		if (isNumber()) {
 			return getAsNumber().toString();
 		} else if (isBoolean()) {
-			return ((Boolean) value).toString();
+			return ((Boolean) value()).toString();
 		} else {
-			return (String) value;
+			return (String) value();
 		}
 	}
 
@@ -177,6 +244,7 @@ public final class JtonPrimitive extends JtonElement {
 	 */
 	@Override
 	public BigDecimal getAsBigDecimal() {
+		Object value = value();
 		return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
 	}
 
@@ -189,6 +257,7 @@ public final class JtonPrimitive extends JtonElement {
 	 */
 	@Override
 	public BigInteger getAsBigInteger() {
+		Object value = value();
 		return value instanceof BigInteger ? (BigInteger) value : new BigInteger(value.toString());
 	}
 
@@ -249,17 +318,21 @@ public final class JtonPrimitive extends JtonElement {
 
 	@Override
 	public int hashCode() {
+		if (this.value instanceof TransientValue) {
+			return ((TransientValue) this.value).identityHashCode();
+		}
+		Object value = value();
 		if (value == null) {
 			return 31;
 		}
 		// Using recommended hashing algorithm from Effective Java for longs and doubles
 		if (isIntegral(this)) {
-			long value = getAsNumber().longValue();
-			return (int) (value ^ (value >>> 32));
+			long bits = getAsNumber().longValue();
+			return (int) (bits ^ (bits >>> 32));
 		}
 		if (value instanceof Number) {
-			long value = Double.doubleToLongBits(getAsNumber().doubleValue());
-			return (int) (value ^ (value >>> 32));
+			long bits = Double.doubleToLongBits(getAsNumber().doubleValue());
+			return (int) (bits ^ (bits >>> 32));
 		}
 		return value.hashCode();
 	}
@@ -273,20 +346,27 @@ public final class JtonPrimitive extends JtonElement {
 			return false;
 		}
 		JtonPrimitive other = (JtonPrimitive) obj;
+		if (this.value instanceof TransientValue || other.value instanceof TransientValue) {
+			// a held value may be cleared or recomputed, so compare the holders instead
+			return this.value instanceof TransientValue && other.value instanceof TransientValue
+					&& ((TransientValue) this.value).isSame((TransientValue) other.value);
+		}
+		Object value = value();
+		Object otherValue = other.value();
 		if (value == null) {
-			return other.value == null;
+			return otherValue == null;
 		}
 		if (isIntegral(this) && isIntegral(other)) {
 			return getAsNumber().longValue() == other.getAsNumber().longValue();
 		}
-		if (value instanceof Number && other.value instanceof Number) {
+		if (value instanceof Number && otherValue instanceof Number) {
 			double a = getAsNumber().doubleValue();
 			// Java standard types other than double return true for two NaN. So, need
 			// special handling for double.
 			double b = other.getAsNumber().doubleValue();
 			return a == b || (Double.isNaN(a) && Double.isNaN(b));
 		}
-		return value.equals(other.value);
+		return value.equals(otherValue);
 	}
 
 	/**
@@ -294,8 +374,9 @@ public final class JtonPrimitive extends JtonElement {
 	 * Short, Byte, BigInteger)
 	 */
 	private static boolean isIntegral(JtonPrimitive primitive) {
-		if (primitive.value instanceof Number) {
-			Number number = (Number) primitive.value;
+		Object value = primitive.value();
+		if (value instanceof Number) {
+			Number number = (Number) value;
 			return number instanceof BigInteger || number instanceof Long || number instanceof Integer
 					|| number instanceof Short || number instanceof Byte;
 		}
@@ -319,4 +400,55 @@ public final class JtonPrimitive extends JtonElement {
 
 		return false;
 	}
+
+	/**
+	 * The value of a transient primitive held through a soft or weak reference,
+	 * or computed lazily.
+	 */
+	private static final class TransientValue {
+		private final ReferenceStrength strength;
+		private final Supplier<?> recompute;
+		private volatile Object ref;
+
+		TransientValue(Object value, ReferenceStrength strength, Supplier<?> recompute) {
+			this.strength = strength;
+			this.recompute = recompute;
+			this.ref = value == null ? null : wrap(value);
+		}
+
+		Object get() {
+			Object r = ref;
+			Object value = r instanceof Reference ? ((Reference<?>) r).get() : r;
+			if (value == null && recompute != null) {
+				value = recompute.get();
+				if (value != null) {
+					ref = wrap(value);
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * Returns true if both hold the same value for as long as they live: they
+		 * are the same holder, or recompute with the same supplier.
+		 */
+		boolean isSame(TransientValue other) {
+			return this == other || recompute != null && recompute == other.recompute && strength == other.strength;
+		}
+
+		int identityHashCode() {
+			return System.identityHashCode(recompute != null ? recompute : this);
+		}
+
+		private Object wrap(Object value) {
+			switch (strength) {
+			case SOFT:
+				return new SoftReference<>(value);
+			case WEAK:
+				return new WeakReference<>(value);
+			default:
+				return value;
+			}
+		}
+	}
 }
@@ -0,0 +1,477 @@
+package io.g2tech.jton;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+
+/**
+ * A non-blocking parser that is fed with bytes as they arrive. Every complete
+ * top-level value is handed to the sink as soon as its last byte has been seen.
+ * The parse state is kept between calls to {@link #feed(ByteBuffer)}, so the
+ * input may be split anywhere, including in the middle of a token or of a UTF-8
+ * sequence.
+ * <p>
+ * The input is a sequence of zero or more UTF-8 encoded JSON values separated
+ * by whitespace, such as newline-delimited JSON; values that follow each other
+ * without whitespace, as in {@code {}{}} or {@code 1true}, are rejected.
+ * Unlike {@link JtonParser}, the push parser is strict: comments, unquoted
+ * strings and the other lenient extensions are rejected.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class JtonPushParser {
+  private static final int VALUE = 0;
+  private static final int FIRST_VALUE = 1;
+  private static final int FIRST_NAME = 2;
+  private static final int NAME = 3;
+  private static final int COLON = 4;
+  private static final int AFTER_VALUE = 5;
+  private static final int STRING = 6;
+  private static final int ESCAPE = 7;
+  private static final int UNICODE = 8;
+  private static final int NUMBER = 9;
+  private static final int LITERAL = 10;
+  private static final int BOM = 11;
+  private static final int SEPARATOR = 12;
+  private static final int FAILED = 13;
+  private static final int CLOSED = 14;
+
+  private final Consumer<? super JtonElement> sink;
+
+  private int state = VALUE;
+  private long offset;
+
+  private JtonElement[] stack = new JtonElement[32];
+  private String[] names = new String[32];
+  private int depth;
+
+  private final StringBuilder text = new StringBuilder();
+  private boolean textIsName;
+  private int utf8Remaining;
+  private int utf8Min;
+  private int codePoint;
+  private int hexCount;
+
+  private String literal;
+  private int literalPos;
+
+  /**
+   * Creates a push parser that hands every complete top-level value to
+   * {@code sink}.
+   *
+   * @param sink receives the parsed values, in input order.
+   */
+  public JtonPushParser(Consumer<? super JtonElement> sink) {
+    this.sink = Objects.requireNonNull(sink, "sink");
+  }
+
+  /**
+   * Consumes all remaining bytes of {@code input}. Returns as soon as the bytes
+   * have been processed; values completed by them have been passed to the sink
+   * by then.
+   *
+   * @param input the next chunk of input.
+   * @throws JsonSyntaxException   if the input is not valid JSON.
+   * @throws IllegalStateException if the parser has failed or was closed.
+   */
+  public void feed(ByteBuffer input) {
+    ensureOpen();
+    try {
+      while (input.hasRemaining()) {
+        if (state == STRING) {
+          scanString(input);
+        } else {
+          offset++;
+          consume(input.get() & 0xff);
+        }
+      }
+    } catch (RuntimeException e) {
+      state = FAILED;
+      throw e;
+    }
+  }
+
+  /**
+   * Signals that no more input follows. A number at the very end of the input is
+   * completed here.
+   *
+   * @throws JsonSyntaxException   if the input ends inside a value.
+   * @throws IllegalStateException if the parser has failed or was closed.
+   */
+  public void endOfInput() {
+    ensureOpen();
+    try {
+      if (state == NUMBER) {
+        finishNumber();
+      }
+      if (state != VALUE && state != SEPARATOR || depth != 0) {
+        throw syntaxError("Unexpected end of input");
+      }
+      state = CLOSED;
+    } catch (RuntimeException e) {
+      state = FAILED;
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of bytes consumed so far.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  private void ensureOpen() {
+    if (state == FAILED) {
+      throw new IllegalStateException("Parser failed");
+    }
+    if (state == CLOSED) {
+      throw new IllegalStateException("Parser closed");
+    }
+  }
+
+  private void consume(int c) {
+    switch (state) {
+    case VALUE:
+      if (!isWhitespace(c)) {
+        if (c == 0xef && offset == 1) {
+          literalPos = 1;
+          state = BOM;
+        } else {
+          startValue(c);
+        }
+      }
+      break;
+    case SEPARATOR:
+      if (!isWhitespace(c)) {
+        throw unexpected(c);
+      }
+      state = VALUE;
+      break;
+    case FIRST_VALUE:
+      if (!isWhitespace(c)) {
+        if (c == ']') {
+          closeContainer();
+        } else {
+          startValue(c);
+        }
+      }
+      break;
+    case FIRST_NAME:
+    case NAME:
+      if (!isWhitespace(c)) {
+        if (c == '"') {
+          startString(true);
+        } else if (c == '}' && state == FIRST_NAME) {
+          closeContainer();
+        } else {
+          throw unexpected(c);
+        }
+      }
+      break;
+    case COLON:
+      if (!isWhitespace(c)) {
+        if (c != ':') {
+          throw unexpected(c);
+        }
+        state = VALUE;
+      }
+      break;
+    case AFTER_VALUE:
+      if (!isWhitespace(c)) {
+        boolean inObject = stack[depth - 1] instanceof JtonObject;
+        if (c == ',') {
+          state = inObject ? NAME : VALUE;
+        } else if (c == (inObject ? '}' : ']')) {
+          closeContainer();
+        } else {
+          throw unexpected(c);
+        }
+      }
+      break;
+    case ESCAPE:
+      escape(c);
+      break;
+    case UNICODE:
+      int digit = Character.digit(c, 16);
+      if (digit < 0) {
+        throw unexpected(c);
+      }
+      codePoint = codePoint << 4 | digit;
+      if (++hexCount == 4) {
+        text.append((char) codePoint);
+        state = STRING;
+      }
+      break;
+    case NUMBER:
+      if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+        text.append((char) c);
+      } else {
+        finishNumber();
+        consume(c);
+      }
+      break;
+    case LITERAL:
+      if (c != literal.charAt(literalPos)) {
+        throw unexpected(c);
+      }
+      if (++literalPos == literal.length()) {
+        char first = literal.charAt(0);
+        completeValue(first == 'n' ? JtonNull.INSTANCE : new JtonPrimitive(first == 't'));
+      }
+      break;
+    case BOM:
+      if (c != (literalPos == 1 ? 0xbb : 0xbf)) {
+        throw unexpected(c);
+      }
+      if (++literalPos == 3) {
+        state = VALUE;
+      }
+      break;
+    default:
+      throw new AssertionError(state);
+    }
+  }
+
+  private void startValue(int c) {
+    switch (c) {
+    case '{':
+      push(new JtonObject());
+      state = FIRST_NAME;
+      break;
+    case '[':
+      push(new JtonArray());
+      state = FIRST_VALUE;
+      break;
+    case '"':
+      startString(false);
+      break;
+    case 't':
+      startLiteral("true");
+      break;
+    case 'f':
+      startLiteral("false");
+      break;
+    case 'n':
+      startLiteral("null");
+      break;
+    default:
+      if (c == '-' || (c >= '0' && c <= '9')) {
+        text.setLength(0);
+        text.append((char) c);
+        state = NUMBER;
+      } else {
+        throw unexpected(c);
+      }
+    }
+  }
+
+  private void startLiteral(String value) {
+    literal = value;
+    literalPos = 1;
+    state = LITERAL;
+  }
+
+  private void startString(boolean name) {
+    text.setLength(0);
+    textIsName = name;
+    state = STRING;
+  }
+
+  private void scanString(ByteBuffer input) {
+    while (input.hasRemaining()) {
+      int c = input.get() & 0xff;
+      offset++;
+      if (utf8Remaining > 0) {
+        continueUtf8(c);
+      } else if (c == '"') {
+        finishString();
+        return;
+      } else if (c == '\\') {
+        state = ESCAPE;
+        return;
+      } else if (c < 0x20) {
+        throw syntaxError("Unescaped control character in string");
+      } else if (c < 0x80) {
+        text.append((char) c);
+      } else {
+        startUtf8(c);
+      }
+    }
+  }
+
+  private void startUtf8(int c) {
+    if (c >= 0xc2 && c <= 0xdf) {
+      utf8Remaining = 1;
+      utf8Min = 0x80;
+      codePoint = c & 0x1f;
+    } else if (c >= 0xe0 && c <= 0xef) {
+      utf8Remaining = 2;
+      utf8Min = 0x800;
+      codePoint = c & 0x0f;
+    } else if (c >= 0xf0 && c <= 0xf4) {
+      utf8Remaining = 3;
+      utf8Min = 0x10000;
+      codePoint = c & 0x07;
+    } else {
+      throw syntaxError("Malformed UTF-8 input");
+    }
+  }
+
+  private void continueUtf8(int c) {
+    if ((c & 0xc0) != 0x80) {
+      throw syntaxError("Malformed UTF-8 input");
+    }
+    codePoint = codePoint << 6 | (c & 0x3f);
+    if (--utf8Remaining == 0) {
+      if (codePoint < utf8Min || codePoint > Character.MAX_CODE_POINT
+          || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+        throw syntaxError("Malformed UTF-8 input");
+      }
+      text.appendCodePoint(codePoint);
+    }
+  }
+
+  private void escape(int c) {
+    switch (c) {
+    case '"':
+    case '\\':
+    case '/':
+      text.append((char) c);
+      break;
+    case 'b':
+      text.append('\b');
+      break;
+    case 'f':
+      text.append('\f');
+      break;
+    case 'n':
+      text.append('\n');
+      break;
+    case 'r':
+      text.append('\r');
+      break;
+    case 't':
+      text.append('\t');
+      break;
+    case 'u':
+      codePoint = 0;
+      hexCount = 0;
+      state = UNICODE;
+      return;
+    default:
+      throw unexpected(c);
+    }
+    state = STRING;
+  }
+
+  private void finishString() {
+    String value = text.toString();
+    if (textIsName) {
+      names[depth - 1] = value;
+      state = COLON;
+    } else {
+      completeValue(new JtonPrimitive(value));
+    }
+  }
+
+  private void finishNumber() {
+    String value = text.toString();
+    if (!isValidNumber(value)) {
+      throw syntaxError("Malformed number " + value);
+    }
+    completeValue(new JtonPrimitive(new LazilyParsedNumber(value)));
+  }
+
+  private void push(JtonElement container) {
+    if (depth == stack.length) {
+      stack = Arrays.copyOf(stack, depth * 2);
+      names = Arrays.copyOf(names, depth * 2);
+    }
+    stack[depth++] = container;
+  }
+
+  private void closeContainer() {
+    JtonElement container = stack[--depth];
+    stack[depth] = null;
+    names[depth] = null;
+    completeValue(container);
+  }
+
+  private void completeValue(JtonElement value) {
+    if (depth == 0) {
+      state = SEPARATOR;
+      sink.accept(value);
+      return;
+    }
+    JtonElement parent = stack[depth - 1];
+    if (parent instanceof JtonObject) {
+      ((JtonObject) parent).add(names[depth - 1], value);
+    } else {
+      ((JtonArray) parent).add(value);
+    }
+    state = AFTER_VALUE;
+  }
+
+  private JsonSyntaxException unexpected(int c) {
+    return syntaxError(String.format("Unexpected byte 0x%02x", c));
+  }
+
+  private JsonSyntaxException syntaxError(String message) {
+    return new JsonSyntaxException(message + " at offset " + offset);
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  private static boolean isValidNumber(String s) {
+    int n = s.length();
+    int i = 0;
+    if (i < n && s.charAt(i) == '-') {
+      i++;
+    }
+    if (i < n && s.charAt(i) == '0') {
+      i++;
+    } else {
+      int start = i;
+      while (i < n && isDigit(s.charAt(i))) {
+        i++;
+      }
+      if (i == start) {
+        return false;
+      }
+    }
+    if (i < n && s.charAt(i) == '.') {
+      int start = ++i;
+      while (i < n && isDigit(s.charAt(i))) {
+        i++;
+      }
+      if (i == start) {
+        return false;
+      }
+    }
+    if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+      i++;
+      if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+        i++;
+      }
+      int start = i;
+      while (i < n && isDigit(s.charAt(i))) {
+        i++;
+      }
+      if (i == start) {
+        return false;
+      }
+    }
+    return i == n;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+}
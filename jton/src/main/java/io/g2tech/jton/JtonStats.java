@@ -0,0 +1,309 @@
+package io.g2tech.jton;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.internal.LazilyParsedNumber;
+
+import io.g2tech.jton.internal.MemoryLayout;
+
+/**
+ * Statistics about a tree of {@link JtonElement}s, collected in a single pass:
+ * node counts per type, nesting depth, member names, string data and the
+ * estimated retained heap size.
+ * <p>
+ * Sizes follow the object layout of the running VM (compressed or uncompressed
+ * references and class pointers, object alignment). The estimate assumes the
+ * tree does not share subtrees; {@link JtonNull#INSTANCE}, the
+ * {@link Boolean} constants and the member names held by shared object shapes
+ * are not counted, and the values of transient primitives are counted as
+ * references only.
+ */
+public final class JtonStats {
+  private final MemoryLayout layout;
+  private final Set<String> keys;
+
+  private long objects;
+  private long arrays;
+  private long strings;
+  private long numbers;
+  private long booleans;
+  private long nulls;
+  private long transients;
+  private long members;
+  private long stringBytes;
+  private int maxDepth;
+  private long retainedSize;
+
+  private JtonStats(MemoryLayout layout, boolean collectKeys) {
+    this.layout = layout;
+    this.keys = collectKeys ? new HashSet<>() : null;
+  }
+
+  /**
+   * Collects statistics about {@code root} and all its children.
+   *
+   * @param root the root of the tree.
+   * @return the statistics.
+   */
+  public static JtonStats of(JtonElement root) {
+    JtonStats stats = new JtonStats(MemoryLayout.CURRENT, true);
+    stats.retainedSize = stats.walk(root);
+    return stats;
+  }
+
+  /**
+   * Returns the estimated retained size of {@code root} without collecting the
+   * other statistics.
+   */
+  static long retainedSize(JtonElement root) {
+    return new JtonStats(MemoryLayout.CURRENT, false).walk(root);
+  }
+
+  /**
+   * Visits every element of the tree with an explicit stack, so deep trees
+   * don't overflow the thread's stack, and returns the sum of their sizes.
+   */
+  private long walk(JtonElement root) {
+    Deque<JtonElement> elements = new ArrayDeque<>();
+    Deque<Integer> depths = new ArrayDeque<>();
+    long bytes = 0;
+    JtonElement element = root;
+    int depth = 0;
+    while (true) {
+      bytes += visit(element, depth, elements, depths);
+      if (elements.isEmpty()) {
+        return bytes;
+      }
+      element = elements.pop();
+      depth = depths.pop();
+    }
+  }
+
+  /**
+   * Returns the size of {@code element} itself and pushes its children.
+   */
+  private long visit(JtonElement element, int depth, Deque<JtonElement> elements, Deque<Integer> depths) {
+    MemoryLayout l = layout;
+    if (element instanceof JtonObject) {
+      JtonObject object = (JtonObject) element;
+      objects++;
+      maxDepth = Math.max(maxDepth, depth + 1);
+      int size = object.size();
+      members += size;
+      int capacity = object.capacity();
+      long bytes;
+      if (capacity >= 0) {
+        // JtonObject and its values; member names belong to the shared shape
+        bytes = l.object(3 * l.reference()) + (capacity == 0 ? 0 : l.referenceArray(capacity));
+      } else {
+        // JtonObject, LinkedTreeMap and its header node, plus one node and name per member
+        long node = l.object(7 * l.reference() + 4);
+        bytes = l.object(3 * l.reference()) + l.object(5 * l.reference() + 8) + (size + 1) * node;
+      }
+      for (Map.Entry<String, JtonElement> e : object.entrySet()) {
+        String key = e.getKey();
+        if (keys != null) {
+          keys.add(key);
+        }
+        stringBytes += MemoryLayout.stringBytes(key);
+        if (capacity < 0) {
+          bytes += l.string(key);
+        }
+        if (e.getValue() != null) {
+          elements.push(e.getValue());
+          depths.push(depth + 1);
+        } else {
+          nulls++;
+        }
+      }
+      return bytes;
+    } else if (element instanceof JtonArray) {
+      JtonArray array = (JtonArray) element;
+      arrays++;
+      maxDepth = Math.max(maxDepth, depth + 1);
+      // JtonArray, ArrayList and its backing array
+      long bytes = l.object(l.reference() + 4) + l.object(8 + l.reference())
+          + l.referenceArray(arrayListCapacity(array.size()));
+      for (JtonElement e : array) {
+        if (e != null) {
+          elements.push(e);
+          depths.push(depth + 1);
+        } else {
+          nulls++;
+        }
+      }
+      return bytes;
+    } else if (element instanceof JtonPrimitive) {
+      return primitive((JtonPrimitive) element);
+    }
+    nulls++;
+    return 0;
+  }
+
+  private long primitive(JtonPrimitive primitive) {
+    MemoryLayout l = layout;
+    long bytes = l.object(l.reference() + 1);
+    if (primitive.isJtonTransient()) {
+      transients++;
+      return bytes;
+    }
+    Object value = primitive.getValue();
+    if (value instanceof String) {
+      strings++;
+      stringBytes += MemoryLayout.stringBytes((String) value);
+      bytes += l.string((String) value);
+    } else if (value instanceof Number) {
+      numbers++;
+      bytes += number((Number) value);
+    } else {
+      booleans++;
+    }
+    return bytes;
+  }
+
+  private long number(Number value) {
+    MemoryLayout l = layout;
+    if (value instanceof LazilyParsedNumber) {
+      return l.object(l.reference()) + l.string(value.toString());
+    } else if (value instanceof Long || value instanceof Double) {
+      return l.object(8);
+    } else if (value instanceof BigInteger) {
+      return bigInteger((BigInteger) value);
+    } else if (value instanceof BigDecimal) {
+      BigDecimal decimal = (BigDecimal) value;
+      long bytes = l.object(2 * l.reference() + 16);
+      if (decimal.precision() > 18) {
+        bytes += bigInteger(decimal.unscaledValue());
+      }
+      return bytes;
+    }
+    return l.object(4);
+  }
+
+  private long bigInteger(BigInteger value) {
+    // signum, mag and four cached ints
+    return layout.object(layout.reference() + 20) + layout.array(4, value.bitLength() / 32 + 1);
+  }
+
+  /**
+   * Returns the capacity an {@link java.util.ArrayList} created with the default
+   * constructor has after {@code size} appends.
+   */
+  private static long arrayListCapacity(int size) {
+    if (size == 0) {
+      return 0;
+    }
+    long capacity = 10;
+    while (capacity < size) {
+      capacity += capacity >> 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Returns the number of {@link JtonObject}s.
+   */
+  public long getObjectCount() {
+    return objects;
+  }
+
+  /**
+   * Returns the number of {@link JtonArray}s.
+   */
+  public long getArrayCount() {
+    return arrays;
+  }
+
+  /**
+   * Returns the number of string primitives.
+   */
+  public long getStringCount() {
+    return strings;
+  }
+
+  /**
+   * Returns the number of number primitives.
+   */
+  public long getNumberCount() {
+    return numbers;
+  }
+
+  /**
+   * Returns the number of boolean primitives.
+   */
+  public long getBooleanCount() {
+    return booleans;
+  }
+
+  /**
+   * Returns the number of {@link JtonNull}s.
+   */
+  public long getNullCount() {
+    return nulls;
+  }
+
+  /**
+   * Returns the number of transient primitives.
+   */
+  public long getTransientCount() {
+    return transients;
+  }
+
+  /**
+   * Returns the total number of elements.
+   */
+  public long getNodeCount() {
+    return objects + arrays + strings + numbers + booleans + nulls + transients;
+  }
+
+  /**
+   * Returns the total number of object members.
+   */
+  public long getMemberCount() {
+    return members;
+  }
+
+  /**
+   * Returns the number of distinct member names.
+   */
+  public int getDistinctKeyCount() {
+    return keys.size();
+  }
+
+  /**
+   * Returns the bytes of character data held by string values and member
+   * names: one per character for Latin-1 strings, two otherwise.
+   */
+  public long getStringBytes() {
+    return stringBytes;
+  }
+
+  /**
+   * Returns the nesting depth; a primitive root has depth 0, an array of
+   * primitives depth 1.
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * Returns the estimated number of heap bytes retained by the tree.
+   */
+  public long getRetainedSize() {
+    return retainedSize;
+  }
+
+  @Override
+  public String toString() {
+    return "JtonStats[objects=" + objects + ", arrays=" + arrays + ", strings=" + strings + ", numbers=" + numbers
+        + ", booleans=" + booleans + ", nulls=" + nulls + ", transients=" + transients + ", members=" + members
+        + ", distinctKeys=" + keys.size() + ", stringBytes=" + stringBytes + ", maxDepth=" + maxDepth
+        + ", retainedSize=" + retainedSize + "]";
+  }
+}
@@ -0,0 +1,1049 @@
+package io.g2tech.jton;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.DoublePredicate;
+import java.util.function.IntConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import io.g2tech.jton.internal.Streams;
+
+/**
+ * A read-only, columnar copy of an array of records. Every member name becomes
+ * a column holding the member's value for each row in a typed array: integral
+ * numbers in a {@code long[]}, other numbers in a {@code double[]}, strings as
+ * codes into a dictionary, booleans in a bitmap. Columns with mixed types or
+ * nested values keep {@link JtonElement}s. Null and missing values are tracked
+ * in bitmaps.
+ * <p>
+ * Scans, filters and aggregations run as primitive loops over fixed size
+ * chunks of rows, in parallel for large tables. Filters return the matching
+ * rows as a {@link BitSet} that can be combined with {@link BitSet#and} and
+ * passed to the aggregations.
+ * <p>
+ * Numbers are normalized: {@code 1.10} reads back as {@code 1.1}, and integral
+ * values in a column that also holds fractions become doubles.
+ */
+public final class JtonTable {
+  private static final int CHUNK = 1 << 14;
+  private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  /**
+   * The storage type of a column.
+   */
+  public enum ColumnType {
+    /** Integral numbers that fit a {@code long}. */
+    LONG,
+    /** Numbers, at least one of them not integral. */
+    DOUBLE,
+    /** Dictionary encoded strings. */
+    STRING,
+    /** Booleans. */
+    BOOLEAN,
+    /** Mixed types, arrays or objects. */
+    ELEMENT,
+    /** Only nulls or missing values. */
+    NULL
+  }
+
+  private final int rowCount;
+  private final Map<String, Column> columns;
+
+  private JtonTable(int rowCount, Map<String, Column> columns) {
+    this.rowCount = rowCount;
+    this.columns = Collections.unmodifiableMap(columns);
+  }
+
+  /**
+   * Creates a table from an array of objects. Values are copied, so later
+   * changes to {@code records} do not show in the table.
+   *
+   * @param records an array whose elements are all {@link JtonObject}s.
+   * @return the table, with one column per distinct member name in order of
+   *         first occurrence.
+   * @throws IllegalArgumentException if an element is not an object.
+   */
+  public static JtonTable of(JtonArray records) {
+    Builder builder = new Builder();
+    for (JtonElement record : records) {
+      if (!record.isJtonObject()) {
+        throw new IllegalArgumentException("Row " + builder.rows + " is not an object");
+      }
+      for (Map.Entry<String, JtonElement> e : record.getAsJtonObject().entrySet()) {
+        builder.column(e.getKey()).value(e.getValue());
+      }
+      builder.rows++;
+    }
+    return builder.build();
+  }
+
+  /**
+   * Reads a JSON array of objects straight into a table, without building a
+   * parse tree for the rows. Nested arrays and objects are parsed into
+   * {@link JtonElement}s.
+   *
+   * @param reader JSON text
+   * @return the table.
+   * @throws JsonSyntaxException if the text is not a JSON array of objects.
+   * @throws JsonIOException     if reading fails.
+   */
+  public static JtonTable parse(Reader reader) throws JsonIOException, JsonSyntaxException {
+    Builder builder = new Builder();
+    JsonReader in = new JsonReader(reader);
+    in.setLenient(true);
+    try {
+      in.beginArray();
+      while (in.hasNext()) {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+          throw new JsonSyntaxException("Row " + builder.rows + " is not an object");
+        }
+        in.beginObject();
+        while (in.hasNext()) {
+          ColumnBuilder column = builder.column(in.nextName());
+          switch (in.peek()) {
+          case NUMBER:
+            column.number(in.nextString());
+            break;
+          case STRING:
+            column.string(in.nextString());
+            break;
+          case BOOLEAN:
+            column.bool(in.nextBoolean());
+            break;
+          case NULL:
+            in.nextNull();
+            column.nullValue();
+            break;
+          default:
+            column.element(Streams.parse(in));
+          }
+        }
+        in.endObject();
+        builder.rows++;
+      }
+      in.endArray();
+    } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the number of rows.
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the column names in order of first occurrence.
+   */
+  public List<String> getColumnNames() {
+    return new ArrayList<>(columns.keySet());
+  }
+
+  /**
+   * Returns the column with the given name.
+   *
+   * @param name the member name.
+   * @return the column, or {@code null} if no row has such a member.
+   */
+  public Column column(String name) {
+    return columns.get(name);
+  }
+
+  /**
+   * Returns row {@code row} as a new object. Missing members are left out and
+   * members are in column order.
+   */
+  public JtonObject row(int row) {
+    if (row < 0 || row >= rowCount) {
+      throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+    }
+    JtonObject object = new JtonObject();
+    for (Column column : columns.values()) {
+      if (!column.isMissing(row)) {
+        object.add(column.name, column.get(row));
+      }
+    }
+    return object;
+  }
+
+  /**
+   * Converts the table back to an array of objects.
+   */
+  public JtonArray toJtonArray() {
+    JtonArray array = new JtonArray(rowCount);
+    for (int row = 0; row < rowCount; row++) {
+      array.add(row(row));
+    }
+    return array;
+  }
+
+  /**
+   * Converts the selected rows back to an array of objects.
+   *
+   * @param rows the rows to convert, for example the result of a filter.
+   */
+  public JtonArray toJtonArray(BitSet rows) {
+    JtonArray array = new JtonArray(rows.cardinality());
+    for (int row = rows.nextSetBit(0); row >= 0 && row < rowCount; row = rows.nextSetBit(row + 1)) {
+      array.add(row(row));
+    }
+    return array;
+  }
+
+  /**
+   * Groups rows by the value of {@code keyColumn} and summarizes the numeric
+   * {@code valueColumn} per group.
+   *
+   * @see #groupBy(String, String, BitSet)
+   */
+  public Map<Object, DoubleSummaryStatistics> groupBy(String keyColumn, String valueColumn) {
+    return groupBy(keyColumn, valueColumn, null);
+  }
+
+  /**
+   * Groups the selected rows by the value of {@code keyColumn} and summarizes
+   * the numeric {@code valueColumn} per group. Keys are the column values as
+   * {@link String}, {@link Long}, {@link Double}, {@link Boolean} or
+   * {@link JtonElement}; rows where the key is null or missing are grouped under
+   * the {@code null} key. Groups are ordered by first occurrence, with the
+   * {@code null} group last. Null values are not counted. Long values beyond
+   * 2<sup>53</sup> are rounded; use {@link #groupByLong(String, String, BitSet)}
+   * for exact statistics of a {@link ColumnType#LONG} column.
+   *
+   * @param keyColumn   the column to group by.
+   * @param valueColumn a {@link ColumnType#LONG} or {@link ColumnType#DOUBLE}
+   *                    column.
+   * @param rows        the rows to include, or {@code null} for all rows.
+   * @return the statistics of each group.
+   * @throws IllegalArgumentException if a column does not exist.
+   */
+  public Map<Object, DoubleSummaryStatistics> groupBy(String keyColumn, String valueColumn, BitSet rows) {
+    Column values = existing(valueColumn);
+    values.checkNumeric();
+    return group(existing(keyColumn), values, rows, DoubleSummaryStatistics::new,
+        (group, row) -> group.accept(values.getDouble(row)), DoubleSummaryStatistics::combine);
+  }
+
+  /**
+   * Groups rows by the value of {@code keyColumn} and summarizes the
+   * {@link ColumnType#LONG} {@code valueColumn} per group.
+   *
+   * @see #groupByLong(String, String, BitSet)
+   */
+  public Map<Object, LongSummaryStatistics> groupByLong(String keyColumn, String valueColumn) {
+    return groupByLong(keyColumn, valueColumn, null);
+  }
+
+  /**
+   * Groups the selected rows like {@link #groupBy(String, String, BitSet)} and
+   * summarizes the {@link ColumnType#LONG} {@code valueColumn} per group in
+   * exact long arithmetic. Sums overflow like those of
+   * {@link LongSummaryStatistics}.
+   *
+   * @param keyColumn   the column to group by.
+   * @param valueColumn a {@link ColumnType#LONG} column.
+   * @param rows        the rows to include, or {@code null} for all rows.
+   * @return the statistics of each group.
+   * @throws IllegalArgumentException      if a column does not exist.
+   * @throws UnsupportedOperationException if {@code valueColumn} is not a
+   *                                       {@link ColumnType#LONG} column.
+   */
+  public Map<Object, LongSummaryStatistics> groupByLong(String keyColumn, String valueColumn, BitSet rows) {
+    Column values = existing(valueColumn);
+    if (values.type != ColumnType.LONG) {
+      throw values.unsupported();
+    }
+    return group(existing(keyColumn), values, rows, LongSummaryStatistics::new,
+        (group, row) -> group.accept(values.getLong(row)), LongSummaryStatistics::combine);
+  }
+
+  /**
+   * Groups the selected rows by {@code keys} into statistics created by
+   * {@code create}, feeding them the rows where {@code values} is not null.
+   */
+  @SuppressWarnings("unchecked")
+  private <S> Map<Object, S> group(Column keys, Column values, BitSet rows, Supplier<S> create,
+      ObjIntConsumer<S> accept, BiConsumer<S, S> combine) {
+    int chunks = chunks(rowCount);
+    if (keys.type == ColumnType.STRING) {
+      int width = keys.dictionary.length + 1;
+      Object[] groups = chunkStream(rowCount).mapToObj(c -> {
+        Object[] local = new Object[width];
+        int end = Math.min(rowCount, (c + 1) * CHUNK);
+        for (int row = first(rows, c * CHUNK); row >= 0 && row < end; row = next(rows, row)) {
+          int code = keys.isNull(row) ? width - 1 : keys.codes[row];
+          S group = (S) local[code];
+          if (group == null) {
+            local[code] = group = create.get();
+          }
+          if (!values.isNull(row)) {
+            accept.accept(group, row);
+          }
+        }
+        return local;
+      }).reduce((a, b) -> {
+        for (int i = 0; i < width; i++) {
+          if (a[i] == null) {
+            a[i] = b[i];
+          } else if (b[i] != null) {
+            combine.accept((S) a[i], (S) b[i]);
+          }
+        }
+        return a;
+      }).orElse(new Object[width]);
+      Map<Object, S> result = new LinkedHashMap<>();
+      for (int i = 0; i < width; i++) {
+        if (groups[i] != null) {
+          result.put(i < width - 1 ? keys.dictionary[i] : null, (S) groups[i]);
+        }
+      }
+      return result;
+    }
+    List<Map<Object, S>> parts = new ArrayList<>(Collections.nCopies(chunks, null));
+    forEachChunk(rowCount, c -> {
+      Map<Object, S> local = new LinkedHashMap<>();
+      int end = Math.min(rowCount, (c + 1) * CHUNK);
+      for (int row = first(rows, c * CHUNK); row >= 0 && row < end; row = next(rows, row)) {
+        S group = local.computeIfAbsent(keys.key(row), k -> create.get());
+        if (!values.isNull(row)) {
+          accept.accept(group, row);
+        }
+      }
+      parts.set(c, local);
+    });
+    Map<Object, S> result = new LinkedHashMap<>();
+    for (Map<Object, S> part : parts) {
+      part.forEach((k, v) -> result.merge(k, v, (a, b) -> {
+        combine.accept(a, b);
+        return a;
+      }));
+    }
+    S nulls = result.remove(null);
+    if (nulls != null) {
+      result.put(null, nulls);
+    }
+    return result;
+  }
+
+  private Column existing(String name) {
+    Column column = columns.get(name);
+    if (column == null) {
+      throw new IllegalArgumentException("No column " + name);
+    }
+    return column;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("JtonTable[rows=").append(rowCount);
+    for (Column column : columns.values()) {
+      sb.append(", ").append(column.name).append(':').append(column.type);
+    }
+    return sb.append(']').toString();
+  }
+
+  private static int chunks(int size) {
+    return (size + CHUNK - 1) / CHUNK;
+  }
+
+  private static IntStream chunkStream(int size) {
+    IntStream chunks = IntStream.range(0, chunks(size));
+    return size >= PARALLEL_THRESHOLD ? chunks.parallel() : chunks;
+  }
+
+  private static void forEachChunk(int size, IntConsumer chunk) {
+    chunkStream(size).forEach(chunk);
+  }
+
+  private static int first(BitSet rows, int from) {
+    return rows == null ? from : rows.nextSetBit(from);
+  }
+
+  private static int next(BitSet rows, int row) {
+    return rows == null ? row + 1 : rows.nextSetBit(row + 1);
+  }
+
+  private static boolean bit(long[] words, int i) {
+    return words != null && (words[i >>> 6] & 1L << i) != 0;
+  }
+
+  /**
+   * A column of a {@link JtonTable}. The typed getters return {@code 0},
+   * {@code NaN}, {@code null} or {@code false} for null and missing values;
+   * check {@link #isNull(int)} to tell them apart.
+   */
+  public static final class Column {
+    private final String name;
+    private final ColumnType type;
+    private final int size;
+    private final long[] longs;
+    private final double[] doubles;
+    private final int[] codes;
+    private final String[] dictionary;
+    private final long[] booleans;
+    private final JtonElement[] elements;
+    private final long[] nulls;
+    private final long[] missing;
+
+    private Column(ColumnBuilder b) {
+      this.name = b.name;
+      this.type = b.type;
+      this.size = b.size;
+      this.nulls = b.nulls == null ? null : Arrays.copyOf(b.nulls, (size + 63) >>> 6);
+      this.missing = b.missing == null ? null : Arrays.copyOf(b.missing, (size + 63) >>> 6);
+      long[] data = b.data;
+      long[] longs = null;
+      double[] doubles = null;
+      int[] codes = null;
+      long[] booleans = null;
+      switch (type) {
+      case LONG:
+        longs = Arrays.copyOf(data, size);
+        break;
+      case DOUBLE:
+        doubles = new double[size];
+        for (int i = 0; i < size; i++) {
+          doubles[i] = Double.longBitsToDouble(data[i]);
+        }
+        break;
+      case STRING:
+        codes = new int[size];
+        for (int i = 0; i < size; i++) {
+          codes[i] = (int) data[i];
+        }
+        break;
+      case BOOLEAN:
+        booleans = new long[(size + 63) >>> 6];
+        for (int i = 0; i < size; i++) {
+          booleans[i >>> 6] |= data[i] << i;
+        }
+        break;
+      default:
+        break;
+      }
+      this.longs = longs;
+      this.doubles = doubles;
+      this.codes = codes;
+      this.booleans = booleans;
+      this.dictionary = type == ColumnType.STRING ? b.dictionary.toArray(new String[0]) : null;
+      this.elements = type == ColumnType.ELEMENT ? Arrays.copyOf(b.elements, size) : null;
+    }
+
+    /**
+     * Returns the member name.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the storage type.
+     */
+    public ColumnType getType() {
+      return type;
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Returns true if the value in {@code row} is null or missing.
+     */
+    public boolean isNull(int row) {
+      if (row < 0 || row >= size) {
+        throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+      }
+      return bit(nulls, row);
+    }
+
+    /**
+     * Returns true if the record in {@code row} has no such member.
+     */
+    public boolean isMissing(int row) {
+      return bit(missing, row);
+    }
+
+    /**
+     * Returns the value in {@code row} of a numeric column as a long.
+     */
+    public long getLong(int row) {
+      if (type == ColumnType.LONG) {
+        return longs[row];
+      } else if (type == ColumnType.DOUBLE) {
+        return (long) doubles[row];
+      }
+      throw unsupported();
+    }
+
+    /**
+     * Returns the value in {@code row} of a numeric column as a double.
+     */
+    public double getDouble(int row) {
+      if (type == ColumnType.DOUBLE) {
+        return isNull(row) ? Double.NaN : doubles[row];
+      } else if (type == ColumnType.LONG) {
+        return isNull(row) ? Double.NaN : longs[row];
+      }
+      throw unsupported();
+    }
+
+    /**
+     * Returns the value in {@code row} of a string column.
+     */
+    public String getString(int row) {
+      if (type == ColumnType.STRING) {
+        return isNull(row) ? null : dictionary[codes[row]];
+      }
+      throw unsupported();
+    }
+
+    /**
+     * Returns the value in {@code row} of a boolean column.
+     */
+    public boolean getBoolean(int row) {
+      if (type == ColumnType.BOOLEAN) {
+        return bit(booleans, row);
+      }
+      throw unsupported();
+    }
+
+    /**
+     * Returns the value in {@code row} as a new element, {@link JtonNull} for
+     * null values and {@code null} for missing ones.
+     */
+    public JtonElement get(int row) {
+      if (isMissing(row)) {
+        return null;
+      } else if (isNull(row)) {
+        return JtonNull.INSTANCE;
+      }
+      switch (type) {
+      case LONG:
+        return new JtonPrimitive(longs[row]);
+      case DOUBLE:
+        return new JtonPrimitive(doubles[row]);
+      case STRING:
+        return new JtonPrimitive(dictionary[codes[row]]);
+      case BOOLEAN:
+        return new JtonPrimitive(bit(booleans, row));
+      default:
+        return elements[row].deepCopy();
+      }
+    }
+
+    private Object key(int row) {
+      if (isNull(row)) {
+        return null;
+      }
+      switch (type) {
+      case LONG:
+        return longs[row];
+      case DOUBLE:
+        return doubles[row];
+      case BOOLEAN:
+        return bit(booleans, row);
+      case STRING:
+        return dictionary[codes[row]];
+      default:
+        return elements[row];
+      }
+    }
+
+    /**
+     * Returns the number of distinct strings of a string column.
+     */
+    public int getDictionarySize() {
+      if (type == ColumnType.STRING) {
+        return dictionary.length;
+      }
+      throw unsupported();
+    }
+
+    /**
+     * Returns the number of non-null values.
+     */
+    public long count() {
+      return count(null);
+    }
+
+    /**
+     * Returns the number of non-null values in the selected rows.
+     *
+     * @param rows the rows to count, or {@code null} for all rows.
+     */
+    public long count(BitSet rows) {
+      if (nulls == null && rows == null) {
+        return size;
+      }
+      return chunkStream(size).mapToLong(c -> {
+        long count = 0;
+        int end = Math.min(size, (c + 1) * CHUNK);
+        for (int row = first(rows, c * CHUNK); row >= 0 && row < end; row = next(rows, row)) {
+          if (!bit(nulls, row)) {
+            count++;
+          }
+        }
+        return count;
+      }).sum();
+    }
+
+    /**
+     * Returns the sum of a numeric column.
+     */
+    public double sum() {
+      return stats(null).getSum();
+    }
+
+    /**
+     * Returns the smallest value of a numeric column, or positive infinity if it
+     * has no values.
+     */
+    public double min() {
+      return stats(null).getMin();
+    }
+
+    /**
+     * Returns the largest value of a numeric column, or negative infinity if it
+     * has no values.
+     */
+    public double max() {
+      return stats(null).getMax();
+    }
+
+    /**
+     * Returns count, sum, minimum, maximum and average of the non-null values of
+     * a numeric column in the selected rows.
+     *
+     * @param rows the rows to include, or {@code null} for all rows.
+     * @throws UnsupportedOperationException if the column is not numeric.
+     */
+    public DoubleSummaryStatistics stats(BitSet rows) {
+      checkNumeric();
+      return chunkStream(size).mapToObj(c -> {
+        DoubleSummaryStatistics stats = new DoubleSummaryStatistics();
+        int from = c * CHUNK;
+        int end = Math.min(size, from + CHUNK);
+        if (rows == null && nulls == null) {
+          if (type == ColumnType.LONG) {
+            long[] v = longs;
+            for (int row = from; row < end; row++) {
+              stats.accept(v[row]);
+            }
+          } else {
+            double[] v = doubles;
+            for (int row = from; row < end; row++) {
+              stats.accept(v[row]);
+            }
+          }
+        } else {
+          for (int row = first(rows, from); row >= 0 && row < end; row = next(rows, row)) {
+            if (!bit(nulls, row)) {
+              stats.accept(type == ColumnType.LONG ? longs[row] : doubles[row]);
+            }
+          }
+        }
+        return stats;
+      }).collect(DoubleSummaryStatistics::new, DoubleSummaryStatistics::combine, DoubleSummaryStatistics::combine);
+    }
+
+    /**
+     * Returns the rows of a numeric column whose value matches
+     * {@code predicate}. Null values never match.
+     */
+    public BitSet filter(DoublePredicate predicate) {
+      checkNumeric();
+      return select((words, from, end) -> {
+        for (int row = from; row < end; row++) {
+          if (!bit(nulls, row) && predicate.test(type == ColumnType.LONG ? longs[row] : doubles[row])) {
+            words[row >>> 6] |= 1L << row;
+          }
+        }
+      });
+    }
+
+    /**
+     * Returns the rows of a {@link ColumnType#LONG} column whose value matches
+     * {@code predicate}. Null values never match.
+     */
+    public BitSet filterLong(LongPredicate predicate) {
+      if (type != ColumnType.LONG) {
+        throw unsupported();
+      }
+      return select((words, from, end) -> {
+        long[] v = longs;
+        for (int row = from; row < end; row++) {
+          if (!bit(nulls, row) && predicate.test(v[row])) {
+            words[row >>> 6] |= 1L << row;
+          }
+        }
+      });
+    }
+
+    /**
+     * Returns the rows of a string column whose value matches
+     * {@code predicate}. The predicate is evaluated once per distinct string.
+     * Null values never match.
+     */
+    public BitSet filterString(Predicate<? super String> predicate) {
+      if (type != ColumnType.STRING) {
+        throw unsupported();
+      }
+      boolean[] matches = new boolean[dictionary.length];
+      for (int i = 0; i < matches.length; i++) {
+        matches[i] = predicate.test(dictionary[i]);
+      }
+      return select((words, from, end) -> {
+        int[] v = codes;
+        for (int row = from; row < end; row++) {
+          if (!bit(nulls, row) && matches[v[row]]) {
+            words[row >>> 6] |= 1L << row;
+          }
+        }
+      });
+    }
+
+    /**
+     * Returns the rows of a boolean column holding {@code value}.
+     */
+    public BitSet filterBoolean(boolean value) {
+      if (type != ColumnType.BOOLEAN) {
+        throw unsupported();
+      }
+      return select((words, from, end) -> {
+        for (int w = from >>> 6; w < (end + 63) >>> 6; w++) {
+          long valid = nulls == null ? -1L : ~nulls[w];
+          words[w] = (value ? booleans[w] : ~booleans[w]) & valid;
+        }
+        int tail = size & 63;
+        if (end == size && tail != 0) {
+          words[size >>> 6] &= (1L << tail) - 1;
+        }
+      });
+    }
+
+    /**
+     * Returns the rows whose value is null or missing.
+     */
+    public BitSet filterNull() {
+      return nulls == null ? new BitSet() : BitSet.valueOf(nulls);
+    }
+
+    private BitSet select(ChunkFilter filter) {
+      long[] words = new long[(size + 63) >>> 6];
+      forEachChunk(size, c -> filter.run(words, c * CHUNK, Math.min(size, (c + 1) * CHUNK)));
+      return BitSet.valueOf(words);
+    }
+
+    private void checkNumeric() {
+      if (type != ColumnType.LONG && type != ColumnType.DOUBLE) {
+        throw unsupported();
+      }
+    }
+
+    private UnsupportedOperationException unsupported() {
+      return new UnsupportedOperationException("Column " + name + " is " + type);
+    }
+
+    @Override
+    public String toString() {
+      return name + ":" + type;
+    }
+  }
+
+  /**
+   * Marks the matching rows from {@code from} (inclusive) to {@code end}
+   * (exclusive). Chunks start at multiples of 64, so chunks never share a word.
+   */
+  private interface ChunkFilter {
+    void run(long[] words, int from, int end);
+  }
+
+  private static final class Builder {
+    private final Map<String, ColumnBuilder> columns = new LinkedHashMap<>();
+    int rows;
+
+    ColumnBuilder column(String name) {
+      ColumnBuilder column = columns.get(name);
+      if (column == null) {
+        columns.put(name, column = new ColumnBuilder(name));
+      }
+      column.moveTo(rows);
+      return column;
+    }
+
+    JtonTable build() {
+      Map<String, Column> result = new LinkedHashMap<>();
+      for (ColumnBuilder column : columns.values()) {
+        column.moveTo(rows);
+        result.put(column.name, new Column(column));
+      }
+      return new JtonTable(rows, result);
+    }
+  }
+
+  /**
+   * Accumulates the values of one column. Until the type is final, longs,
+   * double bits, dictionary codes and booleans share one {@code long[]}, so
+   * promoting a column from longs to doubles converts in place.
+   */
+  private static final class ColumnBuilder {
+    final String name;
+    ColumnType type = ColumnType.NULL;
+    int size;
+    long[] data = new long[16];
+    JtonElement[] elements;
+    long[] nulls;
+    long[] missing;
+    List<String> dictionary;
+    private Map<String, Integer> codes;
+
+    ColumnBuilder(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Positions the column at {@code row}, marking skipped rows as missing. A
+     * repeated member name overwrites the value of the current row.
+     */
+    void moveTo(int row) {
+      if (size > row) {
+        clear(nulls, row, size);
+        clear(missing, row, size);
+        size = row;
+      }
+      while (size < row) {
+        missing = set(missing, size);
+        nullValue();
+      }
+    }
+
+    void value(JtonElement value) {
+      if (value.isJtonNull()) {
+        nullValue();
+      } else if (value.isJtonPrimitive()) {
+        JtonPrimitive primitive = (JtonPrimitive) value;
+        if (primitive.isJtonTransient()) {
+          missing = set(missing, size);
+          nullValue();
+          return;
+        }
+        Object v = primitive.getValue();
+        if (v instanceof Number) {
+          number((Number) v);
+        } else if (v instanceof Boolean) {
+          bool((Boolean) v);
+        } else {
+          string(primitive.getAsString());
+        }
+      } else {
+        element(value.deepCopy());
+      }
+    }
+
+    void number(Number n) {
+      if (n instanceof LazilyParsedNumber) {
+        number(n.toString());
+      } else if (n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+        longValue(n.longValue(), n);
+      } else if (n instanceof BigInteger && ((BigInteger) n).bitLength() < 64) {
+        longValue(n.longValue(), n);
+      } else {
+        doubleValue(n.doubleValue(), n);
+      }
+    }
+
+    void number(String text) {
+      if (isIntegral(text)) {
+        try {
+          longValue(Long.parseLong(text), new LazilyParsedNumber(text));
+          return;
+        } catch (NumberFormatException e) {
+          // too large, store as double
+        }
+      }
+      doubleValue(Double.parseDouble(text), new LazilyParsedNumber(text));
+    }
+
+    private static boolean isIntegral(String text) {
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (c == '.' || c == 'e' || c == 'E') {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void longValue(long value, Number original) {
+      if (type == ColumnType.NULL || type == ColumnType.LONG) {
+        type = ColumnType.LONG;
+        append(value);
+      } else if (type == ColumnType.DOUBLE) {
+        append(Double.doubleToRawLongBits(value));
+      } else {
+        element(new JtonPrimitive(original));
+      }
+    }
+
+    private void doubleValue(double value, Number original) {
+      if (type == ColumnType.LONG) {
+        for (int i = 0; i < size; i++) {
+          data[i] = Double.doubleToRawLongBits(data[i]);
+        }
+        type = ColumnType.DOUBLE;
+      }
+      if (type == ColumnType.NULL || type == ColumnType.DOUBLE) {
+        type = ColumnType.DOUBLE;
+        append(Double.doubleToRawLongBits(value));
+      } else {
+        element(new JtonPrimitive(original));
+      }
+    }
+
+    void string(String value) {
+      if (type == ColumnType.NULL) {
+        type = ColumnType.STRING;
+        dictionary = new ArrayList<>();
+        codes = new HashMap<>();
+      }
+      if (type == ColumnType.STRING) {
+        Integer code = codes.get(value);
+        if (code == null) {
+          codes.put(value, code = dictionary.size());
+          dictionary.add(value);
+        }
+        append(code);
+      } else {
+        element(new JtonPrimitive(value));
+      }
+    }
+
+    void bool(boolean value) {
+      if (type == ColumnType.NULL || type == ColumnType.BOOLEAN) {
+        type = ColumnType.BOOLEAN;
+        append(value ? 1 : 0);
+      } else {
+        element(new JtonPrimitive(value));
+      }
+    }
+
+    void nullValue() {
+      nulls = set(nulls, size);
+      if (type == ColumnType.ELEMENT) {
+        appendElement(isMissing(size) ? null : JtonNull.INSTANCE);
+      } else {
+        append(0);
+      }
+    }
+
+    void element(JtonElement value) {
+      if (type != ColumnType.ELEMENT) {
+        toElements();
+      }
+      appendElement(value);
+    }
+
+    private void toElements() {
+      JtonElement[] e = new JtonElement[Math.max(16, data.length)];
+      for (int i = 0; i < size; i++) {
+        if (isMissing(i)) {
+          continue;
+        } else if (has(nulls, i)) {
+          e[i] = JtonNull.INSTANCE;
+          continue;
+        }
+        switch (type) {
+        case LONG:
+          e[i] = new JtonPrimitive(data[i]);
+          break;
+        case DOUBLE:
+          e[i] = new JtonPrimitive(Double.longBitsToDouble(data[i]));
+          break;
+        case STRING:
+          e[i] = new JtonPrimitive(dictionary.get((int) data[i]));
+          break;
+        default:
+          e[i] = new JtonPrimitive(data[i] != 0);
+        }
+      }
+      type = ColumnType.ELEMENT;
+      elements = e;
+      data = null;
+      dictionary = null;
+      codes = null;
+    }
+
+    private boolean isMissing(int row) {
+      return has(missing, row);
+    }
+
+    private void append(long value) {
+      if (type == ColumnType.ELEMENT) {
+        throw new AssertionError();
+      }
+      if (size == data.length) {
+        data = Arrays.copyOf(data, size * 2);
+      }
+      data[size++] = value;
+    }
+
+    private void appendElement(JtonElement value) {
+      if (size == elements.length) {
+        elements = Arrays.copyOf(elements, size * 2);
+      }
+      elements[size++] = value;
+    }
+
+    private static long[] set(long[] words, int i) {
+      if (words == null) {
+        words = new long[Math.max(4, (i >>> 6) + 1)];
+      } else if (i >>> 6 >= words.length) {
+        words = Arrays.copyOf(words, Math.max(words.length * 2, (i >>> 6) + 1));
+      }
+      words[i >>> 6] |= 1L << i;
+      return words;
+    }
+
+    private static boolean has(long[] words, int i) {
+      return words != null && i >>> 6 < words.length && (words[i >>> 6] & 1L << i) != 0;
+    }
+
+    private static void clear(long[] words, int from, int to) {
+      for (int i = from; i < to && words != null && i >>> 6 < words.length; i++) {
+        words[i >>> 6] &= ~(1L << i);
+      }
+    }
+  }
+}
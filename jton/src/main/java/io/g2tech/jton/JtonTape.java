@@ -0,0 +1,947 @@
+package io.g2tech.jton;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+
+/**
+ * A whole JSON document stored off the heap as a tape of tagged 64-bit words
+ * plus a buffer of UTF-8 strings. A tape costs a handful of heap objects no
+ * matter how large the document is, so large caches of tapes add nothing to
+ * garbage collection work.
+ * <p>
+ * Every value is one word, or two for numbers, whose top byte is a tag. Objects
+ * and arrays are bracketed by a start and an end word pointing at each other,
+ * so whole subtrees can be skipped in constant time. Object members are a key
+ * word followed by the value. Strings and keys point into the string buffer,
+ * where each is stored as a 4-byte length and its UTF-8 bytes; repeated keys
+ * share their bytes; unpaired surrogates are stored as {@code '?'}. Numbers are
+ * stored as a long or a double if that reproduces them exactly, and otherwise
+ * as their text in the string buffer, so that {@code -0}, {@code 1e2} or
+ * integers beyond a long keep their digits.
+ * <p>
+ * Tapes are read through {@link Node}s, which mirror the read accessors of
+ * {@link JtonElement}. They can be {@linkplain #writeTo(Path) written} to a
+ * file and {@linkplain #map(Path) mapped} back into memory without parsing.
+ * The tape and the strings are each limited to 2 GiB.
+ * <p>
+ * Tapes are immutable and thread-safe.
+ */
+public final class JtonTape {
+  private static final int MAGIC = 0x4a54504e; // JTPN
+  private static final int VERSION = 2;
+  private static final int HEADER_BYTES = 32;
+
+  private static final long OBJECT = (long) '{' << 56;
+  private static final long OBJECT_END = (long) '}' << 56;
+  private static final long ARRAY = (long) '[' << 56;
+  private static final long ARRAY_END = (long) ']' << 56;
+  private static final long KEY = (long) 'k' << 56;
+  private static final long STRING = (long) '"' << 56;
+  private static final long LONG = (long) 'l' << 56;
+  private static final long DOUBLE = (long) 'd' << 56;
+  private static final long NUMBER = (long) '#' << 56;
+  private static final long TRUE = (long) 't' << 56;
+  private static final long FALSE = (long) 'f' << 56;
+  private static final long NULL = (long) 'n' << 56;
+
+  private static final long TAG_MASK = 0xffL << 56;
+  private static final int MAX_COUNT = 0xffffff;
+
+  private final ByteBuffer tape;
+  private final ByteBuffer strings;
+
+  private JtonTape(ByteBuffer tape, ByteBuffer strings) {
+    this.tape = tape;
+    this.strings = strings;
+  }
+
+  /**
+   * Returns a tape holding {@code element}. Transient primitives inside
+   * containers are left out, as in the printed form.
+   */
+  public static JtonTape of(JtonElement element) {
+    Builder builder = new Builder();
+    element.accept(builder);
+    return builder.build();
+  }
+
+  /**
+   * Parses UTF-8 encoded JSON straight into a tape with the indexed parser,
+   * without building a tree.
+   *
+   * @throws JsonSyntaxException if the input is not valid JSON.
+   * @see JtonParser#parseUtf8(byte[], JtonVisitor)
+   */
+  public static JtonTape parseUtf8(byte[] json) {
+    return parseUtf8(json, 0, json.length);
+  }
+
+  /**
+   * Parses {@code length} bytes of UTF-8 encoded JSON starting at
+   * {@code offset} into a tape.
+   *
+   * @throws JsonSyntaxException if the input is not valid JSON.
+   * @see #parseUtf8(byte[])
+   */
+  public static JtonTape parseUtf8(byte[] json, int offset, int length) {
+    Builder builder = new Builder();
+    JtonParser.parseUtf8(json, offset, length, builder);
+    return builder.build();
+  }
+
+  /**
+   * Parses the JSON read from {@code reader} into a tape, with the lenient
+   * rules of {@link JtonParser#parse(Reader)}.
+   *
+   * @throws JsonSyntaxException if the input is not valid JSON.
+   * @throws JsonIOException     if {@code reader} fails.
+   */
+  public static JtonTape parse(Reader reader) {
+    Builder builder = new Builder();
+    JtonParser.parse(reader, builder);
+    return builder.build();
+  }
+
+  /**
+   * Maps a tape written by {@link #writeTo(Path)} into memory. Nothing is
+   * parsed or copied; pages are loaded as the tape is read.
+   *
+   * @throws JsonIOException if the file cannot be read or is not a tape.
+   */
+  public static JtonTape map(Path file) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // read the whole header
+      }
+      header.flip();
+      if (header.remaining() < HEADER_BYTES || header.getInt(0) != MAGIC) {
+        throw new JsonIOException("Not a tape: " + file);
+      } else if (header.getInt(4) != VERSION) {
+        throw new JsonIOException("Unsupported tape version " + header.getInt(4) + ": " + file);
+      }
+      long tapeBytes = header.getLong(8);
+      long stringBytes = header.getLong(16);
+      if (tapeBytes < 8 || tapeBytes > Integer.MAX_VALUE || stringBytes < 0 || stringBytes > Integer.MAX_VALUE
+          || HEADER_BYTES + tapeBytes + stringBytes > channel.size()) {
+        throw new JsonIOException("Truncated tape: " + file);
+      }
+      ByteBuffer tape = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, tapeBytes);
+      ByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + tapeBytes, stringBytes);
+      return new JtonTape(tape.order(ByteOrder.LITTLE_ENDIAN), strings.order(ByteOrder.LITTLE_ENDIAN));
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  /**
+   * Writes this tape to {@code file}, replacing its contents, so that it can be
+   * {@linkplain #map(Path) mapped} back.
+   *
+   * @throws JsonIOException if the file cannot be written.
+   */
+  public void writeTo(Path file) {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(VERSION).putLong(tape.capacity()).putLong(strings.capacity()).clear();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (ByteBuffer buffer : new ByteBuffer[] { header, tape.duplicate(), strings.duplicate() }) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  /**
+   * Returns the root value of the document.
+   */
+  public Node root() {
+    return new Node(this, 0);
+  }
+
+  /**
+   * Returns the document as a regular parse tree.
+   */
+  public JtonElement toJtonElement() {
+    return root().toJtonElement();
+  }
+
+  /**
+   * Returns the number of bytes taken by the tape and the strings.
+   */
+  public long sizeInBytes() {
+    return (long) tape.capacity() + strings.capacity();
+  }
+
+  @Override
+  public String toString() {
+    return root().toString();
+  }
+
+  private long word(int index) {
+    return tape.getLong(index << 3);
+  }
+
+  /**
+   * Returns the index of the word following the value at {@code index}.
+   */
+  private int next(int index) {
+    long word = word(index);
+    long tag = word & TAG_MASK;
+    if (tag == OBJECT || tag == ARRAY) {
+      return (int) word + 1;
+    } else if (tag == LONG || tag == DOUBLE) {
+      return index + 2;
+    }
+    return index + 1;
+  }
+
+  private String string(long word) {
+    int offset = (int) word;
+    byte[] bytes = new byte[strings.getInt(offset)];
+    ByteBuffer source = strings.duplicate();
+    source.position(offset + 4);
+    source.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private boolean stringEquals(long word, byte[] expected) {
+    int offset = (int) word;
+    if (strings.getInt(offset) != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (strings.get(offset + 4 + i) != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reports the value at {@code index} to {@code visitor} by a linear scan of
+   * its words.
+   */
+  private void accept(int index, JtonVisitor visitor) {
+    int end = next(index);
+    int i = index;
+    while (i < end) {
+      long word = word(i);
+      long tag = word & TAG_MASK;
+      if (tag == OBJECT) {
+        visitor.startObject();
+      } else if (tag == OBJECT_END) {
+        visitor.endObject();
+      } else if (tag == ARRAY) {
+        visitor.startArray();
+      } else if (tag == ARRAY_END) {
+        visitor.endArray();
+      } else if (tag == KEY) {
+        visitor.key(string(word));
+      } else if (tag == STRING) {
+        visitor.value(string(word));
+      } else if (tag == LONG) {
+        visitor.value(word(++i));
+      } else if (tag == DOUBLE) {
+        visitor.value(Double.longBitsToDouble(word(++i)));
+      } else if (tag == NUMBER) {
+        visitor.number(string(word));
+      } else if (tag == TRUE || tag == FALSE) {
+        visitor.value(tag == TRUE);
+      } else {
+        visitor.nullValue();
+      }
+      i++;
+    }
+  }
+
+  /**
+   * A value in a tape. Nodes are cheap, short-lived cursors; the accessors
+   * mirror those of {@link JtonElement} and throw the same exceptions for values
+   * of the wrong type. Iterating an object yields its member values, iterating
+   * an array its elements.
+   */
+  public static final class Node implements Iterable<Node> {
+    private final JtonTape tape;
+    private final int index;
+
+    private Node(JtonTape tape, int index) {
+      this.tape = tape;
+      this.index = index;
+    }
+
+    private long tag() {
+      return tape.word(index) & TAG_MASK;
+    }
+
+    /**
+     * Returns true if this node is an object.
+     */
+    public boolean isJtonObject() {
+      return tag() == OBJECT;
+    }
+
+    /**
+     * Returns true if this node is an array.
+     */
+    public boolean isJtonArray() {
+      return tag() == ARRAY;
+    }
+
+    /**
+     * Returns true if this node is a string, a number or a boolean.
+     */
+    public boolean isJtonPrimitive() {
+      long tag = tag();
+      return tag == STRING || tag == LONG || tag == DOUBLE || tag == NUMBER || tag == TRUE || tag == FALSE;
+    }
+
+    /**
+     * Returns true if this node is null.
+     */
+    public boolean isJtonNull() {
+      return tag() == NULL;
+    }
+
+    /**
+     * Returns true if this node is a string.
+     */
+    public boolean isString() {
+      return tag() == STRING;
+    }
+
+    /**
+     * Returns true if this node is a number.
+     */
+    public boolean isNumber() {
+      long tag = tag();
+      return tag == LONG || tag == DOUBLE || tag == NUMBER;
+    }
+
+    /**
+     * Returns true if this node is a boolean.
+     */
+    public boolean isBoolean() {
+      long tag = tag();
+      return tag == TRUE || tag == FALSE;
+    }
+
+    /**
+     * Returns this node as a string. Numbers and booleans are converted.
+     */
+    public String getAsString() {
+      long word = tape.word(index);
+      long tag = word & TAG_MASK;
+      if (tag == STRING || tag == NUMBER) {
+        return tape.string(word);
+      } else if (tag == TRUE || tag == FALSE) {
+        return tag == TRUE ? "true" : "false";
+      }
+      return getAsNumber().toString();
+    }
+
+    /**
+     * Returns this node as a number, a {@link Long} or a {@link Double}.
+     * Numbers stored as text and strings are returned as lazily parsed
+     * numbers, as by {@link JtonPrimitive#getAsNumber()}.
+     */
+    public Number getAsNumber() {
+      long word = tape.word(index);
+      long tag = word & TAG_MASK;
+      if (tag == LONG) {
+        return tape.word(index + 1);
+      } else if (tag == DOUBLE) {
+        return Double.longBitsToDouble(tape.word(index + 1));
+      } else if (tag == STRING || tag == NUMBER) {
+        return new LazilyParsedNumber(tape.string(word));
+      }
+      throw unsupported();
+    }
+
+    /**
+     * Returns this node as a long.
+     */
+    public long getAsLong() {
+      return tag() == LONG ? tape.word(index + 1) : getAsNumber().longValue();
+    }
+
+    /**
+     * Returns this node as an int.
+     */
+    public int getAsInt() {
+      return (int) getAsLong();
+    }
+
+    /**
+     * Returns this node as a double.
+     */
+    public double getAsDouble() {
+      return tag() == DOUBLE ? Double.longBitsToDouble(tape.word(index + 1)) : getAsNumber().doubleValue();
+    }
+
+    /**
+     * Returns this node as a boolean. Strings are parsed like
+     * {@link Boolean#parseBoolean(String)}.
+     */
+    public boolean getAsBoolean() {
+      long tag = tag();
+      if (tag == TRUE || tag == FALSE) {
+        return tag == TRUE;
+      } else if (tag == STRING) {
+        return Boolean.parseBoolean(getAsString());
+      }
+      throw unsupported();
+    }
+
+    /**
+     * Returns the number of members of an object or elements of an array.
+     */
+    public int size() {
+      long word = tape.word(index);
+      long tag = word & TAG_MASK;
+      if (tag != OBJECT && tag != ARRAY) {
+        throw unsupported();
+      }
+      int count = (int) (word >>> 32) & MAX_COUNT;
+      if (count < MAX_COUNT) {
+        return count;
+      }
+      count = 0;
+      for (int i = first(); i < (int) word; i = skip(i)) {
+        count++;
+      }
+      return count;
+    }
+
+    /**
+     * Returns the element at {@code i} of an array. Elements are found by
+     * skipping over their predecessors.
+     *
+     * @throws IndexOutOfBoundsException if {@code i} is out of range.
+     */
+    public Node get(int i) {
+      long word = tape.word(index);
+      if ((word & TAG_MASK) != ARRAY) {
+        throw unsupported();
+      }
+      int end = (int) word;
+      int p = index + 1;
+      for (int n = 0; p < end; n++) {
+        if (n == i) {
+          return new Node(tape, p);
+        }
+        p = tape.next(p);
+      }
+      throw new IndexOutOfBoundsException("Index: " + i);
+    }
+
+    /**
+     * Returns the value of the member {@code key} of an object, or {@code null}
+     * if there is no such member.
+     */
+    public Node get(String key) {
+      long word = tape.word(index);
+      if ((word & TAG_MASK) != OBJECT) {
+        throw unsupported();
+      }
+      byte[] expected = key.getBytes(StandardCharsets.UTF_8);
+      int end = (int) word;
+      for (int p = index + 1; p < end; p = tape.next(p + 1)) {
+        if (tape.stringEquals(tape.word(p), expected)) {
+          return new Node(tape, p + 1);
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Returns true if an object has a member {@code key}.
+     */
+    public boolean has(String key) {
+      return get(key) != null;
+    }
+
+    /**
+     * Returns the member names of an object, in order.
+     */
+    public List<String> keys() {
+      long word = tape.word(index);
+      if ((word & TAG_MASK) != OBJECT) {
+        throw unsupported();
+      }
+      List<String> keys = new ArrayList<>();
+      int end = (int) word;
+      for (int p = index + 1; p < end; p = tape.next(p + 1)) {
+        keys.add(tape.string(tape.word(p)));
+      }
+      return keys;
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+      long word = tape.word(index);
+      long tag = word & TAG_MASK;
+      if (tag != OBJECT && tag != ARRAY) {
+        throw unsupported();
+      }
+      int end = (int) word;
+      return new Iterator<Node>() {
+        private int p = first();
+
+        @Override
+        public boolean hasNext() {
+          return p < end;
+        }
+
+        @Override
+        public Node next() {
+          if (p >= end) {
+            throw new NoSuchElementException();
+          }
+          Node node = new Node(tape, p);
+          p = skip(p);
+          return node;
+        }
+      };
+    }
+
+    /**
+     * Returns the index of the first value of this container.
+     */
+    private int first() {
+      return tag() == OBJECT ? index + 2 : index + 1;
+    }
+
+    /**
+     * Returns the index of the value after the one at {@code i} in this
+     * container.
+     */
+    private int skip(int i) {
+      int p = tape.next(i);
+      return tag() == OBJECT ? p + 1 : p;
+    }
+
+    /**
+     * Reports this value and all its children to {@code visitor}.
+     */
+    public void accept(JtonVisitor visitor) {
+      tape.accept(index, visitor);
+    }
+
+    /**
+     * Returns this value as a regular parse tree.
+     */
+    public JtonElement toJtonElement() {
+      TreeBuilder builder = new TreeBuilder();
+      accept(builder);
+      return builder.root;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      accept(new JsonBuilder(sb));
+      return sb.toString();
+    }
+
+    private UnsupportedOperationException unsupported() {
+      long tag = tag();
+      String type = tag == OBJECT ? "JtonObject"
+          : tag == ARRAY ? "JtonArray" : tag == NULL ? "JtonNull" : "JtonPrimitive";
+      return new UnsupportedOperationException(type);
+    }
+  }
+
+  /**
+   * Builds a tape from visitor events, directly into growing direct buffers.
+   */
+  private static final class Builder implements JtonVisitor {
+    private static final int MAX_SHARED_KEYS = 1 << 16;
+
+    private ByteBuffer tape = ByteBuffer.allocateDirect(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer strings = ByteBuffer.allocateDirect(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+    private final Map<String, Integer> keys = new HashMap<>();
+    private int[] starts = new int[32];
+    private int[] counts = new int[32];
+    private int depth;
+
+    JtonTape build() {
+      if (depth != 0 || tape.position() == 0) {
+        throw new IllegalStateException("incomplete document");
+      }
+      return new JtonTape(trim(tape), trim(strings));
+    }
+
+    private static ByteBuffer trim(ByteBuffer buffer) {
+      ByteBuffer result = ByteBuffer.allocateDirect(buffer.position()).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.flip();
+      result.put(buffer).flip();
+      return result.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void startObject() {
+      start(OBJECT);
+    }
+
+    @Override
+    public void endObject() {
+      end(OBJECT_END);
+    }
+
+    @Override
+    public void startArray() {
+      start(ARRAY);
+    }
+
+    @Override
+    public void endArray() {
+      end(ARRAY_END);
+    }
+
+    @Override
+    public void key(CharSequence key) {
+      String k = key.toString();
+      Integer offset = keys.get(k);
+      if (offset == null) {
+        offset = string(k);
+        if (keys.size() < MAX_SHARED_KEYS) {
+          keys.put(k, offset);
+        }
+      }
+      word(KEY | offset);
+    }
+
+    @Override
+    public void value(CharSequence value) {
+      count();
+      word(STRING | string(value));
+    }
+
+    @Override
+    public void value(long value) {
+      count();
+      word(LONG);
+      word(value);
+    }
+
+    @Override
+    public void value(double value) {
+      count();
+      word(DOUBLE);
+      word(Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public void number(CharSequence text) {
+      String s = text.toString();
+      try {
+        if (s.indexOf('.') < 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+          long l = Long.parseLong(s);
+          if (Long.toString(l).equals(s)) {
+            value(l);
+            return;
+          }
+        } else {
+          double d = Double.parseDouble(s);
+          if (Double.toString(d).equals(s)) {
+            value(d);
+            return;
+          }
+        }
+      } catch (NumberFormatException e) {
+        // out of range, stored as written
+      }
+      count();
+      word(NUMBER | string(s));
+    }
+
+    @Override
+    public void value(boolean value) {
+      count();
+      word(value ? TRUE : FALSE);
+    }
+
+    @Override
+    public void nullValue() {
+      count();
+      word(NULL);
+    }
+
+    private void start(long tag) {
+      count();
+      if (depth == starts.length) {
+        starts = Arrays.copyOf(starts, depth * 2);
+        counts = Arrays.copyOf(counts, depth * 2);
+      }
+      starts[depth] = tape.position() >>> 3;
+      counts[depth++] = 0;
+      word(tag);
+    }
+
+    private void end(long tag) {
+      int start = starts[--depth];
+      int end = tape.position() >>> 3;
+      long count = Math.min(counts[depth], MAX_COUNT);
+      tape.putLong(start << 3, tape.getLong(start << 3) | count << 32 | end);
+      word(tag | start);
+    }
+
+    private void count() {
+      if (depth > 0) {
+        counts[depth - 1]++;
+      }
+    }
+
+    private void word(long word) {
+      if (!tape.hasRemaining()) {
+        tape = grow(tape, 8);
+      }
+      tape.putLong(word);
+    }
+
+    /**
+     * Appends {@code s} to the strings and returns its offset.
+     */
+    private int string(CharSequence s) {
+      int length = s.length();
+      strings = ensure(strings, 4 + 3 * (long) length);
+      int offset = strings.position();
+      strings.position(offset + 4);
+      for (int i = 0; i < length; i++) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+          strings.put((byte) c);
+        } else if (c < 0x800) {
+          strings.put((byte) (0xc0 | c >> 6));
+          strings.put((byte) (0x80 | (c & 0x3f)));
+        } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+          int cp = Character.toCodePoint(c, s.charAt(++i));
+          strings.put((byte) (0xf0 | cp >> 18));
+          strings.put((byte) (0x80 | (cp >> 12 & 0x3f)));
+          strings.put((byte) (0x80 | (cp >> 6 & 0x3f)));
+          strings.put((byte) (0x80 | (cp & 0x3f)));
+        } else if (Character.isSurrogate(c)) {
+          strings.put((byte) '?');
+        } else {
+          strings.put((byte) (0xe0 | c >> 12));
+          strings.put((byte) (0x80 | (c >> 6 & 0x3f)));
+          strings.put((byte) (0x80 | (c & 0x3f)));
+        }
+      }
+      strings.putInt(offset, strings.position() - offset - 4);
+      return offset;
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, long bytes) {
+      return buffer.remaining() >= bytes ? buffer : grow(buffer, bytes);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, long bytes) {
+      long needed = buffer.position() + bytes;
+      if (needed > Integer.MAX_VALUE - 8) {
+        throw new IllegalArgumentException("Document too large for a tape");
+      }
+      long capacity = Math.max(needed, Math.min((long) buffer.capacity() * 2, Integer.MAX_VALUE - 8));
+      ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.flip();
+      grown.put(buffer);
+      return grown;
+    }
+  }
+
+  /**
+   * Builds a parse tree from visitor events.
+   */
+  private static final class TreeBuilder implements JtonVisitor {
+    private JtonElement[] stack = new JtonElement[32];
+    private String[] names = new String[32];
+    private int depth;
+    JtonElement root;
+
+    @Override
+    public void startObject() {
+      push(new JtonObject());
+    }
+
+    @Override
+    public void startArray() {
+      push(new JtonArray());
+    }
+
+    @Override
+    public void endObject() {
+      pop();
+    }
+
+    @Override
+    public void endArray() {
+      pop();
+    }
+
+    @Override
+    public void key(CharSequence key) {
+      names[depth - 1] = key.toString();
+    }
+
+    @Override
+    public void value(CharSequence value) {
+      add(new JtonPrimitive(value.toString()));
+    }
+
+    @Override
+    public void value(long value) {
+      add(new JtonPrimitive(value));
+    }
+
+    @Override
+    public void value(double value) {
+      add(new JtonPrimitive(value));
+    }
+
+    @Override
+    public void number(CharSequence text) {
+      add(new JtonPrimitive(new LazilyParsedNumber(text.toString())));
+    }
+
+    @Override
+    public void value(boolean value) {
+      add(new JtonPrimitive(value));
+    }
+
+    @Override
+    public void nullValue() {
+      add(JtonNull.INSTANCE);
+    }
+
+    private void push(JtonElement container) {
+      if (depth == stack.length) {
+        stack = Arrays.copyOf(stack, depth * 2);
+        names = Arrays.copyOf(names, depth * 2);
+      }
+      stack[depth++] = container;
+    }
+
+    private void pop() {
+      JtonElement container = stack[--depth];
+      stack[depth] = null;
+      add(container);
+    }
+
+    private void add(JtonElement value) {
+      if (depth == 0) {
+        root = value;
+        return;
+      }
+      JtonElement parent = stack[depth - 1];
+      if (parent instanceof JtonObject) {
+        ((JtonObject) parent).add(names[depth - 1], value);
+      } else if (parent instanceof JtonArray) {
+        ((JtonArray) parent).add(value);
+      }
+    }
+  }
+
+  /**
+   * Writes visitor events as compact JSON.
+   */
+  private static final class JsonBuilder implements JtonVisitor {
+    private final JtonWriter writer;
+
+    JsonBuilder(StringBuilder sb) {
+      this.writer = new JtonWriter(sb);
+    }
+
+    @Override
+    public void startObject() {
+      run(writer::beginObject);
+    }
+
+    @Override
+    public void endObject() {
+      run(writer::endObject);
+    }
+
+    @Override
+    public void startArray() {
+      run(writer::beginArray);
+    }
+
+    @Override
+    public void endArray() {
+      run(writer::endArray);
+    }
+
+    @Override
+    public void key(CharSequence key) {
+      writer.name(key.toString());
+    }
+
+    @Override
+    public void value(CharSequence value) {
+      run(() -> writer.value(value.toString()));
+    }
+
+    @Override
+    public void value(long value) {
+      run(() -> writer.value(value));
+    }
+
+    @Override
+    public void value(double value) {
+      if (Double.isFinite(value)) {
+        run(() -> writer.value(value));
+      } else {
+        // written like JtonElement.toString() does, where the strict writer would throw
+        run(() -> writer.value(new JtonPrimitive(value)));
+      }
+    }
+
+    @Override
+    public void number(CharSequence text) {
+      run(() -> writer.value(new JtonPrimitive(new LazilyParsedNumber(text.toString()))));
+    }
+
+    @Override
+    public void value(boolean value) {
+      run(() -> writer.value(value));
+    }
+
+    @Override
+    public void nullValue() {
+      run(writer::nullValue);
+    }
+
+    private static void run(IOAction action) {
+      try {
+        action.run();
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private interface IOAction {
+      void run() throws IOException;
+    }
+  }
+}
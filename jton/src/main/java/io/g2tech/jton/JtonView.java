@@ -0,0 +1,493 @@
+package io.g2tech.jton;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A lazy, read-only transformation of an object or array, see
+ * {@link JtonElement#view()}.
+ *
+ * <pre>
+ * JtonObject summary = user.view()
+ *     .filterKeys(name -&gt; !name.startsWith("_"))
+ *     .renameKeys(Map.of("user_id", "userId"))
+ *     .mapValues((name, value) -&gt; name.equals("tags") ? value.view().limit(3).element() : value)
+ *     .element().getAsJtonObject();
+ * </pre>
+ *
+ * A view holds the base element and the steps applied to it, nothing else.
+ * {@link #element()} returns a frozen {@link JtonObject} or {@link JtonArray}
+ * whose members or elements are computed from the base element on every
+ * access. Containers it returns that are not frozen themselves are returned as
+ * read-only views of their own, so nothing below a view can be changed through
+ * it. A view can be serialized, compared and read like any other element
+ * without materializing a copy; {@link JtonElement#deepCopy()} materializes
+ * one. Steps are applied in the order they were added, and only to the members or
+ * elements of the base element itself. Nested changes are made by mapping a
+ * value to a view of it, as above.
+ * <p>
+ * Views reflect later changes to a mutable base element. Reading a view is as
+ * thread-safe as reading its base element, provided the functions passed to it
+ * have no side effects. Objects with steps that rename or filter members
+ * compute {@code size()} and lookups by name by walking the base members; other
+ * lookups go to the base element directly.
+ */
+public final class JtonView {
+  private static final Step[] NO_STEPS = {};
+
+  private final JtonElement base;
+  private final Step[] steps;
+
+  JtonView(JtonElement base) {
+    this(base, NO_STEPS);
+  }
+
+  private JtonView(JtonElement base, Step[] steps) {
+    this.base = base;
+    this.steps = steps;
+  }
+
+  /**
+   * Returns a view without the members whose names, as renamed by the previous
+   * steps, do not satisfy {@code keep}.
+   *
+   * @throws IllegalStateException if the base element is not an object.
+   */
+  public JtonView filterKeys(Predicate<? super String> keep) {
+    Objects.requireNonNull(keep, "keep");
+    return member(m -> keep.test(m.key), false, true);
+  }
+
+  /**
+   * Returns a view with the members renamed by {@code rename}. A {@code null}
+   * result keeps the name. If members end up with the same name, the view holds
+   * only the first of them.
+   *
+   * @throws IllegalStateException if the base element is not an object.
+   */
+  public JtonView renameKeys(Function<? super String, String> rename) {
+    Objects.requireNonNull(rename, "rename");
+    return member(m -> {
+      String name = rename.apply(m.key);
+      if (name != null) {
+        m.key = name;
+      }
+      return true;
+    }, true, false);
+  }
+
+  /**
+   * Returns a view with the members named like a key of {@code names} renamed
+   * to its value. The map is read when the view is accessed.
+   *
+   * @throws IllegalStateException if the base element is not an object.
+   */
+  public JtonView renameKeys(Map<String, String> names) {
+    Objects.requireNonNull(names, "names");
+    return renameKeys(names::get);
+  }
+
+  /**
+   * Returns a view with the member values replaced by the result of
+   * {@code mapper}, which is called on every access. A {@code null} result
+   * becomes {@link JtonNull}.
+   *
+   * @throws IllegalStateException if the base element is not an object.
+   */
+  public JtonView mapValues(Function<? super JtonElement, ? extends JtonElement> mapper) {
+    Objects.requireNonNull(mapper, "mapper");
+    return mapValues((name, value) -> mapper.apply(value));
+  }
+
+  /**
+   * Returns a view with the member values replaced by the result of
+   * {@code mapper} for their name and value, which is called on every access. A
+   * {@code null} result becomes {@link JtonNull}.
+   *
+   * @throws IllegalStateException if the base element is not an object.
+   */
+  public JtonView mapValues(BiFunction<? super String, ? super JtonElement, ? extends JtonElement> mapper) {
+    Objects.requireNonNull(mapper, "mapper");
+    return member(m -> {
+      m.value = orNull(mapper.apply(m.key, m.value));
+      return true;
+    }, false, false);
+  }
+
+  /**
+   * Returns a view without the elements that do not satisfy {@code keep}.
+   *
+   * @throws IllegalStateException if the base element is not an array.
+   */
+  public JtonView filter(Predicate<? super JtonElement> keep) {
+    Objects.requireNonNull(keep, "keep");
+    return element(e -> keep.test(e) ? e : null, true);
+  }
+
+  /**
+   * Returns a view with the elements replaced by the result of {@code mapper},
+   * which is called on every access. A {@code null} result becomes
+   * {@link JtonNull}.
+   *
+   * @throws IllegalStateException if the base element is not an array.
+   */
+  public JtonView map(Function<? super JtonElement, ? extends JtonElement> mapper) {
+    Objects.requireNonNull(mapper, "mapper");
+    return element(e -> orNull(mapper.apply(e)), false);
+  }
+
+  /**
+   * Returns a view of at most the first {@code maxSize} elements.
+   *
+   * @throws IllegalArgumentException if {@code maxSize} is negative.
+   * @throws IllegalStateException    if the base element is not an array.
+   */
+  public JtonView limit(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize < 0: " + maxSize);
+    } else if (!(base instanceof JtonArray)) {
+      throw new IllegalStateException("Not a JSON Array view");
+    }
+    Step[] result = Arrays.copyOf(steps, steps.length + 1);
+    result[steps.length] = new Limit(maxSize);
+    return new JtonView(base, result);
+  }
+
+  private JtonView member(MemberFunction function, boolean renames, boolean filters) {
+    if (!(base instanceof JtonObject)) {
+      throw new IllegalStateException("Not a JSON Object view");
+    }
+    Step[] result = Arrays.copyOf(steps, steps.length + 1);
+    result[steps.length] = new MemberStep(function, renames, filters);
+    return new JtonView(base, result);
+  }
+
+  private JtonView element(Function<JtonElement, JtonElement> function, boolean filters) {
+    if (!(base instanceof JtonArray)) {
+      throw new IllegalStateException("Not a JSON Array view");
+    }
+    Step[] result = Arrays.copyOf(steps, steps.length + 1);
+    result[steps.length] = new ElementStep(function, filters);
+    return new JtonView(base, result);
+  }
+
+  private static JtonElement orNull(JtonElement element) {
+    return element == null ? JtonNull.INSTANCE : element;
+  }
+
+  /**
+   * Returns {@code element} if it is frozen, or else a read-only view of it.
+   */
+  static JtonElement readOnly(JtonElement element) {
+    if (element.isFrozen()) {
+      return element;
+    } else if (element instanceof JtonObject) {
+      return new JtonObject(new ViewMap((JtonObject) element, NO_STEPS), true);
+    }
+    return new JtonArray(new ViewList((JtonArray) element, NO_STEPS), true);
+  }
+
+  /**
+   * Returns the view as a frozen element: a {@link JtonObject} or
+   * {@link JtonArray} computing its content from the base element on access, or
+   * the base element itself if no steps have been added.
+   */
+  public JtonElement element() {
+    if (steps.length == 0) {
+      return base;
+    } else if (base instanceof JtonObject) {
+      return new JtonObject(new ViewMap((JtonObject) base, steps), true);
+    }
+    return new JtonArray(new ViewList((JtonArray) base, steps), true);
+  }
+
+  /**
+   * Returns the view as compact JSON, like {@link JtonElement#toString()}.
+   */
+  @Override
+  public String toString() {
+    return element().toString();
+  }
+
+  private abstract static class Step {
+  }
+
+  /**
+   * Transforms {@link Member#key} and {@link Member#value} in place, returning
+   * false to drop the member.
+   */
+  private interface MemberFunction {
+    boolean apply(Member member);
+  }
+
+  private static final class MemberStep extends Step {
+    final MemberFunction function;
+    final boolean renames;
+    final boolean filters;
+
+    MemberStep(MemberFunction function, boolean renames, boolean filters) {
+      this.function = function;
+      this.renames = renames;
+      this.filters = filters;
+    }
+  }
+
+  /**
+   * A step applying a function to each element; filters drop elements mapped
+   * to {@code null}.
+   */
+  private static final class ElementStep extends Step {
+    final Function<JtonElement, JtonElement> function;
+    final boolean filters;
+
+    ElementStep(Function<JtonElement, JtonElement> function, boolean filters) {
+      this.function = function;
+      this.filters = filters;
+    }
+  }
+
+  private static final class Limit extends Step {
+    final int maxSize;
+
+    Limit(int maxSize) {
+      this.maxSize = maxSize;
+    }
+  }
+
+  private static final class Member {
+    String key;
+    JtonElement value;
+  }
+
+  /**
+   * The members of an object view.
+   */
+  private static final class ViewMap extends AbstractMap<String, JtonElement> {
+    private final JtonObject base;
+    private final Step[] steps;
+    private final boolean renames;
+    private final boolean filters;
+
+    ViewMap(JtonObject base, Step[] steps) {
+      this.base = base;
+      this.steps = steps;
+      boolean r = false;
+      boolean f = false;
+      for (Step step : steps) {
+        r |= ((MemberStep) step).renames;
+        f |= ((MemberStep) step).filters;
+      }
+      this.renames = r;
+      this.filters = f;
+    }
+
+    /**
+     * Applies the steps to {@code m}, returning false if the member is dropped.
+     */
+    boolean apply(Member m) {
+      for (Step step : steps) {
+        if (!((MemberStep) step).function.apply(m)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public JtonElement get(Object key) {
+      if (!(key instanceof String)) {
+        return null;
+      } else if (!renames) {
+        JtonElement value = base.get((String) key);
+        if (value == null) {
+          return null;
+        }
+        Member m = new Member();
+        m.key = (String) key;
+        m.value = value;
+        return apply(m) ? readOnly(m.value) : null;
+      }
+      for (Map.Entry<String, JtonElement> e : entrySet()) {
+        if (e.getKey().equals(key)) {
+          return e.getValue();
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+      if (!renames && !filters) {
+        return base.size();
+      }
+      int size = 0;
+      for (Iterator<Map.Entry<String, JtonElement>> i = entrySet().iterator(); i.hasNext(); i.next()) {
+        size++;
+      }
+      return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, JtonElement>> entrySet() {
+      return new AbstractSet<Map.Entry<String, JtonElement>>() {
+        @Override
+        public int size() {
+          return ViewMap.this.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, JtonElement>> iterator() {
+          Iterator<Map.Entry<String, JtonElement>> members = base.entrySet().iterator();
+          Set<String> seen = renames ? new HashSet<>() : null;
+          return new Iterator<Map.Entry<String, JtonElement>>() {
+            private final Member m = new Member();
+            private Map.Entry<String, JtonElement> next;
+
+            @Override
+            public boolean hasNext() {
+              while (next == null && members.hasNext()) {
+                Map.Entry<String, JtonElement> e = members.next();
+                m.key = e.getKey();
+                m.value = e.getValue();
+                if (apply(m) && (seen == null || seen.add(m.key))) {
+                  next = new SimpleImmutableEntry<>(m.key, readOnly(m.value));
+                }
+              }
+              return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, JtonElement> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              Map.Entry<String, JtonElement> result = next;
+              next = null;
+              return result;
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /**
+   * The elements of an array view.
+   */
+  private static final class ViewList extends AbstractList<JtonElement> {
+    private final JtonArray base;
+    private final Step[] steps;
+
+    /**
+     * True if the view only maps elements, so its indices are those of the base
+     * array.
+     */
+    private final boolean mapsOnly;
+
+    ViewList(JtonArray base, Step[] steps) {
+      this.base = base;
+      this.steps = steps;
+      boolean m = true;
+      for (Step step : steps) {
+        m &= step instanceof ElementStep && !((ElementStep) step).filters;
+      }
+      this.mapsOnly = m;
+    }
+
+    @Override
+    public JtonElement get(int index) {
+      if (mapsOnly) {
+        JtonElement element = base.get(index);
+        for (Step step : steps) {
+          element = ((ElementStep) step).function.apply(element);
+        }
+        return readOnly(element);
+      } else if (index >= 0) {
+        int i = 0;
+        for (JtonElement element : this) {
+          if (i++ == index) {
+            return element;
+          }
+        }
+      }
+      throw new IndexOutOfBoundsException("Index: " + index);
+    }
+
+    @Override
+    public int size() {
+      if (mapsOnly) {
+        return base.size();
+      }
+      int size = 0;
+      for (Iterator<JtonElement> i = iterator(); i.hasNext(); i.next()) {
+        size++;
+      }
+      return size;
+    }
+
+    @Override
+    public Iterator<JtonElement> iterator() {
+      Iterator<JtonElement> elements = base.iterator();
+      int[] counts = new int[steps.length];
+      return new Iterator<JtonElement>() {
+        private JtonElement next;
+        private boolean done;
+
+        @Override
+        public boolean hasNext() {
+          while (next == null && !done && elements.hasNext()) {
+            next = advance(elements.next());
+          }
+          return next != null;
+        }
+
+        /**
+         * Runs {@code element} through the steps, counting it against each
+         * limit it reaches.
+         */
+        private JtonElement advance(JtonElement element) {
+          for (int i = 0; i < steps.length && element != null; i++) {
+            Step step = steps[i];
+            if (step instanceof Limit) {
+              if (counts[i] == ((Limit) step).maxSize) {
+                // later elements can only reach this limit again
+                done = true;
+                return null;
+              }
+              counts[i]++;
+            } else {
+              element = ((ElementStep) step).function.apply(element);
+            }
+          }
+          return element == null ? null : readOnly(element);
+        }
+
+        @Override
+        public JtonElement next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          JtonElement result = next;
+          next = null;
+          return result;
+        }
+      };
+    }
+  }
+}
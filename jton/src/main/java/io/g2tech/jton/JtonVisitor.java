@@ -0,0 +1,94 @@
+package io.g2tech.jton;
+
+import io.g2tech.jton.internal.Visitors;
+
+/**
+ * Receives the structure of a JSON document as a sequence of events, without
+ * a parse tree. The same visitor can be driven by the parser, see
+ * {@link JtonParser#parseUtf8(byte[], JtonVisitor)} and
+ * {@link JtonParser#parse(java.io.Reader, JtonVisitor)}, or by an existing tree,
+ * see {@link JtonElement#accept(JtonVisitor)}.
+ * <p>
+ * Every member of an object is reported as {@link #key(CharSequence)} followed
+ * by its value; a value is either a single {@code value} or {@code nullValue}
+ * call or a whole nested object or array. Numbers are reported as
+ * {@link #value(long)} if they are written as an integer that fits into a
+ * long, as {@link #value(double)} if they are held as a double in a tree, and
+ * otherwise as {@link #number(CharSequence)} with their digits as written,
+ * which by default converts them to the nearest long or double.
+ * <p>
+ * Keys and strings may be passed as views over the parser's buffers, which are
+ * only valid during the call; use {@code toString()} to keep them. All methods
+ * do nothing by default.
+ */
+public interface JtonVisitor {
+
+  /**
+   * Called at the start of an object.
+   */
+  default void startObject() {
+  }
+
+  /**
+   * Called with the name of the next member of the current object.
+   */
+  default void key(CharSequence key) {
+  }
+
+  /**
+   * Called at the end of an object.
+   */
+  default void endObject() {
+  }
+
+  /**
+   * Called at the start of an array.
+   */
+  default void startArray() {
+  }
+
+  /**
+   * Called at the end of an array.
+   */
+  default void endArray() {
+  }
+
+  /**
+   * Called with a string value.
+   */
+  default void value(CharSequence value) {
+  }
+
+  /**
+   * Called with an integral number that fits into a long.
+   */
+  default void value(long value) {
+  }
+
+  /**
+   * Called with a number held as a double.
+   */
+  default void value(double value) {
+  }
+
+  /**
+   * Called with any other number, as written. By default reports it to
+   * {@link #value(long)} if it is an integer that fits, and to
+   * {@link #value(double)} otherwise.
+   */
+  default void number(CharSequence text) {
+    Visitors.number(text.toString(), this);
+  }
+
+  /**
+   * Called with a boolean value.
+   */
+  default void value(boolean value) {
+  }
+
+  /**
+   * Called for a null value.
+   */
+  default void nullValue() {
+  }
+}
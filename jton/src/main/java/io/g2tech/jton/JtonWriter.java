@@ -0,0 +1,385 @@
+package io.g2tech.jton;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import io.g2tech.jton.internal.JtonOutput;
+import io.g2tech.jton.internal.JtonPrinter;
+import io.g2tech.jton.internal.NumberWriter;
+
+/**
+ * Writes a JSON document one token at a time, without building a tree. Objects
+ * and arrays are opened and closed explicitly, and whole {@link JtonElement}s
+ * can be written as values anywhere in between:
+ *
+ * <pre>
+ * try (JtonWriter writer = new JtonWriter(out)) {
+ *   writer.beginArray();
+ *   for (Row row : rows) {
+ *     writer.beginObject().name("id").value(row.id()).name("data").value(row.tree()).endObject();
+ *   }
+ *   writer.endArray();
+ * }
+ * </pre>
+ *
+ * Memory use does not grow with the size of the document. The output is the
+ * same as that of {@link JtonElement#writeTo(OutputStream, String)} for the
+ * equivalent tree: transient primitives written as array elements or member
+ * values are skipped, together with their member names.
+ * <p>
+ * A document holds exactly one top-level value. Writers are not thread-safe.
+ */
+public final class JtonWriter implements Closeable, Flushable {
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_ARRAY = 2;
+  private static final int NONEMPTY_ARRAY = 3;
+  private static final int EMPTY_OBJECT = 4;
+  private static final int NONEMPTY_OBJECT = 5;
+  private static final int CLOSED = 6;
+
+  private final JtonOutput out;
+  private final Closeable target;
+  private JtonPrinter printer = JtonPrinter.of(null);
+  private String indent;
+  private boolean htmlSafe;
+  private int[] stack = new int[32];
+  private int stackSize;
+  private String deferredName;
+
+  /**
+   * Creates a writer that writes UTF-8 to {@code out}.
+   */
+  public JtonWriter(OutputStream out) {
+    this(JtonOutput.utf8(out, new byte[8192]), out);
+  }
+
+  /**
+   * Creates a writer that writes UTF-8 to {@code channel}.
+   */
+  public JtonWriter(WritableByteChannel channel) {
+    this(Channels.newOutputStream(channel));
+  }
+
+  /**
+   * Creates a writer that appends to {@code out}.
+   */
+  public JtonWriter(Appendable out) {
+    this(JtonOutput.of(out), out instanceof Closeable ? (Closeable) out : null);
+  }
+
+  private JtonWriter(JtonOutput out, Closeable target) {
+    this.out = out;
+    this.target = target;
+    push(EMPTY_DOCUMENT);
+  }
+
+  /**
+   * Sets the string repeated for each level of indentation. A {@code null} or
+   * empty indent, the default, yields compact output.
+   *
+   * @return this writer.
+   */
+  public JtonWriter setIndent(String indent) {
+    this.indent = indent;
+    this.printer = JtonPrinter.of(indent, htmlSafe);
+    return this;
+  }
+
+  /**
+   * Sets whether {@code < > & = '} in strings and names are written as unicode
+   * escapes, so the output can be embedded in HTML, like Gson's
+   * {@code JsonWriter.setHtmlSafe}. Off by default.
+   *
+   * @return this writer.
+   */
+  public JtonWriter setHtmlSafe(boolean htmlSafe) {
+    this.htmlSafe = htmlSafe;
+    this.printer = JtonPrinter.of(indent, htmlSafe);
+    return this;
+  }
+
+  /**
+   * Begins a new array.
+   *
+   * @return this writer.
+   */
+  public JtonWriter beginArray() throws IOException {
+    beforeValue();
+    out.write('[');
+    push(EMPTY_ARRAY);
+    return this;
+  }
+
+  /**
+   * Ends the current array.
+   *
+   * @return this writer.
+   */
+  public JtonWriter endArray() throws IOException {
+    return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+  }
+
+  /**
+   * Begins a new object.
+   *
+   * @return this writer.
+   */
+  public JtonWriter beginObject() throws IOException {
+    beforeValue();
+    out.write('{');
+    push(EMPTY_OBJECT);
+    return this;
+  }
+
+  /**
+   * Ends the current object.
+   *
+   * @return this writer.
+   */
+  public JtonWriter endObject() throws IOException {
+    return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+  }
+
+  /**
+   * Sets the name of the next member of the current object. The name is written
+   * together with the value, so it is dropped if the value is skipped.
+   *
+   * @return this writer.
+   */
+  public JtonWriter name(String name) {
+    if (name == null) {
+      throw new NullPointerException("name == null");
+    }
+    int context = peek();
+    if (deferredName != null || (context != EMPTY_OBJECT && context != NONEMPTY_OBJECT)) {
+      throw new IllegalStateException("Nesting problem.");
+    }
+    deferredName = name;
+    return this;
+  }
+
+  /**
+   * Writes a string value, or null if {@code value} is {@code null}.
+   *
+   * @return this writer.
+   */
+  public JtonWriter value(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    printer.value(value, out);
+    return this;
+  }
+
+  /**
+   * Writes a boolean value.
+   *
+   * @return this writer.
+   */
+  public JtonWriter value(boolean value) throws IOException {
+    beforeValue();
+    out.write(value ? "true" : "false");
+    return this;
+  }
+
+  /**
+   * Writes a long value.
+   *
+   * @return this writer.
+   */
+  public JtonWriter value(long value) throws IOException {
+    beforeValue();
+    NumberWriter.write(value, out);
+    return this;
+  }
+
+  /**
+   * Writes a double value.
+   *
+   * @throws IllegalArgumentException if {@code value} is NaN or infinite.
+   * @return this writer.
+   */
+  public JtonWriter value(double value) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+    }
+    beforeValue();
+    NumberWriter.write(value, out);
+    return this;
+  }
+
+  /**
+   * Writes a number value, or null if {@code value} is {@code null}.
+   *
+   * @throws IllegalArgumentException if {@code value} is NaN or infinite.
+   * @return this writer.
+   */
+  public JtonWriter value(Number value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    if (value instanceof Double || value instanceof Float) {
+      double d = value.doubleValue();
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+      }
+    } else if (!(value instanceof Integer || value instanceof Long || value instanceof Short
+        || value instanceof Byte)) {
+      String string = value.toString();
+      if (string.equals("-Infinity") || string.equals("Infinity") || string.equals("NaN")) {
+        throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+      }
+      beforeValue();
+      out.write(string);
+      return this;
+    }
+    beforeValue();
+    NumberWriter.write(value, out);
+    return this;
+  }
+
+  /**
+   * Writes a null value.
+   *
+   * @return this writer.
+   */
+  public JtonWriter nullValue() throws IOException {
+    beforeValue();
+    out.write("null");
+    return this;
+  }
+
+  /**
+   * Writes {@code element} with all its children as the next value. A transient
+   * primitive is skipped, together with a pending member name.
+   *
+   * @throws IllegalStateException if {@code element} is a transient primitive
+   *                               written as the top-level value.
+   * @return this writer.
+   */
+  public JtonWriter value(JtonElement element) throws IOException {
+    if (JtonPrinter.isSkipped(element)) {
+      if (stackSize <= 1) {
+        // reject before beforeValue() so the writer can still take a value
+        throw new IllegalStateException("transient type");
+      }
+      if (peek() == EMPTY_OBJECT || peek() == NONEMPTY_OBJECT) {
+        if (deferredName == null) {
+          throw new IllegalStateException("Nesting problem.");
+        }
+        deferredName = null;
+      }
+      return this;
+    }
+    beforeValue();
+    printer.print(element, out, stackSize - 1);
+    return this;
+  }
+
+  /**
+   * Writes buffered output to the target and flushes it.
+   */
+  @Override
+  public void flush() throws IOException {
+    if (peek() == CLOSED) {
+      throw new IllegalStateException("JtonWriter is closed.");
+    }
+    out.flush();
+    if (target instanceof Flushable) {
+      ((Flushable) target).flush();
+    }
+  }
+
+  /**
+   * Flushes and closes this writer and its target.
+   *
+   * @throws IOException if the document is incomplete.
+   */
+  @Override
+  public void close() throws IOException {
+    if (peek() == CLOSED) {
+      return;
+    }
+    boolean complete = stackSize == 1 && stack[0] == NONEMPTY_DOCUMENT;
+    out.flush();
+    stack[stackSize - 1] = CLOSED;
+    if (target != null) {
+      target.close();
+    }
+    if (!complete) {
+      throw new IOException("Incomplete document");
+    }
+  }
+
+  private JtonWriter close(int empty, int nonempty, char bracket) throws IOException {
+    int context = peek();
+    if (context != empty && context != nonempty) {
+      throw new IllegalStateException("Nesting problem.");
+    }
+    if (deferredName != null) {
+      throw new IllegalStateException("Dangling name: " + deferredName);
+    }
+    stackSize--;
+    if (context == nonempty) {
+      printer.newline(out, stackSize - 1);
+    }
+    out.write(bracket);
+    return this;
+  }
+
+  /**
+   * Writes the separator, indentation and pending name that precede a value,
+   * and updates the state of the enclosing context.
+   */
+  private void beforeValue() throws IOException {
+    switch (peek()) {
+    case EMPTY_DOCUMENT:
+      stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+      break;
+    case EMPTY_ARRAY:
+      stack[stackSize - 1] = NONEMPTY_ARRAY;
+      printer.newline(out, stackSize - 1);
+      break;
+    case NONEMPTY_ARRAY:
+      out.write(',');
+      printer.newline(out, stackSize - 1);
+      break;
+    case EMPTY_OBJECT:
+    case NONEMPTY_OBJECT:
+      if (deferredName == null) {
+        throw new IllegalStateException("Nesting problem.");
+      }
+      if (peek() == NONEMPTY_OBJECT) {
+        out.write(',');
+      }
+      stack[stackSize - 1] = NONEMPTY_OBJECT;
+      printer.newline(out, stackSize - 1);
+      printer.name(deferredName, out);
+      out.write(printer.separator());
+      deferredName = null;
+      break;
+    case NONEMPTY_DOCUMENT:
+      throw new IllegalStateException("JSON must have only one top-level value.");
+    default:
+      throw new IllegalStateException("JtonWriter is closed.");
+    }
+  }
+
+  private int peek() {
+    return stack[stackSize - 1];
+  }
+
+  private void push(int context) {
+    if (stackSize == stack.length) {
+      stack = Arrays.copyOf(stack, stackSize * 2);
+    }
+    stack[stackSize++] = context;
+  }
+}
@@ -0,0 +1,294 @@
+package io.g2tech.jton;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The key layout of a {@link JtonObject}: an immutable, ordered list of member
+ * names and the slot each one occupies in the object's value array. Objects
+ * built by adding the same names in the same order share one shape, so record
+ * style data stores its member names once instead of once per object.
+ * <p>
+ * Shapes form a tree rooted at {@link #EMPTY}; adding a name moves an object to
+ * a child shape, like hidden classes in JavaScript engines. The tree is global
+ * and bounded: objects with too many members, long member names or too many
+ * sibling layouts get no shape and fall back to a map.
+ * <p>
+ * Shapes refer to their parent strongly and to their children weakly, so the
+ * tree only holds the layouts of live objects and their prefixes. Shapes no
+ * object uses any more are collected, which frees their slot in the
+ * {@value #MAX_SHAPES} shape and {@value #MAX_TRANSITIONS} transition budgets,
+ * so a burst of unusual layouts cannot exhaust the tree for good.
+ */
+final class Shape {
+  static final int MAX_KEYS = 64;
+  static final int MAX_KEY_LENGTH = 256;
+  static final int MAX_TRANSITIONS = 32;
+  static final int MAX_SHAPES = 1 << 16;
+  private static final int LINEAR_SCAN = 8;
+  private static final AtomicInteger SHAPES = new AtomicInteger();
+
+  /**
+   * The transitions to shapes that have been collected, and the transitions
+   * not collected yet, which have to stay reachable to be enqueued.
+   */
+  private static final ReferenceQueue<Shape> CLEARED = new ReferenceQueue<>();
+  private static final Set<Transition> PENDING = ConcurrentHashMap.newKeySet();
+
+  static final Shape EMPTY = new Shape(new String[0], null, true);
+
+  private final String[] keys;
+  private final int[] table;
+  private final boolean shared;
+  private final Shape thawed;
+
+  /**
+   * Keeps the prefixes of a layout alive as long as objects use it.
+   */
+  @SuppressWarnings("unused")
+  private final Shape parent;
+  private volatile Transition first;
+  private volatile Map<String, Transition> transitions;
+  private volatile Shape frozen;
+
+  private Shape(String[] keys, Shape parent, boolean shared) {
+    this.keys = keys;
+    this.parent = parent;
+    this.shared = shared;
+    this.table = keys.length > LINEAR_SCAN ? table(keys) : null;
+    this.thawed = this;
+  }
+
+  private Shape(Shape thawed) {
+    this.keys = thawed.keys;
+    this.parent = null;
+    this.table = thawed.table;
+    this.shared = false;
+    this.thawed = thawed;
+  }
+
+  /**
+   * Returns a shape for {@code keys} that is not part of the tree and has no
+   * transitions.
+   */
+  static Shape detached(String[] keys) {
+    return new Shape(keys, null, false);
+  }
+
+  /**
+   * Returns the number of shapes in the tree that have not been found
+   * collected yet.
+   */
+  static int count() {
+    drain();
+    return SHAPES.get();
+  }
+
+  private static int[] table(String[] keys) {
+    int[] table = new int[Integer.highestOneBit(keys.length) << 2];
+    int mask = table.length - 1;
+    for (int slot = 0; slot < keys.length; slot++) {
+      int i = spread(keys[slot].hashCode()) & mask;
+      while (table[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      table[i] = slot + 1;
+    }
+    return table;
+  }
+
+  private static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Returns the twin of this shape marking objects as frozen. It has the same
+   * slots but no transitions.
+   */
+  Shape frozen() {
+    if (thawed != this) {
+      return this;
+    }
+    Shape f = frozen;
+    if (f == null) {
+      frozen = f = new Shape(this);
+    }
+    return f;
+  }
+
+  /**
+   * Returns the shape mutable objects with this layout use.
+   */
+  Shape thawed() {
+    return thawed;
+  }
+
+  boolean isFrozen() {
+    return thawed != this;
+  }
+
+  int size() {
+    return keys.length;
+  }
+
+  String key(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * Returns the slot of {@code key}, or -1 if this shape has no such member.
+   */
+  int slot(String key) {
+    String[] k = keys;
+    int[] t = table;
+    if (t == null) {
+      for (int i = 0; i < k.length; i++) {
+        if (k[i].equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    int mask = t.length - 1;
+    for (int i = spread(key.hashCode()) & mask;; i = (i + 1) & mask) {
+      int s = t[i];
+      if (s == 0) {
+        return -1;
+      } else if (k[s - 1].equals(key)) {
+        return s - 1;
+      }
+    }
+  }
+
+  /**
+   * Returns the shape with {@code key} appended, or {@code null} if objects of
+   * that layout should be stored as maps. {@code key} must not be a member of
+   * this shape.
+   */
+  Shape transition(String key) {
+    Transition f = first;
+    Shape t;
+    if (f != null && f.key.equals(key) && (t = f.get()) != null) {
+      return t;
+    }
+    Map<String, Transition> more = transitions;
+    if (more != null && (f = more.get(key)) != null && (t = f.get()) != null) {
+      return t;
+    }
+    return addTransition(key);
+  }
+
+  private synchronized Shape addTransition(String key) {
+    if (!shared || keys.length == MAX_KEYS || key.length() > MAX_KEY_LENGTH) {
+      return null;
+    }
+    drain();
+    Transition f = first;
+    Shape t;
+    if (f == null || f.get() == null) {
+      t = newShape(key);
+      if (t != null) {
+        first = new Transition(t, key, null);
+      }
+      return t;
+    } else if (f.key.equals(key)) {
+      return f.get();
+    }
+    Map<String, Transition> more = transitions;
+    if (more == null) {
+      transitions = more = new ConcurrentHashMap<>();
+    } else if ((f = more.get(key)) != null && (t = f.get()) != null) {
+      return t;
+    } else if (more.size() + 1 >= MAX_TRANSITIONS) {
+      return null;
+    }
+    t = newShape(key);
+    if (t != null) {
+      more.put(key, new Transition(t, key, more));
+    }
+    return t;
+  }
+
+  private Shape newShape(String key) {
+    if (SHAPES.incrementAndGet() > MAX_SHAPES) {
+      SHAPES.decrementAndGet();
+      return null;
+    }
+    String[] k = Arrays.copyOf(keys, keys.length + 1);
+    k[keys.length] = key;
+    return new Shape(k, this, true);
+  }
+
+  /**
+   * Releases the budget of collected shapes and removes their transitions.
+   */
+  private static void drain() {
+    Reference<? extends Shape> r;
+    while ((r = CLEARED.poll()) != null) {
+      Transition t = (Transition) r;
+      if (PENDING.remove(t)) {
+        SHAPES.decrementAndGet();
+        if (t.owner != null) {
+          t.owner.remove(t.key, t);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the shape of this layout with the member at {@code slot} removed.
+   */
+  Shape without(int slot) {
+    if (isFrozen()) {
+      throw new IllegalStateException("frozen");
+    }
+    String[] k = new String[keys.length - 1];
+    System.arraycopy(keys, 0, k, 0, slot);
+    System.arraycopy(keys, slot + 1, k, slot, k.length - slot);
+    Shape s = EMPTY;
+    for (int i = 0; i < k.length && s != null; i++) {
+      s = s.transition(k[i]);
+    }
+    return s != null ? s : detached(k);
+  }
+
+  /**
+   * Returns the number of members objects of this shape usually end up with,
+   * following the first transition made from each shape.
+   */
+  int expectedSize() {
+    Shape s = this;
+    Transition f;
+    Shape next;
+    while ((f = s.first) != null && (next = f.get()) != null) {
+      s = next;
+    }
+    return s.keys.length;
+  }
+
+  /**
+   * A weak reference from a shape to the child shape adding {@code key}.
+   */
+  private static final class Transition extends WeakReference<Shape> {
+    final String key;
+
+    /**
+     * The transition map holding this reference, or {@code null} for the first
+     * transition of a shape, which is replaced when found cleared.
+     */
+    final Map<String, Transition> owner;
+
+    Transition(Shape shape, String key, Map<String, Transition> owner) {
+      super(shape, CLEARED);
+      this.key = key;
+      this.owner = owner;
+      PENDING.add(this);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package io.g2tech.jton.internal;
+
+/**
+ * Classifies 64-byte blocks of UTF-8 input for the {@link StructuralIndexer}.
+ * For every block four bit masks are produced, bit {@code i} standing for the
+ * byte at {@code off + i}: whitespace, structural operators ({@code {}[]:,}),
+ * quotes and backslashes.
+ * <p>
+ * This is the portable scalar implementation. On Java 17 and later the
+ * multi-release JAR replaces {@link BlockClassifiers} with a version that picks
+ * a SIMD implementation based on {@code jdk.incubator.vector} when that module
+ * is available.
+ */
+public class BlockClassifier {
+  public static final int WHITESPACE = 0;
+  public static final int OPERATOR = 1;
+  public static final int QUOTE = 2;
+  public static final int BACKSLASH = 3;
+
+  private static final byte[] CLASSES = new byte[256];
+
+  static {
+    for (char c : new char[] { ' ', '\t', '\n', '\r' }) {
+      CLASSES[c] = 1 << WHITESPACE;
+    }
+    for (char c : new char[] { '{', '}', '[', ']', ':', ',' }) {
+      CLASSES[c] = 1 << OPERATOR;
+    }
+    CLASSES['"'] = 1 << QUOTE;
+    CLASSES['\\'] = 1 << BACKSLASH;
+  }
+
+  /**
+   * Classifies the 64 bytes starting at {@code off}.
+   *
+   * @param buf   the input; at least 64 bytes must be available at {@code off}.
+   * @param off   the start of the block.
+   * @param masks receives the masks, indexed by {@link #WHITESPACE},
+   *              {@link #OPERATOR}, {@link #QUOTE} and {@link #BACKSLASH}.
+   */
+  public void classify(byte[] buf, int off, long[] masks) {
+    long whitespace = 0;
+    long operator = 0;
+    long quote = 0;
+    long backslash = 0;
+    for (int i = 0; i < 64; i++) {
+      long c = CLASSES[buf[off + i] & 0xff];
+      whitespace |= (c & 1) << i;
+      operator |= (c >>> OPERATOR & 1) << i;
+      quote |= (c >>> QUOTE & 1) << i;
+      backslash |= (c >>> BACKSLASH & 1) << i;
+    }
+    masks[WHITESPACE] = whitespace;
+    masks[OPERATOR] = operator;
+    masks[QUOTE] = quote;
+    masks[BACKSLASH] = backslash;
+  }
+
+  /**
+   * Returns true if {@code c} is JSON whitespace or a structural operator, i.e.
+   * a byte that may legally follow a number or a literal.
+   */
+  static boolean isDelimiter(byte c) {
+    return (CLASSES[c & 0xff] & (1 << WHITESPACE | 1 << OPERATOR)) != 0;
+  }
+}
@@ -0,0 +1,15 @@
+package io.g2tech.jton.internal;
+
+/**
+ * Selects the {@link BlockClassifier} implementation for the running JVM. This
+ * version is used on Java 11 and always returns the scalar classifier.
+ */
+final class BlockClassifiers {
+  private BlockClassifiers() {
+    throw new UnsupportedOperationException();
+  }
+
+  static BlockClassifier select() {
+    return new BlockClassifier();
+  }
+}
@@ -0,0 +1,375 @@
+package io.g2tech.jton.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.gson.internal.LazilyParsedNumber;
+
+import io.g2tech.jton.JtonArray;
+import io.g2tech.jton.JtonElement;
+import io.g2tech.jton.JtonObject;
+import io.g2tech.jton.JtonPrimitive;
+
+/**
+ * Writes JTON trees in the canonical form of RFC 8785, the JSON
+ * Canonicalization Scheme: no whitespace, object members sorted by the UTF-16
+ * code units of their names, numbers written as by ECMAScript's
+ * {@code Number.prototype.toString()} after conversion to a double, and strings
+ * escaped as little as JSON allows. Transient primitives inside arrays and
+ * objects are skipped, together with their member names.
+ * <p>
+ * Logically equal trees have the same canonical form regardless of member
+ * order, so it can be hashed or signed. The bytes are streamed into a
+ * {@link MessageDigest} or {@link Murmur3} through a small buffer, without
+ * building the text first.
+ */
+public final class CanonicalPrinter {
+  /**
+   * The seed of the content hash. Zero, so the hash can be reproduced by any
+   * MurmurHash3 implementation over the canonical UTF-8 bytes.
+   */
+  public static final long SEED = 0;
+
+  private static final ThreadLocal<byte[]> BYTE_BUFFERS = new ThreadLocal<>();
+  private static final long MAX_EXACT_LONG = 1L << 53;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private CanonicalPrinter() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Returns the canonical form of {@code element}.
+   *
+   * @throws IllegalStateException    if {@code element} is a transient primitive.
+   * @throws IllegalArgumentException if the tree holds NaN or infinite numbers.
+   */
+  public static String toString(JtonElement element) {
+    StringBuilder sb = new StringBuilder(JtonPrinter.estimateSize(element));
+    try {
+      print(element, JtonOutput.of(sb));
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the canonical form of {@code element} to {@code out}, encoded as
+   * UTF-8. The stream is neither flushed nor closed.
+   */
+  public static void print(JtonElement element, OutputStream out) throws IOException {
+    byte[] buffer = BYTE_BUFFERS.get();
+    if (buffer == null) {
+      buffer = new byte[8192];
+    } else {
+      BYTE_BUFFERS.set(null);
+    }
+    try {
+      JtonOutput output = JtonOutput.utf8(out, buffer);
+      print(element, output);
+      output.flush();
+    } finally {
+      BYTE_BUFFERS.set(buffer);
+    }
+  }
+
+  /**
+   * Updates {@code digest} with the canonical UTF-8 bytes of {@code element}.
+   */
+  public static void digest(JtonElement element, MessageDigest digest) {
+    try {
+      print(element, new OutputStream() {
+        @Override
+        public void write(int b) {
+          digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          digest.update(b, off, len);
+        }
+      });
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Returns the 128-bit MurmurHash3 of the canonical UTF-8 bytes of
+   * {@code element}, with seed {@value #SEED}, as two longs, low half first.
+   */
+  public static long[] hash128(JtonElement element) {
+    Murmur3 hash = new Murmur3(SEED);
+    try {
+      print(element, new OutputStream() {
+        @Override
+        public void write(int b) {
+          hash.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          hash.update(b, off, len);
+        }
+      });
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    return hash.hash128();
+  }
+
+  /**
+   * Writes the canonical form of {@code element} to {@code out}.
+   */
+  public static void print(JtonElement element, JtonOutput out) throws IOException {
+    if (element == null || element.isJtonNull()) {
+      out.write("null");
+    } else if (element instanceof JtonPrimitive) {
+      JtonPrimitive primitive = (JtonPrimitive) element;
+      if (primitive.isJtonTransient()) {
+        throw new IllegalStateException("transient type");
+      }
+      primitive(primitive, out);
+    } else if (element instanceof JtonArray) {
+      out.write('[');
+      boolean empty = true;
+      for (JtonElement e : (JtonArray) element) {
+        if (JtonPrinter.isSkipped(e)) {
+          continue;
+        }
+        if (!empty) {
+          out.write(',');
+        }
+        empty = false;
+        print(e, out);
+      }
+      out.write(']');
+    } else if (element instanceof JtonObject) {
+      object((JtonObject) element, out);
+    } else {
+      throw new IllegalArgumentException("Couldn't write " + element.getClass());
+    }
+  }
+
+  private static void object(JtonObject object, JtonOutput out) throws IOException {
+    String[] keys = new String[object.size()];
+    int n = 0;
+    for (Map.Entry<String, JtonElement> e : object.entrySet()) {
+      if (!JtonPrinter.isSkipped(e.getValue())) {
+        keys[n++] = e.getKey();
+      }
+    }
+    Arrays.sort(keys, 0, n);
+    out.write('{');
+    for (int i = 0; i < n; i++) {
+      if (i > 0) {
+        out.write(',');
+      }
+      string(keys[i], out);
+      out.write(':');
+      print(object.get(keys[i]), out);
+    }
+    out.write('}');
+  }
+
+  private static void primitive(JtonPrimitive primitive, JtonOutput out) throws IOException {
+    if (primitive.isNumber()) {
+      out.write(number(primitive.getAsNumber()));
+    } else if (primitive.isBoolean()) {
+      out.write(primitive.getAsBoolean() ? "true" : "false");
+    } else {
+      string(primitive.getAsString(), out);
+    }
+  }
+
+  /**
+   * Writes {@code value} as a JSON string, escaping only quotes, backslashes and
+   * control characters.
+   */
+  static void string(String value, JtonOutput out) throws IOException {
+    out.write('"');
+    int last = 0;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') {
+        continue;
+      }
+      if (last < i) {
+        out.write(value, last, i);
+      }
+      last = i + 1;
+      switch (c) {
+      case '"':
+        out.write("\\\"");
+        break;
+      case '\\':
+        out.write("\\\\");
+        break;
+      case '\b':
+        out.write("\\b");
+        break;
+      case '\t':
+        out.write("\\t");
+        break;
+      case '\n':
+        out.write("\\n");
+        break;
+      case '\f':
+        out.write("\\f");
+        break;
+      case '\r':
+        out.write("\\r");
+        break;
+      default:
+        out.write("\\u00");
+        out.write(HEX[c >> 4]);
+        out.write(HEX[c & 0xf]);
+      }
+    }
+    if (last < length) {
+      out.write(value, last, length);
+    }
+    out.write('"');
+  }
+
+  /**
+   * Returns the canonical form of {@code n}: the number is converted to the
+   * nearest double and written as by ECMAScript.
+   *
+   * @throws IllegalArgumentException if {@code n} is NaN or infinite.
+   */
+  public static String number(Number n) {
+    if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+      long v = n.longValue();
+      if (v >= -MAX_EXACT_LONG && v <= MAX_EXACT_LONG) {
+        return Long.toString(v);
+      }
+    } else if (n instanceof LazilyParsedNumber) {
+      String text = n.toString();
+      if (isShortInteger(text)) {
+        return text.equals("-0") ? "0" : text;
+      }
+      return number(Double.parseDouble(text));
+    }
+    return number(n.doubleValue());
+  }
+
+  /**
+   * Returns true if {@code text} is an integer of at most 15 digits, which
+   * converts to a double exactly.
+   */
+  private static boolean isShortInteger(String text) {
+    int start = text.startsWith("-") ? 1 : 0;
+    int length = text.length() - start;
+    if (length == 0 || length > 15) {
+      return false;
+    }
+    for (int i = start; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns {@code d} as written by ECMAScript's
+   * {@code Number.prototype.toString()}.
+   *
+   * @throws IllegalArgumentException if {@code d} is NaN or infinite.
+   */
+  public static String number(double d) {
+    if (Double.isNaN(d) || Double.isInfinite(d)) {
+      throw new IllegalArgumentException("Numeric values must be finite, but was " + d);
+    } else if (d == 0) {
+      return "0";
+    } else if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+      return Long.toString((long) d);
+    }
+    double abs = Math.abs(d);
+    String digits;
+    int point;
+    if (abs >= Double.MIN_NORMAL) {
+      char[] buf = new char[JtonOutput.SCRATCH_SIZE];
+      int shortest = NumberWriter.shortest(abs, buf, 0);
+      digits = new String(buf, 0, shortest & 0xff);
+      point = shortest >> 8;
+    } else {
+      // Schubfach, like Double.toString, never picks a single digit for the few
+      // subnormals where that would be shortest, so round the exact value to
+      // fewer digits while it still converts back to d.
+      BigDecimal exact = new BigDecimal(abs);
+      int k = significantDigits(Double.toString(abs));
+      BigDecimal shortest = exact.round(new MathContext(k, RoundingMode.HALF_EVEN));
+      while (k > 1) {
+        BigDecimal shorter = exact.round(new MathContext(k - 1, RoundingMode.HALF_EVEN));
+        if (shorter.doubleValue() != abs) {
+          break;
+        }
+        shortest = shorter;
+        k--;
+      }
+      shortest = shortest.stripTrailingZeros();
+      digits = shortest.unscaledValue().toString();
+      point = digits.length() - shortest.scale();
+    }
+    // |d| = 0.digits * 10^point
+    int k = digits.length();
+
+    StringBuilder sb = new StringBuilder(k + 8);
+    if (d < 0) {
+      sb.append('-');
+    }
+    if (k <= point && point <= 21) {
+      sb.append(digits);
+      for (int i = k; i < point; i++) {
+        sb.append('0');
+      }
+    } else if (0 < point && point <= 21) {
+      sb.append(digits, 0, point).append('.').append(digits, point, k);
+    } else if (-6 < point && point <= 0) {
+      sb.append("0.");
+      for (int i = point; i < 0; i++) {
+        sb.append('0');
+      }
+      sb.append(digits);
+    } else {
+      sb.append(digits.charAt(0));
+      if (k > 1) {
+        sb.append('.').append(digits, 1, k);
+      }
+      int exponent = point - 1;
+      sb.append('e').append(exponent < 0 ? '-' : '+').append(Math.abs(exponent));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the number of significant digits written by {@link Double#toString}.
+   */
+  private static int significantDigits(String s) {
+    int end = s.indexOf('E');
+    if (end < 0) {
+      end = s.length();
+    }
+    int first = 0;
+    while (first < end && (s.charAt(first) == '0' || s.charAt(first) == '.')) {
+      first++;
+    }
+    int last = end - 1;
+    while (last > first && (s.charAt(last) == '0' || s.charAt(last) == '.')) {
+      last--;
+    }
+    int digits = last - first + 1;
+    return s.lastIndexOf('.', last) >= first ? digits - 1 : digits;
+  }
+}
@@ -0,0 +1,48 @@
+package io.g2tech.jton.internal;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A reader that counts the characters read through it.
+ */
+public final class CountingReader extends FilterReader {
+  private long count;
+
+  public CountingReader(Reader in) {
+    super(in);
+  }
+
+  @Override
+  public int read() throws IOException {
+    int c = super.read();
+    if (c >= 0) {
+      count++;
+    }
+    return c;
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    int n = super.read(cbuf, off, len);
+    if (n > 0) {
+      count += n;
+    }
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = super.skip(n);
+    count += skipped;
+    return skipped;
+  }
+
+  /**
+   * Returns the number of characters read so far.
+   */
+  public long getCount() {
+    return count;
+  }
+}
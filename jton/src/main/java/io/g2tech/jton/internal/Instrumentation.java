@@ -0,0 +1,207 @@
+package io.g2tech.jton.internal;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import jdk.jfr.EventType;
+
+import io.g2tech.jton.JtonArray;
+import io.g2tech.jton.JtonElement;
+import io.g2tech.jton.JtonMetrics;
+import io.g2tech.jton.JtonMetricsListener;
+import io.g2tech.jton.JtonObject;
+
+/**
+ * Measures parsing, serialization and deep copies for the registered
+ * {@link JtonMetricsListener} and the JFR events. Callers check the
+ * {@code is...Measured()} methods first and only go through the measuring
+ * wrappers when they return true, so nothing is measured, allocated or
+ * counted while no listener is registered and the events are disabled.
+ */
+public final class Instrumentation {
+  // enabled while a recording has the event on; asking the type allocates nothing
+  private static final EventType PARSE = EventType.getEventType(JtonParseEvent.class);
+  private static final EventType SERIALIZE = EventType.getEventType(JtonSerializeEvent.class);
+  private static final EventType COPY = EventType.getEventType(JtonDeepCopyEvent.class);
+
+  private Instrumentation() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * A serialization step that returns the size of its output.
+   */
+  public interface Serialization {
+    long run() throws IOException;
+  }
+
+  public static boolean isParseMeasured() {
+    return JtonMetrics.getListener() != null || PARSE.isEnabled();
+  }
+
+  public static boolean isSerializeMeasured() {
+    return JtonMetrics.getListener() != null || SERIALIZE.isEnabled();
+  }
+
+  public static boolean isCopyMeasured() {
+    return JtonMetrics.getListener() != null || COPY.isEnabled();
+  }
+
+  /**
+   * Runs {@code parser} and reports the result. {@code size} is evaluated after
+   * the parser has run, successfully or not.
+   */
+  public static JtonElement parse(Supplier<JtonElement> parser, LongSupplier size) {
+    JtonMetricsListener listener = JtonMetrics.getListener();
+    JtonParseEvent event = new JtonParseEvent();
+    event.begin();
+    long start = System.nanoTime();
+    JtonElement result;
+    try {
+      result = parser.get();
+    } catch (RuntimeException | Error e) {
+      long nanos = System.nanoTime() - start;
+      event.end();
+      long n = size.getAsLong();
+      if (event.shouldCommit()) {
+        event.size = n;
+        event.failure = e.toString();
+        event.commit();
+      }
+      if (listener != null) {
+        listener.parseFailed(n, e, nanos);
+      }
+      throw e;
+    }
+    long nanos = System.nanoTime() - start;
+    event.end();
+    long n = size.getAsLong();
+    long shape = shape(result);
+    if (event.shouldCommit()) {
+      event.size = n;
+      event.nodes = nodes(shape);
+      event.maxDepth = depth(shape);
+      event.commit();
+    }
+    if (listener != null) {
+      listener.parsed(n, nodes(shape), depth(shape), nanos);
+    }
+    return result;
+  }
+
+  /**
+   * Runs {@code serialization} and reports the size it returns.
+   */
+  public static void serialize(Serialization serialization) throws IOException {
+    JtonMetricsListener listener = JtonMetrics.getListener();
+    JtonSerializeEvent event = new JtonSerializeEvent();
+    event.begin();
+    long start = System.nanoTime();
+    long size;
+    try {
+      size = serialization.run();
+    } catch (IOException | RuntimeException | Error e) {
+      long nanos = System.nanoTime() - start;
+      event.end();
+      if (event.shouldCommit()) {
+        event.failure = e.toString();
+        event.commit();
+      }
+      if (listener != null) {
+        listener.serializeFailed(e, nanos);
+      }
+      throw e;
+    }
+    long nanos = System.nanoTime() - start;
+    event.end();
+    if (event.shouldCommit()) {
+      event.size = size;
+      event.commit();
+    }
+    if (listener != null) {
+      listener.serialized(size, nanos);
+    }
+  }
+
+  /**
+   * Runs {@code copier} and reports the size of the copy.
+   */
+  public static <T extends JtonElement> T copy(Supplier<T> copier) {
+    JtonMetricsListener listener = JtonMetrics.getListener();
+    JtonDeepCopyEvent event = new JtonDeepCopyEvent();
+    event.begin();
+    long start = System.nanoTime();
+    T result = copier.get();
+    long nanos = System.nanoTime() - start;
+    event.end();
+    int nodes = nodes(shape(result));
+    if (event.shouldCommit()) {
+      event.nodes = nodes;
+      event.commit();
+    }
+    if (listener != null) {
+      listener.copied(nodes, nanos);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the node count in the upper and the maximum depth in the lower 32
+   * bits. Walks the tree with an explicit stack, so deep trees don't overflow
+   * the thread's stack.
+   */
+  private static long shape(JtonElement root) {
+    Walk walk = new Walk();
+    walk.push(root, 1);
+    long nodes = 0;
+    int depth = 0;
+    while (walk.size > 0) {
+      int level = walk.levels[--walk.size];
+      JtonElement element = walk.elements[walk.size];
+      walk.elements[walk.size] = null;
+      nodes++;
+      if (element instanceof JtonArray) {
+        depth = Math.max(depth, level);
+        for (JtonElement child : (JtonArray) element) {
+          walk.push(child, level + 1);
+        }
+      } else if (element instanceof JtonObject) {
+        depth = Math.max(depth, level);
+        for (Map.Entry<String, JtonElement> e : ((JtonObject) element).entrySet()) {
+          walk.push(e.getValue(), level + 1);
+        }
+      }
+    }
+    return nodes << 32 | depth;
+  }
+
+  /**
+   * The elements left to visit by {@link #shape(JtonElement)}, with their
+   * depths.
+   */
+  private static final class Walk {
+    JtonElement[] elements = new JtonElement[32];
+    int[] levels = new int[32];
+    int size;
+
+    void push(JtonElement element, int level) {
+      if (size == elements.length) {
+        elements = Arrays.copyOf(elements, size * 2);
+        levels = Arrays.copyOf(levels, size * 2);
+      }
+      elements[size] = element;
+      levels[size++] = level;
+    }
+  }
+
+  private static int nodes(long shape) {
+    return (int) (shape >>> 32);
+  }
+
+  private static int depth(long shape) {
+    return (int) shape;
+  }
+}
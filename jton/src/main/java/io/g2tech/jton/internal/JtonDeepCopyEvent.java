@@ -0,0 +1,19 @@
+package io.g2tech.jton.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for one deep copy of a JTON tree.
+ */
+@Name("io.g2tech.jton.JtonDeepCopy")
+@Label("JTON Deep Copy")
+@Category("JTON")
+@Description("Deep copy of a JTON object or array")
+public final class JtonDeepCopyEvent extends Event {
+  @Label("Nodes")
+  public int nodes;
+}
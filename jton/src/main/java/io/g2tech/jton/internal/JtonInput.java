@@ -0,0 +1,300 @@
+package io.g2tech.jton.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import io.g2tech.jton.JtonLimitExceededException;
+import io.g2tech.jton.JtonLimitExceededException.Limit;
+
+/**
+ * Turns byte input into a {@link Reader} for the parser. The first bytes decide
+ * how the input is read: gzip compressed input is inflated on the fly, a UTF-8
+ * or UTF-16 byte order mark selects the charset and is skipped, and input
+ * without a mark is read as UTF-16 if its first two bytes contain a zero byte
+ * and as UTF-8 otherwise. UTF-8 is decoded by {@link Utf8Reader}.
+ * <p>
+ * Stream input is read through a byte buffer sized from
+ * {@link InputStream#available()} and reused per thread.
+ */
+public final class JtonInput {
+  private static final int MIN_BUFFER = 8192;
+  private static final int MAX_BUFFER = 1 << 16;
+  private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+  private JtonInput() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Returns a reader over {@code len} bytes of {@code b} starting at
+   * {@code off}. Uncompressed UTF-8 is decoded straight from the array.
+   */
+  public static Reader open(byte[] b, int off, int len) throws IOException {
+    return open(b, off, len, Long.MAX_VALUE);
+  }
+
+  /**
+   * Returns a reader over {@code len} bytes of {@code b} starting at
+   * {@code off} that fails once more than {@code limit} bytes are read after
+   * decompression.
+   *
+   * @throws JtonLimitExceededException if {@code len} already exceeds the
+   *                                    limit.
+   */
+  public static Reader open(byte[] b, int off, int len, long limit) throws IOException {
+    if (len > limit) {
+      throw new JtonLimitExceededException(Limit.INPUT_SIZE, limit, null);
+    } else if (isGzip(b, off, len)) {
+      return open(new ByteArrayInputStream(b, off, len), limit);
+    }
+    int bom = bomLength(b, off, len);
+    Charset charset = charset(b, off, len);
+    if (charset == StandardCharsets.UTF_8) {
+      return new Utf8Reader(b, off + bom, len - bom);
+    }
+    return new InputStreamReader(new ByteArrayInputStream(b, off + bom, len - bom), charset);
+  }
+
+  /**
+   * Returns a reader over {@code in}. Closing the reader releases its buffer
+   * and inflater but leaves {@code in} open.
+   */
+  public static Reader open(InputStream in) throws IOException {
+    return open(in, Long.MAX_VALUE);
+  }
+
+  /**
+   * Returns a reader over {@code in} that fails once more than {@code limit}
+   * bytes are read after decompression.
+   */
+  public static Reader open(InputStream in, long limit) throws IOException {
+    byte[] buffer = borrow(in.available());
+    Source source = new Source(buffer, limit);
+    try {
+      source.open(new FilterInputStream(in) {
+        @Override
+        public void close() {
+          // the stream belongs to the caller
+        }
+      });
+      return source;
+    } catch (IOException | RuntimeException e) {
+      source.close();
+      throw e;
+    }
+  }
+
+  private static byte[] borrow(int available) {
+    int size = Math.min(MAX_BUFFER, Math.max(MIN_BUFFER, Integer.highestOneBit(Math.max(1, available)) << 1));
+    byte[] pooled = BUFFERS.get();
+    if (pooled != null && pooled.length >= size) {
+      BUFFERS.set(null);
+      return pooled;
+    }
+    return new byte[size];
+  }
+
+  private static void release(byte[] buffer) {
+    byte[] pooled = BUFFERS.get();
+    if (buffer.length <= MAX_BUFFER && (pooled == null || pooled.length < buffer.length)) {
+      BUFFERS.set(buffer);
+    }
+  }
+
+  private static boolean isGzip(byte[] b, int off, int len) {
+    return len >= 2 && b[off] == (byte) 0x1f && b[off + 1] == (byte) 0x8b;
+  }
+
+  private static int bomLength(byte[] b, int off, int len) {
+    if (len >= 3 && b[off] == (byte) 0xef && b[off + 1] == (byte) 0xbb && b[off + 2] == (byte) 0xbf) {
+      return 3;
+    } else if (len >= 2 && ((b[off] == (byte) 0xfe && b[off + 1] == (byte) 0xff)
+        || (b[off] == (byte) 0xff && b[off + 1] == (byte) 0xfe))) {
+      return 2;
+    }
+    return 0;
+  }
+
+  private static Charset charset(byte[] b, int off, int len) {
+    if (len < 2) {
+      return StandardCharsets.UTF_8;
+    } else if ((b[off] == (byte) 0xfe && b[off + 1] == (byte) 0xff) || (b[off] == 0 && b[off + 1] != 0)) {
+      return StandardCharsets.UTF_16BE;
+    } else if ((b[off] == (byte) 0xff && b[off + 1] == (byte) 0xfe) || (b[off] != 0 && b[off + 1] == 0)) {
+      return StandardCharsets.UTF_16LE;
+    }
+    return StandardCharsets.UTF_8;
+  }
+
+  /**
+   * The reader returned for stream input, owning the pooled buffer and the
+   * inflater, if any.
+   */
+  private static final class Source extends FilterReader {
+    private final long limit;
+    private byte[] buffer;
+    private GZIPInputStream gzip;
+
+    Source(byte[] buffer, long limit) {
+      super(new Reader() {
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+          return -1;
+        }
+
+        @Override
+        public void close() {
+          // placeholder until open
+        }
+      });
+      this.buffer = buffer;
+      this.limit = limit;
+    }
+
+    void open(InputStream in) throws IOException {
+      int n = head(in);
+      if (isGzip(buffer, 0, n)) {
+        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(Arrays.copyOf(buffer, n)), in);
+        in = gzip = new GZIPInputStream(rest, MIN_BUFFER);
+        n = head(in);
+      }
+      if (limit < Long.MAX_VALUE) {
+        in = new LimitedInputStream(in, limit, n);
+      }
+      int bom = bomLength(buffer, 0, n);
+      Charset charset = charset(buffer, 0, n);
+      if (charset == StandardCharsets.UTF_8) {
+        this.in = new Utf8Reader(in, buffer, bom, n);
+      } else {
+        InputStream head = new ByteArrayInputStream(Arrays.copyOfRange(buffer, bom, n));
+        this.in = new InputStreamReader(new SequenceInputStream(head, in), charset);
+      }
+    }
+
+    /**
+     * Reads up to four bytes into the start of the buffer.
+     */
+    private int head(InputStream in) throws IOException {
+      int n = 0;
+      while (n < 4) {
+        int read = in.read(buffer, n, 4 - n);
+        if (read < 0) {
+          break;
+        }
+        n += read;
+      }
+      return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (buffer != null) {
+        release(buffer);
+        buffer = null;
+      }
+      if (gzip != null) {
+        gzip.close();
+        gzip = null;
+      }
+    }
+  }
+
+  /**
+   * Returns a reader over {@code in} that fails once more than {@code limit}
+   * chars are read.
+   */
+  public static Reader limit(Reader in, long limit) {
+    return limit == Long.MAX_VALUE ? in : new FilterReader(in) {
+      private long count;
+
+      @Override
+      public int read() throws IOException {
+        int c = super.read();
+        if (c >= 0) {
+          count(1);
+        }
+        return c;
+      }
+
+      @Override
+      public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = super.read(cbuf, off, len);
+        if (n > 0) {
+          count(n);
+        }
+        return n;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+      }
+
+      private void count(long n) {
+        count += n;
+        if (count > limit) {
+          throw new JtonLimitExceededException(Limit.INPUT_SIZE, limit, null);
+        }
+      }
+    };
+  }
+
+  /**
+   * A stream that fails once more than a limit of bytes is read through it.
+   */
+  private static final class LimitedInputStream extends FilterInputStream {
+    private final long limit;
+    private long count;
+
+    LimitedInputStream(InputStream in, long limit, long count) {
+      super(in);
+      this.limit = limit;
+      this.count = count;
+      count(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count(n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    private void count(long n) {
+      count += n;
+      if (count > limit) {
+        throw new JtonLimitExceededException(Limit.INPUT_SIZE, limit, null);
+      }
+    }
+  }
+}
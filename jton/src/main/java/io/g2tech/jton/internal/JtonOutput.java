@@ -0,0 +1,390 @@
+package io.g2tech.jton.internal;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A character sink for the JTON writers. Compared to {@link Appendable} it lets
+ * the writers target a {@link StringBuilder}, an arbitrary {@link Appendable}
+ * or a UTF-8 encoded {@link OutputStream} through one small, mostly bimorphic,
+ * interface.
+ */
+public abstract class JtonOutput implements Flushable {
+  /**
+   * The size of {@link #scratch()}, enough for any formatted long, double or
+   * float.
+   */
+  static final int SCRATCH_SIZE = 32;
+
+  private char[] scratch;
+
+  /**
+   * Writes a single character.
+   */
+  public abstract void write(char c) throws IOException;
+
+  /**
+   * Writes a whole string.
+   */
+  public abstract void write(String s) throws IOException;
+
+  /**
+   * Writes the characters of {@code s} from {@code start} (inclusive) to
+   * {@code end} (exclusive).
+   */
+  public abstract void write(String s, int start, int end) throws IOException;
+
+  /**
+   * Writes the characters of {@code s} from {@code start} to {@code end}, which
+   * must all be ASCII.
+   */
+  public void writeAscii(String s, int start, int end) throws IOException {
+    write(s, start, end);
+  }
+
+  /**
+   * Writes {@code name} as a quoted member name, escaped with
+   * {@code replacements} as by {@link JtonPrinter}.
+   */
+  void writeName(String name, String[] replacements) throws IOException {
+    JtonPrinter.string(name, replacements, this);
+  }
+
+  /**
+   * Writes {@code len} characters of {@code cbuf} starting at {@code off}.
+   */
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    for (int i = off; i < off + len; i++) {
+      write(cbuf[i]);
+    }
+  }
+
+  /**
+   * Returns a buffer of {@value #SCRATCH_SIZE} chars to format numbers in,
+   * allocated once per output.
+   */
+  char[] scratch() {
+    char[] buf = scratch;
+    if (buf == null) {
+      scratch = buf = new char[SCRATCH_SIZE];
+    }
+    return buf;
+  }
+
+  /**
+   * Returns the number of characters, or bytes for UTF-8 output, written so far.
+   */
+  public abstract long count();
+
+  /**
+   * Pushes buffered output to the underlying target. Does not flush the target
+   * itself.
+   */
+  @Override
+  public void flush() throws IOException {
+    // nothing buffered by default
+  }
+
+  /**
+   * Returns an output appending to {@code sb}.
+   */
+  public static JtonOutput of(StringBuilder sb) {
+    return new StringBuilderOutput(sb);
+  }
+
+  /**
+   * Returns an output appending to {@code appendable}. String builders are
+   * written to directly.
+   */
+  public static JtonOutput of(Appendable appendable) {
+    if (appendable instanceof StringBuilder) {
+      return new StringBuilderOutput((StringBuilder) appendable);
+    }
+    return new AppendableOutput(appendable);
+  }
+
+  /**
+   * Returns an output that encodes to UTF-8 into {@code buffer} and writes full
+   * buffers to {@code out}. Call {@link #flush()} when done.
+   */
+  public static JtonOutput utf8(OutputStream out, byte[] buffer) {
+    return new Utf8Output(out, buffer);
+  }
+
+  private static final class StringBuilderOutput extends JtonOutput {
+    private final StringBuilder sb;
+    private final int start;
+
+    StringBuilderOutput(StringBuilder sb) {
+      this.sb = sb;
+      this.start = sb.length();
+    }
+
+    @Override
+    public long count() {
+      return sb.length() - start;
+    }
+
+    @Override
+    public void write(char c) {
+      sb.append(c);
+    }
+
+    @Override
+    public void write(String s) {
+      sb.append(s);
+    }
+
+    @Override
+    public void write(String s, int start, int end) {
+      sb.append(s, start, end);
+    }
+
+    @Override
+    public void writeAscii(String s, int start, int end) {
+      sb.append(s, start, end);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      sb.append(cbuf, off, len);
+    }
+  }
+
+  private static final class AppendableOutput extends JtonOutput {
+    private final Appendable appendable;
+    private long count;
+
+    AppendableOutput(Appendable appendable) {
+      this.appendable = appendable;
+    }
+
+    @Override
+    public void write(char c) throws IOException {
+      appendable.append(c);
+      count++;
+    }
+
+    @Override
+    public void write(String s) throws IOException {
+      appendable.append(s);
+      count += s.length();
+    }
+
+    @Override
+    public void write(String s, int start, int end) throws IOException {
+      appendable.append(s, start, end);
+      count += end - start;
+    }
+
+    @Override
+    public long count() {
+      return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (appendable instanceof Flushable) {
+        ((Flushable) appendable).flush();
+      }
+    }
+  }
+
+  private static final class Utf8Output extends JtonOutput {
+    private static final int NAMES_BEFORE_CACHE = 64;
+    private static final int NAME_CACHE_SIZE = 256;
+    private static final int MAX_CACHED_NAME = 64;
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private int pos;
+    private long drained;
+    private char highSurrogate;
+
+    /**
+     * The encoded bytes of recently written member names, by hash code, for
+     * names escaped with {@link #cachedReplacements}. Set up once a document
+     * has written enough names for repeats to be likely.
+     */
+    private int namesWritten;
+    private String[] cachedReplacements;
+    private String[] cachedNames;
+    private byte[][] cachedBytes;
+
+    Utf8Output(OutputStream out, byte[] buf) {
+      this.out = out;
+      this.buf = buf;
+    }
+
+    @Override
+    public void write(char c) throws IOException {
+      if (c < 0x80 && highSurrogate == 0) {
+        if (pos == buf.length) {
+          drain();
+        }
+        buf[pos++] = (byte) c;
+      } else {
+        encode(c);
+      }
+    }
+
+    @Override
+    public void write(String s) throws IOException {
+      write(s, 0, s.length());
+    }
+
+    @Override
+    public void write(String s, int start, int end) throws IOException {
+      byte[] b = buf;
+      int i = start;
+      while (i < end) {
+        char c = s.charAt(i);
+        if (c < 0x80 && highSurrogate == 0) {
+          if (pos == b.length) {
+            drain();
+          }
+          b[pos++] = (byte) c;
+        } else {
+          encode(c);
+        }
+        i++;
+      }
+    }
+
+    @Override
+    public void writeAscii(String s, int start, int end) throws IOException {
+      if (highSurrogate != 0) {
+        write(s, start, end);
+        return;
+      }
+      while (start < end) {
+        if (pos == buf.length) {
+          drain();
+        }
+        byte[] b = buf;
+        int p = pos;
+        int stop = start + Math.min(end - start, b.length - p);
+        // the chars are ASCII, so they are their own UTF-8 encoding
+        for (int i = start; i < stop; i++) {
+          b[p++] = (byte) s.charAt(i);
+        }
+        pos = p;
+        start = stop;
+      }
+    }
+
+    @Override
+    void writeName(String name, String[] replacements) throws IOException {
+      if (highSurrogate != 0 || name.length() > MAX_CACHED_NAME || ++namesWritten <= NAMES_BEFORE_CACHE) {
+        super.writeName(name, replacements);
+        return;
+      }
+      if (cachedReplacements != replacements) {
+        cachedReplacements = replacements;
+        cachedNames = new String[NAME_CACHE_SIZE];
+        cachedBytes = new byte[NAME_CACHE_SIZE][];
+      }
+      int slot = name.hashCode() & (NAME_CACHE_SIZE - 1);
+      String cached = cachedNames[slot];
+      byte[] bytes;
+      if (cached == name || name.equals(cached)) {
+        bytes = cachedBytes[slot];
+      } else {
+        StringBuilder sb = new StringBuilder(name.length() + 2);
+        JtonPrinter.string(name, replacements, JtonOutput.of(sb));
+        bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        cachedNames[slot] = name;
+        cachedBytes[slot] = bytes;
+      }
+      if (buf.length - pos < bytes.length) {
+        drain();
+        if (bytes.length > buf.length) {
+          out.write(bytes);
+          drained += bytes.length;
+          return;
+        }
+      }
+      System.arraycopy(bytes, 0, buf, pos, bytes.length);
+      pos += bytes.length;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      if (highSurrogate == 0 && buf.length - pos >= len) {
+        byte[] b = buf;
+        int p = pos;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+          char c = cbuf[i];
+          if (c >= 0x80) {
+            pos = p;
+            super.write(cbuf, i, end - i);
+            return;
+          }
+          b[p++] = (byte) c;
+        }
+        pos = p;
+      } else {
+        super.write(cbuf, off, len);
+      }
+    }
+
+    private void encode(char c) throws IOException {
+      if (pos + 4 > buf.length) {
+        drain();
+      }
+      if (highSurrogate != 0) {
+        char high = highSurrogate;
+        highSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          int cp = Character.toCodePoint(high, c);
+          buf[pos++] = (byte) (0xf0 | cp >> 18);
+          buf[pos++] = (byte) (0x80 | (cp >> 12 & 0x3f));
+          buf[pos++] = (byte) (0x80 | (cp >> 6 & 0x3f));
+          buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+          return;
+        }
+        buf[pos++] = '?';
+        write(c);
+      } else if (c < 0x80) {
+        buf[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buf[pos++] = (byte) (0xc0 | c >> 6);
+        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)) {
+        highSurrogate = c;
+      } else if (Character.isLowSurrogate(c)) {
+        buf[pos++] = '?';
+      } else {
+        buf[pos++] = (byte) (0xe0 | c >> 12);
+        buf[pos++] = (byte) (0x80 | (c >> 6 & 0x3f));
+        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+
+    private void drain() throws IOException {
+      out.write(buf, 0, pos);
+      drained += pos;
+      pos = 0;
+    }
+
+    @Override
+    public long count() {
+      return drained + pos;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (highSurrogate != 0) {
+        highSurrogate = 0;
+        if (pos == buf.length) {
+          drain();
+        }
+        buf[pos++] = '?';
+      }
+      drain();
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package io.g2tech.jton.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for one call to a {@code JtonParser.parse} method.
+ */
+@Name("io.g2tech.jton.JtonParse")
+@Label("JTON Parse")
+@Category("JTON")
+@Description("Parsing of a JSON document into a JTON tree")
+public final class JtonParseEvent extends Event {
+  @Label("Input Size")
+  @Description("Bytes or characters consumed, -1 if unknown")
+  public long size;
+
+  @Label("Nodes")
+  public int nodes;
+
+  @Label("Max Depth")
+  public int maxDepth;
+
+  @Label("Failure")
+  public String failure;
+}
@@ -0,0 +1,411 @@
+package io.g2tech.jton.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.g2tech.jton.JtonArray;
+import io.g2tech.jton.JtonElement;
+import io.g2tech.jton.JtonObject;
+import io.g2tech.jton.JtonPrimitive;
+
+/**
+ * Writes JTON trees as JSON text. The output is the same as that of Gson's
+ * {@code JsonWriter} in lenient mode with the same indent and HTML-safe
+ * setting, but the printer avoids its per-value bookkeeping: the newline and
+ * indentation run for every depth is computed once per indent, string builders
+ * and byte buffers are reused per thread, and the output buffer is pre-sized
+ * from a cheap estimate.
+ * <p>
+ * Strings are scanned once with a table lookup per char. Runs that need no
+ * escaping are copied in bulk, and ASCII runs go to UTF-8 output without
+ * encoding. UTF-8 outputs also cache the encoded bytes of member names that
+ * repeat within a document.
+ * <p>
+ * Transient primitives inside arrays and objects are skipped, together with
+ * their member names.
+ */
+public final class JtonPrinter {
+  private static final Map<String, JtonPrinter> PRINTERS = new ConcurrentHashMap<>();
+  private static final Map<String, JtonPrinter> HTML_SAFE_PRINTERS = new ConcurrentHashMap<>();
+  private static final int MAX_CACHED_PRINTERS = 16;
+
+  private static final int MAX_POOLED_CHARS = 1 << 20;
+  private static final int ESTIMATE_SAMPLE = 256;
+  private static final ThreadLocal<StringBuilder> STRING_BUILDERS = new ThreadLocal<>();
+  private static final ThreadLocal<byte[]> BYTE_BUFFERS = new ThreadLocal<>();
+
+  private static final String[] REPLACEMENT_CHARS;
+  private static final String[] HTML_SAFE_REPLACEMENT_CHARS;
+
+  static {
+    REPLACEMENT_CHARS = new String[128];
+    for (int i = 0; i <= 0x1f; i++) {
+      REPLACEMENT_CHARS[i] = String.format("\\u%04x", i);
+    }
+    REPLACEMENT_CHARS['"'] = "\\\"";
+    REPLACEMENT_CHARS['\\'] = "\\\\";
+    REPLACEMENT_CHARS['\t'] = "\\t";
+    REPLACEMENT_CHARS['\b'] = "\\b";
+    REPLACEMENT_CHARS['\n'] = "\\n";
+    REPLACEMENT_CHARS['\r'] = "\\r";
+    REPLACEMENT_CHARS['\f'] = "\\f";
+    HTML_SAFE_REPLACEMENT_CHARS = REPLACEMENT_CHARS.clone();
+    HTML_SAFE_REPLACEMENT_CHARS['<'] = "\\u003c";
+    HTML_SAFE_REPLACEMENT_CHARS['>'] = "\\u003e";
+    HTML_SAFE_REPLACEMENT_CHARS['&'] = "\\u0026";
+    HTML_SAFE_REPLACEMENT_CHARS['='] = "\\u003d";
+    HTML_SAFE_REPLACEMENT_CHARS['\''] = "\\u0027";
+  }
+
+  private static final JtonPrinter COMPACT = new JtonPrinter("", false);
+  private static final JtonPrinter HTML_SAFE_COMPACT = new JtonPrinter("", true);
+
+  private final String indent;
+  private final String separator;
+  private final String[] replacements;
+  private volatile String[] newlines;
+
+  private JtonPrinter(String indent, boolean htmlSafe) {
+    this.indent = indent;
+    this.replacements = htmlSafe ? HTML_SAFE_REPLACEMENT_CHARS : REPLACEMENT_CHARS;
+    this.separator = indent.isEmpty() ? ":" : ": ";
+    this.newlines = indent.isEmpty() ? null : newlines(new String[0], 8);
+  }
+
+  /**
+   * Returns a printer using {@code indent} for each level of indentation. A
+   * {@code null} or empty indent yields compact output.
+   */
+  public static JtonPrinter of(String indent) {
+    return of(indent, false);
+  }
+
+  /**
+   * Returns a printer using {@code indent} for each level of indentation that,
+   * if {@code htmlSafe} is set, also escapes {@code < > & = '} like Gson's
+   * HTML-safe {@code JsonWriter}, so the output can be embedded in HTML.
+   */
+  public static JtonPrinter of(String indent, boolean htmlSafe) {
+    if (indent == null || indent.isEmpty()) {
+      return htmlSafe ? HTML_SAFE_COMPACT : COMPACT;
+    }
+    Map<String, JtonPrinter> printers = htmlSafe ? HTML_SAFE_PRINTERS : PRINTERS;
+    JtonPrinter printer = printers.get(indent);
+    if (printer == null) {
+      printer = new JtonPrinter(indent, htmlSafe);
+      if (printers.size() < MAX_CACHED_PRINTERS) {
+        printers.putIfAbsent(indent, printer);
+      }
+    }
+    return printer;
+  }
+
+  /**
+   * Returns {@code element} as a string.
+   *
+   * @throws IllegalStateException if {@code element} is a transient primitive.
+   */
+  public String toString(JtonElement element) {
+    if (Instrumentation.isSerializeMeasured()) {
+      String[] result = new String[1];
+      try {
+        Instrumentation.serialize(() -> (result[0] = print(element)).length());
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+      return result[0];
+    }
+    return print(element);
+  }
+
+  private String print(JtonElement element) {
+    StringBuilder sb = STRING_BUILDERS.get();
+    if (sb == null) {
+      sb = new StringBuilder(Math.max(16, estimateSize(element)));
+    } else {
+      STRING_BUILDERS.set(null);
+      sb.setLength(0);
+      sb.ensureCapacity(estimateSize(element));
+    }
+    try {
+      print(element, JtonOutput.of(sb), 0);
+      return sb.toString();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    } finally {
+      if (sb.capacity() <= MAX_POOLED_CHARS) {
+        STRING_BUILDERS.set(sb);
+      }
+    }
+  }
+
+  /**
+   * Writes {@code element} to {@code out}.
+   */
+  public void print(JtonElement element, Appendable out) throws IOException {
+    if (Instrumentation.isSerializeMeasured()) {
+      Instrumentation.serialize(() -> print(element, JtonOutput.of(out)));
+    } else {
+      print(element, JtonOutput.of(out));
+    }
+  }
+
+  /**
+   * Writes {@code element} to {@code out} encoded as UTF-8. The stream is
+   * neither flushed nor closed.
+   */
+  public void print(JtonElement element, OutputStream out) throws IOException {
+    byte[] buffer = BYTE_BUFFERS.get();
+    if (buffer == null) {
+      buffer = new byte[8192];
+    } else {
+      BYTE_BUFFERS.set(null);
+    }
+    try {
+      JtonOutput output = JtonOutput.utf8(out, buffer);
+      if (Instrumentation.isSerializeMeasured()) {
+        Instrumentation.serialize(() -> print(element, output));
+      } else {
+        print(element, output);
+      }
+    } finally {
+      BYTE_BUFFERS.set(buffer);
+    }
+  }
+
+  private long print(JtonElement element, JtonOutput output) throws IOException {
+    print(element, output, 0);
+    output.flush();
+    return output.count();
+  }
+
+  /**
+   * Writes {@code element} to {@code out} as if it were nested {@code depth}
+   * levels deep.
+   */
+  public void print(JtonElement element, JtonOutput out, int depth) throws IOException {
+    if (element == null || element.isJtonNull()) {
+      out.write("null");
+    } else if (element instanceof JtonPrimitive) {
+      JtonPrimitive primitive = (JtonPrimitive) element;
+      if (primitive.isJtonTransient()) {
+        throw new IllegalStateException("transient type");
+      }
+      primitive(primitive, out);
+    } else if (element instanceof JtonArray) {
+      array((JtonArray) element, out, depth);
+    } else if (element instanceof JtonObject) {
+      object((JtonObject) element, out, depth);
+    } else {
+      throw new IllegalArgumentException("Couldn't write " + element.getClass());
+    }
+  }
+
+  /**
+   * Returns true if the printer skips {@code element} inside containers.
+   */
+  public static boolean isSkipped(JtonElement element) {
+    return element instanceof JtonPrimitive && ((JtonPrimitive) element).isJtonTransient();
+  }
+
+  private void array(JtonArray array, JtonOutput out, int depth) throws IOException {
+    out.write('[');
+    boolean empty = true;
+    for (JtonElement e : array) {
+      if (isSkipped(e)) {
+        continue;
+      }
+      if (!empty) {
+        out.write(',');
+      }
+      empty = false;
+      newline(out, depth + 1);
+      print(e, out, depth + 1);
+    }
+    if (!empty) {
+      newline(out, depth);
+    }
+    out.write(']');
+  }
+
+  private void object(JtonObject object, JtonOutput out, int depth) throws IOException {
+    out.write('{');
+    boolean empty = true;
+    for (Map.Entry<String, JtonElement> e : object.entrySet()) {
+      JtonElement value = e.getValue();
+      if (isSkipped(value)) {
+        continue;
+      }
+      if (!empty) {
+        out.write(',');
+      }
+      empty = false;
+      newline(out, depth + 1);
+      out.writeName(e.getKey(), replacements);
+      out.write(separator);
+      print(value, out, depth + 1);
+    }
+    if (!empty) {
+      newline(out, depth);
+    }
+    out.write('}');
+  }
+
+  private void primitive(JtonPrimitive primitive, JtonOutput out) throws IOException {
+    if (primitive.isNumber()) {
+      NumberWriter.write(primitive.getAsNumber(), out);
+    } else if (primitive.isBoolean()) {
+      out.write(primitive.getAsBoolean() ? "true" : "false");
+    } else {
+      string(primitive.getAsString(), replacements, out);
+    }
+  }
+
+  /**
+   * Writes {@code value} as a quoted and escaped JSON string.
+   */
+  public static void string(String value, JtonOutput out) throws IOException {
+    string(value, REPLACEMENT_CHARS, out);
+  }
+
+  /**
+   * Writes {@code value} as a string value, escaped as configured.
+   */
+  public void value(String value, JtonOutput out) throws IOException {
+    string(value, replacements, out);
+  }
+
+  /**
+   * Writes {@code name} as a member name, escaped as configured.
+   */
+  public void name(String name, JtonOutput out) throws IOException {
+    out.writeName(name, replacements);
+  }
+
+  /**
+   * Writes {@code value} quoted, replacing ASCII chars by their entry in
+   * {@code replacements}, if any, and escaping the JavaScript line separators.
+   */
+  static void string(String value, String[] replacements, JtonOutput out) throws IOException {
+    out.write('"');
+    int last = 0;
+    boolean ascii = true;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      String replacement;
+      if (c < 128) {
+        replacement = replacements[c];
+        if (replacement == null) {
+          continue;
+        }
+      } else if (c == '\u2028') {
+        replacement = "\\u2028";
+      } else if (c == '\u2029') {
+        replacement = "\\u2029";
+      } else {
+        ascii = false;
+        continue;
+      }
+      if (last < i) {
+        run(value, last, i, ascii, out);
+      }
+      out.writeAscii(replacement, 0, replacement.length());
+      last = i + 1;
+      ascii = true;
+    }
+    if (last < length) {
+      run(value, last, length, ascii, out);
+    }
+    out.write('"');
+  }
+
+  private static void run(String value, int start, int end, boolean ascii, JtonOutput out) throws IOException {
+    if (ascii) {
+      out.writeAscii(value, start, end);
+    } else {
+      out.write(value, start, end);
+    }
+  }
+
+  /**
+   * Writes the line break and indentation for {@code depth}, if this printer
+   * indents at all.
+   */
+  public void newline(JtonOutput out, int depth) throws IOException {
+    String[] runs = newlines;
+    if (runs == null) {
+      return;
+    }
+    if (depth >= runs.length) {
+      runs = newlines = newlines(runs, Math.max(depth + 1, runs.length * 2));
+    }
+    out.write(runs[depth]);
+  }
+
+  /**
+   * Returns the string written between a member name and its value.
+   */
+  public String separator() {
+    return separator;
+  }
+
+  private String[] newlines(String[] runs, int length) {
+    String[] result = new String[length];
+    System.arraycopy(runs, 0, result, 0, runs.length);
+    StringBuilder sb = new StringBuilder("\n");
+    for (int i = 0; i < length; i++) {
+      if (i >= runs.length) {
+        result[i] = sb.toString();
+      }
+      sb.append(indent);
+    }
+    return result;
+  }
+
+  /**
+   * Estimates the length of the compact output from a sample of at most
+   * {@value #ESTIMATE_SAMPLE} children of the root, so the cost does not grow
+   * with the size of the tree.
+   */
+  static int estimateSize(JtonElement element) {
+    long size;
+    if (element instanceof JtonArray) {
+      JtonArray array = (JtonArray) element;
+      int n = array.size();
+      int sample = Math.min(n, ESTIMATE_SAMPLE);
+      size = 0;
+      for (int i = 0; i < sample; i++) {
+        size += 1 + estimateChild(array.get(i));
+      }
+      size = sample == 0 ? 2 : 2 + size * n / sample;
+    } else if (element instanceof JtonObject) {
+      JtonObject object = (JtonObject) element;
+      int n = object.size();
+      int sample = 0;
+      size = 0;
+      for (Map.Entry<String, JtonElement> e : object.entrySet()) {
+        if (sample == ESTIMATE_SAMPLE) {
+          break;
+        }
+        size += 4 + e.getKey().length() + estimateChild(e.getValue());
+        sample++;
+      }
+      size = sample == 0 ? 2 : 2 + size * n / sample;
+    } else {
+      size = 16;
+    }
+    return (int) Math.min(size, MAX_POOLED_CHARS);
+  }
+
+  private static int estimateChild(JtonElement element) {
+    if (element instanceof JtonArray) {
+      return 2 + 16 * ((JtonArray) element).size();
+    } else if (element instanceof JtonObject) {
+      return 2 + 32 * ((JtonObject) element).size();
+    }
+    return 8;
+  }
+}
@@ -0,0 +1,23 @@
+package io.g2tech.jton.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for one serialization of a JTON tree.
+ */
+@Name("io.g2tech.jton.JtonSerialize")
+@Label("JTON Serialize")
+@Category("JTON")
+@Description("Serialization of a JTON tree to JSON text")
+public final class JtonSerializeEvent extends Event {
+  @Label("Output Size")
+  @Description("Bytes or characters written")
+  public long size;
+
+  @Label("Failure")
+  public String failure;
+}
@@ -0,0 +1,180 @@
+package io.g2tech.jton.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import io.g2tech.jton.JtonArray;
+import io.g2tech.jton.JtonElement;
+import io.g2tech.jton.JtonLimitExceededException;
+import io.g2tech.jton.JtonLimitExceededException.Limit;
+import io.g2tech.jton.JtonNull;
+import io.g2tech.jton.JtonObject;
+import io.g2tech.jton.JtonParseOptions;
+import io.g2tech.jton.JtonPrimitive;
+
+/**
+ * Builds a parse tree from a {@link JsonReader} while enforcing the limits of
+ * {@link JtonParseOptions}. Depth, node and member counts are checked when a
+ * value or member starts, before it is read. Gson materializes a string or
+ * number token before it can be measured, so those lengths are checked right
+ * after each token; the input size limit bounds that allocation.
+ * <p>
+ * Open containers are kept on an explicit stack, so nesting is bounded by the
+ * depth limit rather than the thread's stack.
+ */
+public final class LimitedParser {
+  private final JsonReader reader;
+  private final JtonParseOptions options;
+  private JtonElement[] stack = new JtonElement[16];
+  private String[] names = new String[16];
+  private int[] members = new int[16];
+  private int depth;
+  private long nodes;
+
+  private LimitedParser(JsonReader reader, JtonParseOptions options) {
+    this.reader = reader;
+    this.options = options;
+  }
+
+  /**
+   * Reads the next value from {@code reader}. Like {@link Streams#parse}, empty
+   * input yields {@link JtonNull} unless {@code options} are strict.
+   */
+  public static JtonElement parse(JsonReader reader, JtonParseOptions options) {
+    boolean isEmpty = true;
+    try {
+      reader.peek();
+      isEmpty = false;
+      return new LimitedParser(reader, options).read();
+    } catch (EOFException e) {
+      if (isEmpty && !options.isStrict()) {
+        return JtonNull.INSTANCE;
+      }
+      throw new JsonSyntaxException(e);
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    } catch (NumberFormatException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  private JtonElement read() throws IOException {
+    for (;;) {
+      JsonToken token = reader.peek();
+      if (depth > 0 && token != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT
+          && (token == JsonToken.NAME || stack[depth - 1] instanceof JtonArray)
+          && ++members[depth - 1] > options.getMaxMembers()) {
+        throw exceeded(Limit.MEMBERS, options.getMaxMembers());
+      }
+      JtonElement value;
+      switch (token) {
+      case BEGIN_ARRAY:
+        open();
+        reader.beginArray();
+        push(new JtonArray());
+        continue;
+      case BEGIN_OBJECT:
+        open();
+        reader.beginObject();
+        push(new JtonObject());
+        continue;
+      case NAME:
+        names[depth - 1] = string(reader.nextName());
+        continue;
+      case END_ARRAY:
+        reader.endArray();
+        value = pop();
+        break;
+      case END_OBJECT:
+        reader.endObject();
+        value = pop();
+        break;
+      case STRING:
+        node();
+        value = new JtonPrimitive(string(reader.nextString()));
+        break;
+      case NUMBER:
+        node();
+        String number = reader.nextString();
+        if (number.length() > options.getMaxNumberLength()) {
+          throw exceeded(Limit.NUMBER_LENGTH, options.getMaxNumberLength());
+        }
+        value = new JtonPrimitive(new LazilyParsedNumber(number));
+        break;
+      case BOOLEAN:
+        node();
+        value = new JtonPrimitive(reader.nextBoolean());
+        break;
+      case NULL:
+        node();
+        reader.nextNull();
+        value = JtonNull.INSTANCE;
+        break;
+      case END_DOCUMENT:
+      default:
+        throw new IllegalArgumentException();
+      }
+      if (depth == 0) {
+        return value;
+      }
+      JtonElement parent = stack[depth - 1];
+      if (parent instanceof JtonObject) {
+        ((JtonObject) parent).add(names[depth - 1], value);
+      } else {
+        ((JtonArray) parent).add(value);
+      }
+    }
+  }
+
+  private void node() {
+    if (++nodes > options.getMaxNodes()) {
+      throw exceeded(Limit.NODES, options.getMaxNodes());
+    }
+  }
+
+  private void open() {
+    node();
+    if (depth >= options.getMaxDepth()) {
+      throw exceeded(Limit.DEPTH, options.getMaxDepth());
+    }
+  }
+
+  private String string(String s) {
+    if (s.length() > options.getMaxStringLength()) {
+      throw exceeded(Limit.STRING_LENGTH, options.getMaxStringLength());
+    }
+    return s;
+  }
+
+  private void push(JtonElement container) {
+    if (depth == stack.length) {
+      stack = Arrays.copyOf(stack, depth * 2);
+      names = Arrays.copyOf(names, depth * 2);
+      members = Arrays.copyOf(members, depth * 2);
+    }
+    stack[depth] = container;
+    members[depth] = 0;
+    depth++;
+  }
+
+  private JtonElement pop() {
+    JtonElement container = stack[--depth];
+    stack[depth] = null;
+    names[depth] = null;
+    return container;
+  }
+
+  private JtonLimitExceededException exceeded(Limit limit, long maximum) {
+    return new JtonLimitExceededException(limit, maximum, reader.getPath());
+  }
+}
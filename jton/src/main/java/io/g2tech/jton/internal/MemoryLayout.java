@@ -0,0 +1,101 @@
+package io.g2tech.jton.internal;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Object sizes of the running HotSpot VM, used to estimate how many heap bytes
+ * a tree retains. The layout is read from the VM flags
+ * {@code UseCompressedOops}, {@code UseCompressedClassPointers} and
+ * {@code ObjectAlignmentInBytes}; on other VMs it is guessed from the maximum
+ * heap size.
+ */
+public final class MemoryLayout {
+  private static final long COMPRESSED_OOPS_LIMIT = 32L << 30;
+
+  /**
+   * The layout of the running VM.
+   */
+  public static final MemoryLayout CURRENT = detect();
+
+  private final int referenceSize;
+  private final int objectHeader;
+  private final int arrayHeader;
+  private final int alignment;
+
+  public MemoryLayout(boolean compressedOops, boolean compressedClassPointers, int alignment) {
+    this.referenceSize = compressedOops ? 4 : 8;
+    this.objectHeader = compressedClassPointers ? 12 : 16;
+    this.arrayHeader = compressedClassPointers ? 16 : 24;
+    this.alignment = alignment;
+  }
+
+  private static MemoryLayout detect() {
+    try {
+      HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+      boolean oops = Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue());
+      boolean classPointers = Boolean.parseBoolean(bean.getVMOption("UseCompressedClassPointers").getValue());
+      int alignment = Integer.parseInt(bean.getVMOption("ObjectAlignmentInBytes").getValue());
+      return new MemoryLayout(oops, classPointers, alignment);
+    } catch (RuntimeException | LinkageError e) {
+      boolean compressed = Runtime.getRuntime().maxMemory() < COMPRESSED_OOPS_LIMIT;
+      return new MemoryLayout(compressed, compressed, 8);
+    }
+  }
+
+  /**
+   * Returns the size of a reference field.
+   */
+  public int reference() {
+    return referenceSize;
+  }
+
+  /**
+   * Returns the size of an object with {@code fieldBytes} bytes of fields.
+   */
+  public long object(int fieldBytes) {
+    return align(objectHeader + fieldBytes);
+  }
+
+  /**
+   * Returns the size of an array of {@code length} elements of
+   * {@code elementSize} bytes each.
+   */
+  public long array(int elementSize, long length) {
+    return align(arrayHeader + elementSize * length);
+  }
+
+  /**
+   * Returns the size of a reference array of {@code length} elements.
+   */
+  public long referenceArray(long length) {
+    return array(referenceSize, length);
+  }
+
+  /**
+   * Returns the size of {@code s} including its backing array.
+   */
+  public long string(String s) {
+    // value, hash, coder, hashIsZero
+    return object(referenceSize + 4 + 1 + 1) + array(1, stringBytes(s));
+  }
+
+  /**
+   * Returns the length of the backing array of {@code s} with compact strings:
+   * one byte per character if all characters are Latin-1, two otherwise.
+   */
+  public static long stringBytes(String s) {
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      if (s.charAt(i) > 0xff) {
+        return 2L * length;
+      }
+    }
+    return length;
+  }
+
+  private long align(long size) {
+    return (size + alignment - 1) / alignment * alignment;
+  }
+}
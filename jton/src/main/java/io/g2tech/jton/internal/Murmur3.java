@@ -0,0 +1,172 @@
+package io.g2tech.jton.internal;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A streaming implementation of the 128-bit x64 variant of MurmurHash3. Input
+ * can be fed in pieces of any size; the result is the same as hashing the
+ * concatenated bytes at once. Characters are hashed as two little-endian bytes.
+ * Instances can be reused after {@link #reset(long)} but are not thread-safe.
+ */
+public final class Murmur3 {
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+  private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private final byte[] buffer = new byte[16];
+  private int buffered;
+  private long h1;
+  private long h2;
+  private long length;
+
+  public Murmur3(long seed) {
+    reset(seed);
+  }
+
+  /**
+   * Discards all input and starts over with {@code seed}.
+   */
+  public Murmur3 reset(long seed) {
+    h1 = seed;
+    h2 = seed;
+    length = 0;
+    buffered = 0;
+    return this;
+  }
+
+  public Murmur3 update(byte b) {
+    buffer[buffered++] = b;
+    length++;
+    if (buffered == 16) {
+      block((long) LONGS.get(buffer, 0), (long) LONGS.get(buffer, 8));
+      buffered = 0;
+    }
+    return this;
+  }
+
+  public Murmur3 update(byte[] b) {
+    return update(b, 0, b.length);
+  }
+
+  public Murmur3 update(byte[] b, int off, int len) {
+    int end = off + len;
+    while (buffered != 0 && off < end) {
+      update(b[off++]);
+    }
+    length += end - off;
+    for (; off + 16 <= end; off += 16) {
+      block((long) LONGS.get(b, off), (long) LONGS.get(b, off + 8));
+    }
+    length -= end - off;
+    while (off < end) {
+      update(b[off++]);
+    }
+    return this;
+  }
+
+  public Murmur3 update(char c) {
+    update((byte) c);
+    return update((byte) (c >>> 8));
+  }
+
+  public Murmur3 update(CharSequence s) {
+    int i = 0;
+    int n = s.length();
+    while (buffered != 0 && i < n) {
+      update(s.charAt(i++));
+    }
+    for (; i + 8 <= n; i += 8) {
+      long k1 = s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32
+          | (long) s.charAt(i + 3) << 48;
+      long k2 = s.charAt(i + 4) | (long) s.charAt(i + 5) << 16 | (long) s.charAt(i + 6) << 32
+          | (long) s.charAt(i + 7) << 48;
+      block(k1, k2);
+      length += 16;
+    }
+    while (i < n) {
+      update(s.charAt(i++));
+    }
+    return this;
+  }
+
+  public Murmur3 update(long v) {
+    for (int i = 0; i < 64; i += 8) {
+      update((byte) (v >>> i));
+    }
+    return this;
+  }
+
+  private void block(long k1, long k2) {
+    h1 ^= mixK1(k1);
+    h1 = Long.rotateLeft(h1, 27);
+    h1 += h2;
+    h1 = h1 * 5 + 0x52dce729;
+    h2 ^= mixK2(k2);
+    h2 = Long.rotateLeft(h2, 31);
+    h2 += h1;
+    h2 = h2 * 5 + 0x38495ab5;
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    return k1 * C2;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    return k2 * C1;
+  }
+
+  /**
+   * Returns the 128-bit hash of the input so far as two longs, low half first.
+   * Further input continues from the state before this call.
+   */
+  public long[] hash128() {
+    long x1 = h1;
+    long x2 = h2;
+    int tail = buffered;
+    if (tail > 0) {
+      long k1 = 0;
+      long k2 = 0;
+      for (int i = Math.min(tail, 8) - 1; i >= 0; i--) {
+        k1 = k1 << 8 | (buffer[i] & 0xff);
+      }
+      for (int i = tail - 1; i >= 8; i--) {
+        k2 = k2 << 8 | (buffer[i] & 0xff);
+      }
+      if (tail > 8) {
+        x2 ^= mixK2(k2);
+      }
+      x1 ^= mixK1(k1);
+    }
+    x1 ^= length;
+    x2 ^= length;
+    x1 += x2;
+    x2 += x1;
+    x1 = fmix(x1);
+    x2 = fmix(x2);
+    x1 += x2;
+    x2 += x1;
+    return new long[] { x1, x2 };
+  }
+
+  /**
+   * Returns the low 64 bits of {@link #hash128()}.
+   */
+  public long hash64() {
+    return hash128()[0];
+  }
+
+  private static long fmix(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+}
@@ -0,0 +1,449 @@
+package io.g2tech.jton.internal;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+/**
+ * Writes numbers without going through {@link Number#toString()}. Integers
+ * are written digit pair by digit pair, without allocating: digits are
+ * formatted in the scratch buffer of the {@link JtonOutput}.
+ * <p>
+ * Doubles and floats are written with {@link Double#toString} and
+ * {@link Float#toString} by default, so output, hashes and signatures stay the
+ * same. Setting the system property {@value #SHORTEST_PROPERTY} to
+ * {@code true} converts them with the Schubfach algorithm of Raffaello
+ * Giulietti instead, to the shortest decimal that rounds back to the same
+ * value, laid out like {@code toString} and without allocating. Since Java 19
+ * this is what {@code toString} writes too; older runtimes sometimes write a
+ * digit more than needed, such as {@code 2.0E-3} for {@code 0.002}, so on
+ * those the output differs in rare last digits while reading back the same
+ * value.
+ */
+public final class NumberWriter {
+  /**
+   * The system property that selects the shortest decimal instead of
+   * {@link Double#toString} and {@link Float#toString} for doubles and floats.
+   */
+  public static final String SHORTEST_PROPERTY = "io.g2tech.jton.shortestNumberFormat";
+
+  private static final boolean LEGACY = !Boolean.getBoolean(SHORTEST_PROPERTY);
+
+  private static final char[] DIGIT_TENS = new char[100];
+  private static final char[] DIGIT_ONES = new char[100];
+
+  private static final int K_MIN = -324;
+  private static final int K_MAX = 292;
+  private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+  private static final long MASK_63 = (1L << 63) - 1;
+  private static final long MASK_32 = (1L << 32) - 1;
+
+  private static final int DOUBLE_P = 53;
+  private static final int DOUBLE_Q_MIN = -1074;
+  private static final long DOUBLE_C_MIN = 1L << 52;
+  private static final int DOUBLE_C_TINY = 3;
+
+  private static final int FLOAT_P = 24;
+  private static final int FLOAT_Q_MIN = -149;
+  private static final int FLOAT_C_MIN = 1 << 23;
+  private static final int FLOAT_C_TINY = 8;
+
+  static {
+    for (int i = 0; i < 100; i++) {
+      DIGIT_TENS[i] = (char) ('0' + i / 10);
+      DIGIT_ONES[i] = (char) ('0' + i % 10);
+    }
+    // g = floor(beta) + 1 for 10^-k = beta 2^r with 2^125 <= beta < 2^126,
+    // split into its upper and lower 63 bits
+    BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+    for (int k = K_MIN; k <= K_MAX; k++) {
+      int e = -k;
+      int r = flog2pow10(e) - 125;
+      BigInteger beta;
+      if (e >= 0) {
+        BigInteger pow = BigInteger.TEN.pow(e);
+        beta = r >= 0 ? pow.shiftRight(r) : pow.shiftLeft(-r);
+      } else {
+        beta = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(-e));
+      }
+      BigInteger g = beta.add(BigInteger.ONE);
+      G[(k - K_MIN) << 1] = g.shiftRight(63).longValue();
+      G[(k - K_MIN) << 1 | 1] = g.and(mask).longValue();
+    }
+  }
+
+  private NumberWriter() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Writes {@code n} as {@link Number#toString()} would, without allocating for
+   * the standard integer types, doubles and floats.
+   */
+  public static void write(Number n, JtonOutput out) throws IOException {
+    if (n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+      write(n.longValue(), out);
+    } else if (n instanceof Double && !LEGACY) {
+      write(n.doubleValue(), out);
+    } else if (n instanceof Float && !LEGACY) {
+      write(n.floatValue(), out);
+    } else {
+      out.write(n.toString());
+    }
+  }
+
+  /**
+   * Writes {@code v} as {@link Long#toString(long)} would.
+   */
+  public static void write(long v, JtonOutput out) throws IOException {
+    char[] buf = out.scratch();
+    int start = integer(v, buf, buf.length);
+    out.write(buf, start, buf.length - start);
+  }
+
+  /**
+   * Writes the decimal digits of {@code v} to the end of {@code buf}, ending
+   * before {@code end}, and returns the index of the first char.
+   */
+  private static int integer(long v, char[] buf, int end) {
+    boolean negative = v < 0;
+    int i = end;
+    // work with the negative value, which also covers Long.MIN_VALUE
+    long n = negative ? v : -v;
+    while (n <= -100) {
+      long q = n / 100;
+      int r = (int) (q * 100 - n);
+      n = q;
+      buf[--i] = DIGIT_ONES[r];
+      buf[--i] = DIGIT_TENS[r];
+    }
+    int r = (int) -n;
+    buf[--i] = DIGIT_ONES[r];
+    if (r >= 10) {
+      buf[--i] = DIGIT_TENS[r];
+    }
+    if (negative) {
+      buf[--i] = '-';
+    }
+    return i;
+  }
+
+  /**
+   * Writes {@code v} as {@link Double#toString(double)} writes it, or, if
+   * {@value #SHORTEST_PROPERTY} is set, as it does on Java 19 and later: the
+   * shortest decimal that reads back as {@code v}.
+   */
+  public static void write(double v, JtonOutput out) throws IOException {
+    if (LEGACY) {
+      out.write(Double.toString(v));
+      return;
+    }
+    char[] buf = out.scratch();
+    out.write(buf, 0, format(v, buf));
+  }
+
+  /**
+   * Writes {@code v} as {@link Float#toString(float)} writes it, or, if
+   * {@value #SHORTEST_PROPERTY} is set, as it does on Java 19 and later.
+   */
+  public static void write(float v, JtonOutput out) throws IOException {
+    if (LEGACY) {
+      out.write(Float.toString(v));
+      return;
+    }
+    char[] buf = out.scratch();
+    out.write(buf, 0, format(v, buf));
+  }
+
+  /**
+   * Returns {@code v} formatted like {@link #write(double, JtonOutput)}.
+   */
+  public static String toString(double v) {
+    if (LEGACY) {
+      return Double.toString(v);
+    }
+    char[] buf = new char[JtonOutput.SCRATCH_SIZE];
+    return new String(buf, 0, format(v, buf));
+  }
+
+  /**
+   * Returns {@code v} formatted like {@link #write(float, JtonOutput)}.
+   */
+  public static String toString(float v) {
+    if (LEGACY) {
+      return Float.toString(v);
+    }
+    char[] buf = new char[JtonOutput.SCRATCH_SIZE];
+    return new String(buf, 0, format(v, buf));
+  }
+
+  private static int format(double v, char[] buf) {
+    if (v != v) {
+      return copy("NaN", buf);
+    } else if (v == Double.POSITIVE_INFINITY) {
+      return copy("Infinity", buf);
+    } else if (v == Double.NEGATIVE_INFINITY) {
+      return copy("-Infinity", buf);
+    }
+    int start = 0;
+    if (Double.doubleToRawLongBits(v) < 0) {
+      buf[start++] = '-';
+      v = -v;
+    }
+    if (v == 0) {
+      buf[start] = '0';
+      buf[start + 1] = '.';
+      buf[start + 2] = '0';
+      return start + 3;
+    }
+    int digits = shortest(v, buf, start);
+    return layout(buf, start, digits & 0xff, digits >> 8);
+  }
+
+  private static int format(float v, char[] buf) {
+    if (v != v) {
+      return copy("NaN", buf);
+    } else if (v == Float.POSITIVE_INFINITY) {
+      return copy("Infinity", buf);
+    } else if (v == Float.NEGATIVE_INFINITY) {
+      return copy("-Infinity", buf);
+    }
+    int start = 0;
+    if (Float.floatToRawIntBits(v) < 0) {
+      buf[start++] = '-';
+      v = -v;
+    }
+    if (v == 0) {
+      buf[start] = '0';
+      buf[start + 1] = '.';
+      buf[start + 2] = '0';
+      return start + 3;
+    }
+    int digits = shortest(v, buf, start);
+    return layout(buf, start, digits & 0xff, digits >> 8);
+  }
+
+  private static int copy(String s, char[] buf) {
+    s.getChars(0, s.length(), buf, 0);
+    return s.length();
+  }
+
+  /**
+   * Lays out {@code len} significant digits at {@code start} of {@code buf},
+   * with the value {@code 0.digits * 10^point}, like {@link Double#toString}:
+   * plainly from 10<sup>-3</sup> up to 10<sup>7</sup>, in computerized
+   * scientific notation otherwise. Returns the end of the text.
+   */
+  private static int layout(char[] buf, int start, int len, int point) {
+    int end = start + len;
+    if (point > 7 || point < -2) {
+      // d.ddddE[-]n
+      System.arraycopy(buf, start + 1, buf, start + 2, len - 1);
+      buf[start + 1] = '.';
+      end++;
+      if (len == 1) {
+        buf[end++] = '0';
+      }
+      buf[end++] = 'E';
+      int exponent = integer(point - 1, buf, buf.length);
+      int n = buf.length - exponent;
+      System.arraycopy(buf, exponent, buf, end, n);
+      return end + n;
+    } else if (point <= 0) {
+      // 0.000ddd
+      int shift = 2 - point;
+      System.arraycopy(buf, start, buf, start + shift, len);
+      buf[start] = '0';
+      buf[start + 1] = '.';
+      for (int i = 0; i < -point; i++) {
+        buf[start + 2 + i] = '0';
+      }
+      return end + shift;
+    } else if (point >= len) {
+      // ddd000.0
+      for (int i = end; i < start + point; i++) {
+        buf[i] = '0';
+      }
+      end = start + point;
+      buf[end] = '.';
+      buf[end + 1] = '0';
+      return end + 2;
+    }
+    // ddd.ddd
+    System.arraycopy(buf, start + point, buf, start + point + 1, len - point);
+    buf[start + point] = '.';
+    return end + 1;
+  }
+
+  /**
+   * Writes the shortest significant digits of the positive finite {@code v} to
+   * {@code buf} at {@code start}, without trailing zeros. Returns their number
+   * in the low 8 bits and, above them, the exponent {@code point} such that
+   * {@code v = 0.digits * 10^point}.
+   */
+  static int shortest(double v, char[] buf, int start) {
+    long bits = Double.doubleToRawLongBits(v);
+    long t = bits & (DOUBLE_C_MIN - 1);
+    int bq = (int) (bits >>> 52);
+    if (bq != 0) {
+      int mq = -DOUBLE_Q_MIN + 1 - bq;
+      long c = DOUBLE_C_MIN | t;
+      if (0 < mq & mq < DOUBLE_P) {
+        long f = c >> mq;
+        if (f << mq == c) {
+          return digits(f, 0, buf, start);
+        }
+      }
+      return toDecimal(-mq, c, 0, buf, start);
+    }
+    return t < DOUBLE_C_TINY ? toDecimal(DOUBLE_Q_MIN, 10 * t, -1, buf, start)
+        : toDecimal(DOUBLE_Q_MIN, t, 0, buf, start);
+  }
+
+  private static int toDecimal(int q, long c, int dk, char[] buf, int start) {
+    int out = (int) c & 1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != DOUBLE_C_MIN | q == DOUBLE_Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 2;
+    long g1 = G[(k - K_MIN) << 1];
+    long g0 = G[(k - K_MIN) << 1 | 1];
+    long vb = rop(g1, g0, cb << h);
+    long vbl = rop(g1, g0, cbl << h);
+    long vbr = rop(g1, g0, cbr << h);
+
+    long s = vb >> 2;
+    if (s >= 100) {
+      long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        return digits(upin ? sp10 : tp10, k, buf, start);
+      }
+    }
+    long t = s + 1;
+    boolean uin = vbl + out <= s << 2;
+    boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      return digits(uin ? s : t, k + dk, buf, start);
+    }
+    long cmp = vb - (s + t << 1);
+    return digits(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buf, start);
+  }
+
+  private static long rop(long g1, long g0, long cp) {
+    long x1 = Math.multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = Math.multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | (z & MASK_63) + MASK_63 >>> 63;
+  }
+
+  /**
+   * The float variant of {@link #shortest(double, char[], int)}.
+   */
+  static int shortest(float v, char[] buf, int start) {
+    int bits = Float.floatToRawIntBits(v);
+    int t = bits & (FLOAT_C_MIN - 1);
+    int bq = bits >>> 23;
+    if (bq != 0) {
+      int mq = -FLOAT_Q_MIN + 1 - bq;
+      int c = FLOAT_C_MIN | t;
+      if (0 < mq & mq < FLOAT_P) {
+        int f = c >> mq;
+        if (f << mq == c) {
+          return digits(f, 0, buf, start);
+        }
+      }
+      return toDecimal(-mq, c, 0, buf, start);
+    }
+    return t < FLOAT_C_TINY ? toDecimal(FLOAT_Q_MIN, 10 * t, -1, buf, start)
+        : toDecimal(FLOAT_Q_MIN, t, 0, buf, start);
+  }
+
+  private static int toDecimal(int q, int c, int dk, char[] buf, int start) {
+    int out = c & 1;
+    long cb = (long) c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != FLOAT_C_MIN | q == FLOAT_Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 33;
+    long g = G[(k - K_MIN) << 1] + 1;
+    int vb = rop(g, cb << h);
+    int vbl = rop(g, cbl << h);
+    int vbr = rop(g, cbr << h);
+
+    int s = vb >> 2;
+    if (s >= 100) {
+      int sp10 = 10 * (int) (s * 1_717_986_919L >>> 34);
+      int tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        return digits(upin ? sp10 : tp10, k, buf, start);
+      }
+    }
+    int t = s + 1;
+    boolean uin = vbl + out <= s << 2;
+    boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      return digits(uin ? s : t, k + dk, buf, start);
+    }
+    int cmp = vb - (s + t << 1);
+    return digits(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buf, start);
+  }
+
+  private static int rop(long g, long cp) {
+    long x1 = Math.multiplyHigh(g, cp);
+    long vbp = x1 >>> 31;
+    return (int) (vbp | (x1 & MASK_32) + MASK_32 >>> 32);
+  }
+
+  /**
+   * Writes the digits of {@code f * 10^e} without trailing zeros, see
+   * {@link #shortest(double, char[], int)}.
+   */
+  private static int digits(long f, int e, char[] buf, int start) {
+    while (f % 10 == 0) {
+      f /= 10;
+      e++;
+    }
+    int len = 1;
+    for (long p = 10; len < 19 && p <= f; p *= 10) {
+      len++;
+    }
+    integer(f, buf, start + len);
+    return len | (e + len) << 8;
+  }
+
+  // floor(q log10(2)), floor(q log10(3/4 2)) and floor(e log2(10)), see Giulietti
+
+  private static int flog10pow2(int q) {
+    return (int) (q * 661_971_961_083L >> 41);
+  }
+
+  private static int flog10threeQuartersPow2(int q) {
+    return (int) (q * 661_971_961_083L + -274_743_187_321L >> 41);
+  }
+
+  private static int flog2pow10(int e) {
+    return (int) (e * 913_124_641_741L >> 38);
+  }
+}
@@ -0,0 +1,122 @@
+package io.g2tech.jton.internal;
+
+import java.util.Arrays;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * First stage of the indexed parser. Scans UTF-8 input 64 bytes at a time and
+ * records the offset of every structural character outside of strings, of every
+ * opening quote and of the first byte of every number or literal. The second
+ * stage, {@link StructuralParser}, builds the tree from these offsets without
+ * looking at whitespace or string contents again.
+ * <p>
+ * Escaped quotes and the inside of strings are found with carry-less bit
+ * arithmetic on the block masks, so the scan has no data dependent branches
+ * per byte. Instances can be reused but are not thread-safe.
+ */
+public final class StructuralIndexer {
+  private static final BlockClassifier CLASSIFIER = BlockClassifiers.select();
+
+  private static final long ODD_BITS = 0xaaaaaaaaaaaaaaaaL;
+
+  private final long[] masks = new long[4];
+  private final byte[] tail = new byte[64];
+  private int[] positions = new int[64];
+  private int count;
+
+  /**
+   * Indexes {@code len} bytes of {@code buf} starting at {@code off}.
+   *
+   * @throws JsonSyntaxException if the input ends inside a string.
+   */
+  public void index(byte[] buf, int off, int len) {
+    count = 0;
+    long prevInString = 0;
+    long prevEscaped = 0;
+    long prevScalar = 0;
+    int end = off + len;
+    for (int base = off; base < end; base += 64) {
+      int n = end - base;
+      if (n >= 64) {
+        CLASSIFIER.classify(buf, base, masks);
+      } else {
+        Arrays.fill(tail, (byte) ' ');
+        System.arraycopy(buf, base, tail, 0, n);
+        CLASSIFIER.classify(tail, 0, masks);
+      }
+      long whitespace = masks[BlockClassifier.WHITESPACE];
+      long operator = masks[BlockClassifier.OPERATOR];
+      long backslash = masks[BlockClassifier.BACKSLASH];
+
+      // a character is escaped if it follows an odd-length run of backslashes
+      long escaped;
+      if (backslash == 0) {
+        escaped = prevEscaped;
+        prevEscaped = 0;
+      } else {
+        long potential = backslash & ~prevEscaped;
+        long code = (((potential << 1) | ODD_BITS) - potential) ^ ODD_BITS;
+        escaped = code ^ (backslash | prevEscaped);
+        prevEscaped = (code & backslash) >>> 63;
+      }
+
+      long quote = masks[BlockClassifier.QUOTE] & ~escaped;
+      long inString = prefixXor(quote) ^ prevInString;
+      prevInString = inString >> 63;
+      long stringTail = inString ^ quote;
+
+      long scalar = ~(operator | whitespace);
+      long nonQuoteScalar = scalar & ~quote;
+      long followsNonQuoteScalar = nonQuoteScalar << 1 | prevScalar;
+      prevScalar = nonQuoteScalar >>> 63;
+
+      long starts = (operator | (scalar & ~followsNonQuoteScalar)) & ~stringTail;
+      emit(base, starts);
+    }
+    if (prevInString != 0) {
+      throw new JsonSyntaxException("Unterminated string");
+    }
+  }
+
+  /**
+   * Returns the number of offsets found by the last call to
+   * {@link #index(byte[], int, int)}.
+   */
+  public int count() {
+    return count;
+  }
+
+  /**
+   * Returns the offsets found by the last call to
+   * {@link #index(byte[], int, int)}. Only the first {@link #count()} entries
+   * are valid.
+   */
+  public int[] positions() {
+    return positions;
+  }
+
+  private void emit(int base, long bits) {
+    int n = Long.bitCount(bits);
+    if (count + n > positions.length) {
+      positions = Arrays.copyOf(positions, Math.max(positions.length * 2, count + n));
+    }
+    int[] p = positions;
+    int c = count;
+    while (bits != 0) {
+      p[c++] = base + Long.numberOfTrailingZeros(bits);
+      bits &= bits - 1;
+    }
+    count = c;
+  }
+
+  private static long prefixXor(long x) {
+    x ^= x << 1;
+    x ^= x << 2;
+    x ^= x << 4;
+    x ^= x << 8;
+    x ^= x << 16;
+    x ^= x << 32;
+    return x;
+  }
+}
@@ -0,0 +1,569 @@
+package io.g2tech.jton.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+
+import io.g2tech.jton.JtonArray;
+import io.g2tech.jton.JtonElement;
+import io.g2tech.jton.JtonNull;
+import io.g2tech.jton.JtonObject;
+import io.g2tech.jton.JtonPrimitive;
+import io.g2tech.jton.JtonVisitor;
+
+/**
+ * Second stage of the indexed parser. Walks the offsets produced by a
+ * {@link StructuralIndexer} and builds the parse tree. Containers are tracked on
+ * an explicit stack, so deeply nested input cannot overflow the thread stack.
+ * <p>
+ * The parser is strict: comments, unquoted strings and the other extensions
+ * accepted by the lenient Gson reader are rejected. Instances can be reused but
+ * are not thread-safe.
+ */
+public final class StructuralParser {
+  private static final int VALUE = 0;
+  private static final int FIRST_VALUE = 1;
+  private static final int FIRST_NAME = 2;
+  private static final int NAME = 3;
+  private static final int COLON = 4;
+  private static final int AFTER_VALUE = 5;
+  private static final int DONE = 6;
+
+  private final StructuralIndexer indexer = new StructuralIndexer();
+  private final StringBuilder text = new StringBuilder();
+  private final AsciiView view = new AsciiView();
+
+  private JtonElement[] stack = new JtonElement[32];
+  private String[] names = new String[32];
+  private int depth;
+
+  private byte[] buf;
+  private int end;
+
+  /**
+   * Parses {@code len} bytes of UTF-8 encoded JSON starting at {@code off}. A
+   * leading byte order mark is skipped and empty input yields
+   * {@link JtonNull#INSTANCE}.
+   *
+   * @throws JsonSyntaxException if the input is not a single valid JSON value.
+   */
+  public JtonElement parse(byte[] buf, int off, int len) {
+    if (len >= 3 && buf[off] == (byte) 0xef && buf[off + 1] == (byte) 0xbb && buf[off + 2] == (byte) 0xbf) {
+      off += 3;
+      len -= 3;
+    }
+    this.buf = buf;
+    this.end = off + len;
+    this.depth = 0;
+    try {
+      indexer.index(buf, off, len);
+      return build(indexer.positions(), indexer.count());
+    } finally {
+      Arrays.fill(stack, 0, depth, null);
+      Arrays.fill(names, 0, depth, null);
+      this.buf = null;
+    }
+  }
+
+  /**
+   * Parses {@code len} bytes of UTF-8 encoded JSON starting at {@code off} and
+   * reports its structure to {@code visitor} without building a tree. Keys and
+   * strings are passed as views over the input or over a reused buffer.
+   *
+   * @throws JsonSyntaxException if the input is not a single valid JSON value.
+   */
+  public void parse(byte[] buf, int off, int len, JtonVisitor visitor) {
+    if (len >= 3 && buf[off] == (byte) 0xef && buf[off + 1] == (byte) 0xbb && buf[off + 2] == (byte) 0xbf) {
+      off += 3;
+      len -= 3;
+    }
+    this.buf = buf;
+    this.end = off + len;
+    try {
+      indexer.index(buf, off, len);
+      visit(indexer.positions(), indexer.count(), visitor);
+    } finally {
+      view.buf = null;
+      this.buf = null;
+    }
+  }
+
+  private void visit(int[] positions, int count, JtonVisitor visitor) {
+    if (count == 0) {
+      visitor.nullValue();
+      return;
+    }
+    boolean[] objects = new boolean[32];
+    int depth = 0;
+    int state = VALUE;
+    for (int k = 0; k < count; k++) {
+      int p = positions[k];
+      int c = buf[p];
+      switch (state) {
+      case FIRST_VALUE:
+        if (c == ']') {
+          visitor.endArray();
+          depth--;
+          break;
+        }
+        // fall through
+      case VALUE:
+        if (c == '{' || c == '[') {
+          if (depth == objects.length) {
+            objects = Arrays.copyOf(objects, depth * 2);
+          }
+          objects[depth++] = c == '{';
+          if (c == '{') {
+            visitor.startObject();
+            state = FIRST_NAME;
+          } else {
+            visitor.startArray();
+            state = FIRST_VALUE;
+          }
+          continue;
+        }
+        scalar(p, c, visitor);
+        break;
+      case FIRST_NAME:
+        if (c == '}') {
+          visitor.endObject();
+          depth--;
+          break;
+        }
+        // fall through
+      case NAME:
+        if (c != '"') {
+          throw unexpected(p);
+        }
+        visitor.key(chars(p));
+        state = COLON;
+        continue;
+      case COLON:
+        if (c != ':') {
+          throw unexpected(p);
+        }
+        state = VALUE;
+        continue;
+      case AFTER_VALUE:
+        boolean inObject = objects[depth - 1];
+        if (c == ',') {
+          state = inObject ? NAME : VALUE;
+          continue;
+        } else if (c == (inObject ? '}' : ']')) {
+          if (inObject) {
+            visitor.endObject();
+          } else {
+            visitor.endArray();
+          }
+          depth--;
+          break;
+        }
+        throw unexpected(p);
+      default:
+        throw new JsonSyntaxException("Did not consume the entire document.");
+      }
+      state = depth == 0 ? DONE : AFTER_VALUE;
+    }
+    if (state != DONE) {
+      throw new JsonSyntaxException("Unexpected end of input");
+    }
+  }
+
+  private void scalar(int p, int c, JtonVisitor visitor) {
+    switch (c) {
+    case '"':
+      visitor.value(chars(p));
+      break;
+    case 't':
+      literal(p, "true");
+      visitor.value(true);
+      break;
+    case 'f':
+      literal(p, "false");
+      visitor.value(false);
+      break;
+    case 'n':
+      literal(p, "null");
+      visitor.nullValue();
+      break;
+    default:
+      int e = numberEnd(p);
+      int digits = e - p - (buf[p] == '-' ? 1 : 0);
+      long value = 0;
+      if (digits <= 18 && isIntegral(p, e)) {
+        for (int i = e - digits; i < e; i++) {
+          value = value * 10 + (buf[i] - '0');
+        }
+      }
+      if (value != 0 || digits == 1 && buf[e - 1] == '0' && buf[p] != '-') {
+        visitor.value(buf[p] == '-' ? -value : value);
+      } else {
+        visitor.number(new String(buf, p, e - p, StandardCharsets.ISO_8859_1));
+      }
+    }
+  }
+
+  private boolean isIntegral(int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (buf[i] == '.' || buf[i] == 'e' || buf[i] == 'E') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the string starting at {@code p} as a view over the input if it is
+   * plain ASCII, and unescaped into the reused text buffer otherwise.
+   */
+  private CharSequence chars(int p) {
+    int start = p + 1;
+    for (int i = start; i < end; i++) {
+      int c = buf[i];
+      if (c == '"') {
+        view.buf = buf;
+        view.offset = start;
+        view.length = i - start;
+        return view;
+      } else if (c == '\\' || c < 0) {
+        return unescape(start, i);
+      } else if (c < 0x20) {
+        throw unexpected(i);
+      }
+    }
+    throw new JsonSyntaxException("Unterminated string at offset " + p);
+  }
+
+  private JtonElement build(int[] positions, int count) {
+    if (count == 0) {
+      return JtonNull.INSTANCE;
+    }
+    JtonElement root = null;
+    int state = VALUE;
+    for (int k = 0; k < count; k++) {
+      int p = positions[k];
+      int c = buf[p];
+      JtonElement value;
+      switch (state) {
+      case FIRST_VALUE:
+        if (c == ']') {
+          value = stack[--depth];
+          break;
+        }
+        // fall through
+      case VALUE:
+        if (c == '{') {
+          push(new JtonObject());
+          state = FIRST_NAME;
+          continue;
+        } else if (c == '[') {
+          push(new JtonArray());
+          state = FIRST_VALUE;
+          continue;
+        }
+        value = scalar(p, c);
+        break;
+      case FIRST_NAME:
+        if (c == '}') {
+          value = stack[--depth];
+          break;
+        }
+        // fall through
+      case NAME:
+        if (c != '"') {
+          throw unexpected(p);
+        }
+        names[depth - 1] = string(p);
+        state = COLON;
+        continue;
+      case COLON:
+        if (c != ':') {
+          throw unexpected(p);
+        }
+        state = VALUE;
+        continue;
+      case AFTER_VALUE:
+        boolean inObject = stack[depth - 1] instanceof JtonObject;
+        if (c == ',') {
+          state = inObject ? NAME : VALUE;
+          continue;
+        } else if (c == (inObject ? '}' : ']')) {
+          value = stack[--depth];
+          break;
+        }
+        throw unexpected(p);
+      default:
+        throw new JsonSyntaxException("Did not consume the entire document.");
+      }
+
+      stack[depth] = null;
+      if (depth == 0) {
+        root = value;
+        state = DONE;
+      } else {
+        JtonElement parent = stack[depth - 1];
+        if (parent instanceof JtonObject) {
+          ((JtonObject) parent).add(names[depth - 1], value);
+        } else {
+          ((JtonArray) parent).add(value);
+        }
+        state = AFTER_VALUE;
+      }
+    }
+    if (state != DONE) {
+      throw new JsonSyntaxException("Unexpected end of input");
+    }
+    return root;
+  }
+
+  private JtonElement scalar(int p, int c) {
+    switch (c) {
+    case '"':
+      return new JtonPrimitive(string(p));
+    case 't':
+      literal(p, "true");
+      return new JtonPrimitive(Boolean.TRUE);
+    case 'f':
+      literal(p, "false");
+      return new JtonPrimitive(Boolean.FALSE);
+    case 'n':
+      literal(p, "null");
+      return JtonNull.INSTANCE;
+    default:
+      return new JtonPrimitive(new LazilyParsedNumber(number(p)));
+    }
+  }
+
+  private void push(JtonElement container) {
+    if (depth == stack.length) {
+      stack = Arrays.copyOf(stack, depth * 2);
+      names = Arrays.copyOf(names, depth * 2);
+    }
+    stack[depth++] = container;
+  }
+
+  private String string(int p) {
+    int start = p + 1;
+    boolean ascii = true;
+    for (int i = start; i < end; i++) {
+      int c = buf[i];
+      if (c == '"') {
+        return ascii ? new String(buf, start, i - start, StandardCharsets.ISO_8859_1) : decode(start, i);
+      } else if (c == '\\') {
+        return unescape(start, i).toString();
+      } else if (c < 0) {
+        ascii = false;
+      } else if (c < 0x20) {
+        throw unexpected(i);
+      }
+    }
+    throw new JsonSyntaxException("Unterminated string at offset " + p);
+  }
+
+  private StringBuilder unescape(int start, int i) {
+    StringBuilder sb = text;
+    sb.setLength(0);
+    int run = start;
+    while (i < end) {
+      int c = buf[i];
+      if (c == '"') {
+        sb.append(decode(run, i));
+        return sb;
+      } else if (c == '\\') {
+        sb.append(decode(run, i));
+        if (++i == end) {
+          break;
+        }
+        switch (buf[i]) {
+        case '"':
+        case '\\':
+        case '/':
+          sb.append((char) buf[i]);
+          break;
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (i + 4 >= end) {
+            throw new JsonSyntaxException("Unterminated escape sequence at offset " + i);
+          }
+          int u = 0;
+          for (int j = 1; j <= 4; j++) {
+            int digit = Character.digit(buf[i + j], 16);
+            if (digit < 0) {
+              throw unexpected(i + j);
+            }
+            u = u << 4 | digit;
+          }
+          sb.append((char) u);
+          i += 4;
+          break;
+        default:
+          throw unexpected(i);
+        }
+        run = ++i;
+      } else if (c >= 0 && c < 0x20) {
+        throw unexpected(i);
+      } else {
+        i++;
+      }
+    }
+    throw new JsonSyntaxException("Unterminated string at offset " + start);
+  }
+
+  /**
+   * Decodes the UTF-8 bytes from {@code from} to {@code to}, rejecting
+   * malformed sequences as the push parser does rather than replacing them.
+   */
+  private String decode(int from, int to) {
+    for (int i = from; i < to; i++) {
+      int c = buf[i] & 0xff;
+      if (c < 0x80) {
+        continue;
+      }
+      int remaining;
+      int min;
+      int codePoint;
+      if ((c & 0xe0) == 0xc0) {
+        remaining = 1;
+        min = 0x80;
+        codePoint = c & 0x1f;
+      } else if ((c & 0xf0) == 0xe0) {
+        remaining = 2;
+        min = 0x800;
+        codePoint = c & 0x0f;
+      } else if ((c & 0xf8) == 0xf0) {
+        remaining = 3;
+        min = 0x10000;
+        codePoint = c & 0x07;
+      } else {
+        throw malformed(i);
+      }
+      int first = i;
+      while (remaining-- > 0) {
+        if (++i == to || (buf[i] & 0xc0) != 0x80) {
+          throw malformed(first);
+        }
+        codePoint = codePoint << 6 | (buf[i] & 0x3f);
+      }
+      if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+          || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+        throw malformed(first);
+      }
+    }
+    return new String(buf, from, to - from, StandardCharsets.UTF_8);
+  }
+
+  private void literal(int p, String expected) {
+    int n = expected.length();
+    if (p + n > end) {
+      throw unexpected(p);
+    }
+    for (int i = 1; i < n; i++) {
+      if (buf[p + i] != expected.charAt(i)) {
+        throw unexpected(p + i);
+      }
+    }
+    checkDelimited(p + n);
+  }
+
+  private String number(int p) {
+    int i = numberEnd(p);
+    return new String(buf, p, i - p, StandardCharsets.ISO_8859_1);
+  }
+
+  private int numberEnd(int p) {
+    int i = p;
+    if (i < end && buf[i] == '-') {
+      i++;
+    }
+    if (i < end && buf[i] == '0') {
+      i++;
+    } else {
+      i = digits(i, p);
+    }
+    if (i < end && buf[i] == '.') {
+      i = digits(i + 1, p);
+    }
+    if (i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+      i++;
+      if (i < end && (buf[i] == '+' || buf[i] == '-')) {
+        i++;
+      }
+      i = digits(i, p);
+    }
+    checkDelimited(i);
+    return i;
+  }
+
+  private int digits(int i, int p) {
+    int start = i;
+    while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+      i++;
+    }
+    if (i == start) {
+      throw unexpected(i < end ? i : p);
+    }
+    return i;
+  }
+
+  private void checkDelimited(int i) {
+    if (i < end && !BlockClassifier.isDelimiter(buf[i])) {
+      throw unexpected(i);
+    }
+  }
+
+  private static JsonSyntaxException malformed(int p) {
+    return new JsonSyntaxException("Malformed UTF-8 input at offset " + p);
+  }
+
+  private JsonSyntaxException unexpected(int p) {
+    return new JsonSyntaxException(String.format("Unexpected byte 0x%02x at offset %d", buf[p] & 0xff, p));
+  }
+
+  /**
+   * A view of ASCII bytes as characters.
+   */
+  private static final class AsciiView implements CharSequence {
+    byte[] buf;
+    int offset;
+    int length;
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length) {
+        throw new IndexOutOfBoundsException();
+      }
+      return (char) buf[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+      return new String(buf, offset, length, StandardCharsets.ISO_8859_1);
+    }
+  }
+}
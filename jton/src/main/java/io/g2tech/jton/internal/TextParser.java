@@ -0,0 +1,330 @@
+package io.g2tech.jton.internal;
+
+import java.util.Arrays;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+
+import io.g2tech.jton.JtonArray;
+import io.g2tech.jton.JtonElement;
+import io.g2tech.jton.JtonNull;
+import io.g2tech.jton.JtonObject;
+import io.g2tech.jton.JtonPrimitive;
+
+/**
+ * A strict parser for JSON text held in a char array, meant for small
+ * documents where setting up a Gson reader costs more than parsing. Containers
+ * are tracked on an explicit stack that is kept between documents, so a reused
+ * instance allocates only the parse tree.
+ * <p>
+ * Documents it accepts yield the same tree as the lenient Gson based parser.
+ * Anything else, including the lenient extensions, is rejected with a
+ * {@link JsonSyntaxException}, so callers can fall back to that parser.
+ * Instances can be reused but are not thread-safe.
+ */
+public final class TextParser {
+  private final StringBuilder text = new StringBuilder();
+  private JtonElement[] stack = new JtonElement[32];
+  private String[] names = new String[32];
+  private int depth;
+
+  private char[] buf;
+  private int pos;
+  private int end;
+
+  /**
+   * Parses the {@code length} chars of {@code buf} starting at {@code offset}.
+   * Empty input yields {@link JtonNull#INSTANCE}.
+   *
+   * @throws JsonSyntaxException if the input is not a single strictly valid
+   *                             JSON value.
+   */
+  public JtonElement parse(char[] buf, int offset, int length) {
+    this.buf = buf;
+    this.pos = offset;
+    this.end = offset + length;
+    this.depth = 0;
+    try {
+      if (skip() < 0) {
+        return JtonNull.INSTANCE;
+      }
+      JtonElement root = document();
+      if (skip() >= 0) {
+        throw new JsonSyntaxException("Did not consume the entire document.");
+      }
+      return root;
+    } finally {
+      Arrays.fill(stack, 0, depth, null);
+      Arrays.fill(names, 0, depth, null);
+      this.buf = null;
+    }
+  }
+
+  private JtonElement document() {
+    for (;;) {
+      int c = skip();
+      JtonElement value;
+      if (c == '{') {
+        pos++;
+        JtonObject object = new JtonObject();
+        if (skip() != '}') {
+          push(object);
+          names[depth - 1] = name();
+          continue;
+        }
+        pos++;
+        value = object;
+      } else if (c == '[') {
+        pos++;
+        JtonArray array = new JtonArray();
+        if (skip() != ']') {
+          push(array);
+          continue;
+        }
+        pos++;
+        value = array;
+      } else {
+        value = scalar(c);
+      }
+
+      // add the value to its parent, closing all containers that end here
+      for (;;) {
+        if (depth == 0) {
+          return value;
+        }
+        JtonElement parent = stack[depth - 1];
+        boolean inObject = parent instanceof JtonObject;
+        if (inObject) {
+          ((JtonObject) parent).add(names[depth - 1], value);
+        } else {
+          ((JtonArray) parent).add(value);
+        }
+        c = skip();
+        if (c == ',') {
+          pos++;
+          if (inObject) {
+            names[depth - 1] = name();
+          }
+          break;
+        } else if (c == (inObject ? '}' : ']')) {
+          pos++;
+          value = parent;
+          stack[--depth] = null;
+          names[depth] = null;
+        } else {
+          throw unexpected();
+        }
+      }
+    }
+  }
+
+  private void push(JtonElement container) {
+    if (depth == stack.length) {
+      stack = Arrays.copyOf(stack, depth * 2);
+      names = Arrays.copyOf(names, depth * 2);
+    }
+    stack[depth++] = container;
+  }
+
+  /**
+   * Reads a member name and the colon after it.
+   */
+  private String name() {
+    if (skip() != '"') {
+      throw unexpected();
+    }
+    String name = string();
+    if (skip() != ':') {
+      throw unexpected();
+    }
+    pos++;
+    return name;
+  }
+
+  private JtonElement scalar(int c) {
+    switch (c) {
+    case '"':
+      return new JtonPrimitive(string());
+    case 't':
+      literal("true");
+      return new JtonPrimitive(Boolean.TRUE);
+    case 'f':
+      literal("false");
+      return new JtonPrimitive(Boolean.FALSE);
+    case 'n':
+      literal("null");
+      return JtonNull.INSTANCE;
+    default:
+      if (c == '-' || (c >= '0' && c <= '9')) {
+        return new JtonPrimitive(new LazilyParsedNumber(number()));
+      }
+      throw unexpected();
+    }
+  }
+
+  private void literal(String literal) {
+    int n = literal.length();
+    if (end - pos < n) {
+      throw unexpected();
+    }
+    for (int i = 1; i < n; i++) {
+      if (buf[pos + i] != literal.charAt(i)) {
+        throw unexpected();
+      }
+    }
+    pos += n;
+    delimiter();
+  }
+
+  private String number() {
+    int start = pos;
+    if (buf[pos] == '-') {
+      pos++;
+    }
+    if (pos < end && buf[pos] == '0') {
+      pos++;
+    } else if (digits() == 0) {
+      throw unexpected();
+    }
+    if (pos < end && buf[pos] == '.') {
+      pos++;
+      if (digits() == 0) {
+        throw unexpected();
+      }
+    }
+    if (pos < end && (buf[pos] == 'e' || buf[pos] == 'E')) {
+      pos++;
+      if (pos < end && (buf[pos] == '+' || buf[pos] == '-')) {
+        pos++;
+      }
+      if (digits() == 0) {
+        throw unexpected();
+      }
+    }
+    delimiter();
+    return new String(buf, start, pos - start);
+  }
+
+  private int digits() {
+    int start = pos;
+    while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+      pos++;
+    }
+    return pos - start;
+  }
+
+  /**
+   * Checks that a number or literal is not followed by more unquoted text,
+   * which the lenient parser would read as a string.
+   */
+  private void delimiter() {
+    if (pos < end) {
+      char c = buf[pos];
+      if (c != ',' && c != ']' && c != '}' && c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+        throw unexpected();
+      }
+    }
+  }
+
+  /**
+   * Reads the string starting with the quote at {@link #pos}.
+   */
+  private String string() {
+    int start = ++pos;
+    char[] b = buf;
+    for (int i = start; i < end; i++) {
+      char c = b[i];
+      if (c == '"') {
+        pos = i + 1;
+        return new String(b, start, i - start);
+      } else if (c == '\\') {
+        return escaped(start, i);
+      }
+    }
+    throw new JsonSyntaxException("Unterminated string");
+  }
+
+  private String escaped(int start, int backslash) {
+    StringBuilder sb = text;
+    sb.setLength(0);
+    sb.append(buf, start, backslash - start);
+    int i = backslash;
+    while (i < end) {
+      char c = buf[i++];
+      if (c == '"') {
+        pos = i;
+        return sb.toString();
+      } else if (c != '\\') {
+        sb.append(c);
+        continue;
+      } else if (i == end) {
+        break;
+      }
+      char e = buf[i++];
+      switch (e) {
+      case '"':
+      case '\\':
+      case '/':
+        sb.append(e);
+        break;
+      case 'b':
+        sb.append('\b');
+        break;
+      case 'f':
+        sb.append('\f');
+        break;
+      case 'n':
+        sb.append('\n');
+        break;
+      case 'r':
+        sb.append('\r');
+        break;
+      case 't':
+        sb.append('\t');
+        break;
+      case 'u':
+        if (end - i < 4) {
+          throw new JsonSyntaxException("Unterminated escape sequence");
+        }
+        int u = 0;
+        for (int k = 0; k < 4; k++) {
+          char h = buf[i++];
+          int d = h >= '0' && h <= '9' ? h - '0' : h >= 'a' && h <= 'f' ? h - 'a' + 10 : h >= 'A' && h <= 'F' ? h - 'A' + 10 : -1;
+          if (d < 0) {
+            throw new JsonSyntaxException("Malformed unicode escape");
+          }
+          u = u << 4 | d;
+        }
+        sb.append((char) u);
+        break;
+      default:
+        throw new JsonSyntaxException("Invalid escape sequence");
+      }
+    }
+    throw new JsonSyntaxException("Unterminated string");
+  }
+
+  /**
+   * Skips whitespace and returns the next char without consuming it, or -1 at
+   * the end of the input.
+   */
+  private int skip() {
+    char[] b = buf;
+    int p = pos;
+    while (p < end) {
+      char c = b[p];
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+        pos = p;
+        return c;
+      }
+      p++;
+    }
+    pos = p;
+    return -1;
+  }
+
+  private JsonSyntaxException unexpected() {
+    return pos < end ? new JsonSyntaxException("Unexpected character '" + buf[pos] + "' at offset " + pos)
+        : new JsonSyntaxException("Unexpected end of input");
+  }
+}
@@ -0,0 +1,170 @@
+package io.g2tech.jton.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Decodes UTF-8 from a byte array or an input stream. Runs of ASCII are copied
+ * by a plain loop without going through a {@code CharsetDecoder}; other
+ * sequences are decoded by hand. Malformed input is replaced by U+FFFD per
+ * maximal subpart, like the JDK decoder does.
+ * <p>
+ * Closing the reader does not close the stream.
+ */
+public final class Utf8Reader extends Reader {
+  private static final char REPLACEMENT = '\ufffd';
+
+  private final InputStream in;
+  private final byte[] buf;
+  private int pos;
+  private int limit;
+  private boolean eof;
+  private char pendingLow;
+
+  /**
+   * Creates a reader decoding {@code len} bytes of {@code buf} starting at
+   * {@code off}.
+   */
+  public Utf8Reader(byte[] buf, int off, int len) {
+    this.in = null;
+    this.buf = buf;
+    this.pos = off;
+    this.limit = off + len;
+    this.eof = true;
+  }
+
+  /**
+   * Creates a reader decoding {@code in}, using {@code buf} as its buffer. The
+   * first {@code limit - pos} bytes to decode are already in {@code buf}.
+   */
+  public Utf8Reader(InputStream in, byte[] buf, int pos, int limit) {
+    if (buf.length < 4) {
+      throw new IllegalArgumentException("buffer too small");
+    }
+    this.in = in;
+    this.buf = buf;
+    this.pos = pos;
+    this.limit = limit;
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    int n = off;
+    int end = off + len;
+    if (pendingLow != 0) {
+      cbuf[n++] = pendingLow;
+      pendingLow = 0;
+    }
+    byte[] b = buf;
+    while (n < end) {
+      if (pos == limit && (n > off || !fill())) {
+        break;
+      }
+      int p = pos;
+      int stop = Math.min(limit, p + (end - n));
+      while (p < stop && b[p] >= 0) {
+        cbuf[n++] = (char) b[p++];
+      }
+      pos = p;
+      if (n == end || p == limit) {
+        continue;
+      }
+      int lead = b[p] & 0xff;
+      int length = lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : 2;
+      if (limit - p < length && !eof && n > off) {
+        break;
+      }
+      while (limit - pos < length && !eof) {
+        fill();
+      }
+      int cp = decode();
+      if (cp < 0x10000) {
+        cbuf[n++] = (char) cp;
+      } else {
+        cbuf[n++] = Character.highSurrogate(cp);
+        if (n < end) {
+          cbuf[n++] = Character.lowSurrogate(cp);
+        } else {
+          pendingLow = Character.lowSurrogate(cp);
+        }
+      }
+    }
+    return n == off ? -1 : n - off;
+  }
+
+  /**
+   * Decodes the non-ASCII sequence at {@code pos}, which may be truncated only
+   * at the end of input.
+   */
+  private int decode() {
+    byte[] b = buf;
+    int lead = b[pos++] & 0xff;
+    int min;
+    int max;
+    int cp;
+    int continuation;
+    if (lead >= 0xc2 && lead <= 0xdf) {
+      cp = lead & 0x1f;
+      continuation = 1;
+      min = 0x80;
+      max = 0xbf;
+    } else if (lead >= 0xe0 && lead <= 0xef) {
+      cp = lead & 0x0f;
+      continuation = 2;
+      min = lead == 0xe0 ? 0xa0 : 0x80;
+      // like the JDK decoder, surrogates are one malformed sequence
+      max = 0xbf;
+    } else if (lead >= 0xf0 && lead <= 0xf4) {
+      cp = lead & 0x07;
+      continuation = 3;
+      min = lead == 0xf0 ? 0x90 : 0x80;
+      max = lead == 0xf4 ? 0x8f : 0xbf;
+    } else {
+      return REPLACEMENT;
+    }
+    for (int i = 0; i < continuation; i++) {
+      if (pos == limit) {
+        return REPLACEMENT;
+      }
+      int c = b[pos] & 0xff;
+      if (c < min || c > max) {
+        return REPLACEMENT;
+      }
+      pos++;
+      cp = cp << 6 | (c & 0x3f);
+      min = 0x80;
+      max = 0xbf;
+    }
+    return cp >= 0xd800 && cp <= 0xdfff ? REPLACEMENT : cp;
+  }
+
+  /**
+   * Moves the unread bytes to the front of the buffer and reads more. Returns
+   * false at the end of input.
+   */
+  private boolean fill() throws IOException {
+    if (eof) {
+      return false;
+    }
+    int remaining = limit - pos;
+    System.arraycopy(buf, pos, buf, 0, remaining);
+    pos = 0;
+    limit = remaining;
+    int read = in.read(buf, limit, buf.length - limit);
+    if (read < 0) {
+      eof = true;
+      return false;
+    }
+    limit += read;
+    return true;
+  }
+
+  @Override
+  public void close() {
+    // the stream belongs to the caller
+  }
+}
@@ -0,0 +1,178 @@
+package io.g2tech.jton.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+import io.g2tech.jton.JtonArray;
+import io.g2tech.jton.JtonElement;
+import io.g2tech.jton.JtonObject;
+import io.g2tech.jton.JtonPrimitive;
+import io.g2tech.jton.JtonVisitor;
+
+/**
+ * Drives {@link JtonVisitor}s from a Gson reader or a parse tree.
+ */
+public final class Visitors {
+  private Visitors() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Reports the next value of {@code reader} to {@code visitor}. Like
+   * {@link Streams#parse(JsonReader)}, an empty document is reported as null.
+   *
+   * @return false if the document was empty.
+   */
+  public static boolean read(JsonReader reader, JtonVisitor visitor) throws JsonParseException {
+    boolean isEmpty = true;
+    try {
+      reader.peek();
+      isEmpty = false;
+      int depth = 0;
+      do {
+        switch (reader.peek()) {
+        case BEGIN_OBJECT:
+          reader.beginObject();
+          visitor.startObject();
+          depth++;
+          break;
+        case BEGIN_ARRAY:
+          reader.beginArray();
+          visitor.startArray();
+          depth++;
+          break;
+        case END_OBJECT:
+          reader.endObject();
+          visitor.endObject();
+          depth--;
+          break;
+        case END_ARRAY:
+          reader.endArray();
+          visitor.endArray();
+          depth--;
+          break;
+        case NAME:
+          visitor.key(reader.nextName());
+          break;
+        case STRING:
+          visitor.value(reader.nextString());
+          break;
+        case NUMBER:
+          visitor.number(reader.nextString());
+          break;
+        case BOOLEAN:
+          visitor.value(reader.nextBoolean());
+          break;
+        case NULL:
+          reader.nextNull();
+          visitor.nullValue();
+          break;
+        default:
+          throw new JsonSyntaxException("Unexpected end of document");
+        }
+      } while (depth > 0);
+      return true;
+    } catch (EOFException e) {
+      if (isEmpty) {
+        visitor.nullValue();
+        return false;
+      }
+      throw new JsonSyntaxException(e);
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    } catch (NumberFormatException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  /**
+   * Reports {@code element} and all its children to {@code visitor}. Transient
+   * primitives inside containers are skipped together with their member names,
+   * as in the printed form.
+   *
+   * @throws IllegalStateException if {@code element} is a transient primitive.
+   */
+  public static void walk(JtonElement element, JtonVisitor visitor) {
+    if (element == null || element.isJtonNull()) {
+      visitor.nullValue();
+    } else if (element instanceof JtonPrimitive) {
+      JtonPrimitive primitive = (JtonPrimitive) element;
+      if (primitive.isJtonTransient()) {
+        throw new IllegalStateException("transient type");
+      }
+      primitive(primitive, visitor);
+    } else if (element instanceof JtonArray) {
+      visitor.startArray();
+      for (JtonElement e : (JtonArray) element) {
+        if (!JtonPrinter.isSkipped(e)) {
+          walk(e, visitor);
+        }
+      }
+      visitor.endArray();
+    } else if (element instanceof JtonObject) {
+      visitor.startObject();
+      for (Map.Entry<String, JtonElement> e : ((JtonObject) element).entrySet()) {
+        JtonElement value = e.getValue();
+        if (!JtonPrinter.isSkipped(value)) {
+          visitor.key(e.getKey());
+          walk(value, visitor);
+        }
+      }
+      visitor.endObject();
+    } else {
+      throw new IllegalArgumentException("Couldn't visit " + element.getClass());
+    }
+  }
+
+  private static void primitive(JtonPrimitive primitive, JtonVisitor visitor) {
+    if (primitive.isNumber()) {
+      Number n = primitive.getAsNumber();
+      if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+        visitor.value(n.longValue());
+      } else if (n instanceof Double) {
+        visitor.value(n.doubleValue());
+      } else {
+        visitor.number(n.toString());
+      }
+    } else if (primitive.isBoolean()) {
+      visitor.value(primitive.getAsBoolean());
+    } else {
+      visitor.value(primitive.getAsString());
+    }
+  }
+
+  /**
+   * Reports the number written as {@code text} as a long if it is an integer
+   * that fits, and as a double otherwise.
+   */
+  public static void number(String text, JtonVisitor visitor) {
+    int length = text.length();
+    int i = length > 0 && text.charAt(0) == '-' ? 1 : 0;
+    boolean integral = i < length;
+    for (; i < length && integral; i++) {
+      char c = text.charAt(i);
+      integral = c >= '0' && c <= '9';
+    }
+    if (integral && length <= 18) {
+      visitor.value(Long.parseLong(text));
+      return;
+    } else if (integral) {
+      try {
+        visitor.value(Long.parseLong(text));
+        return;
+      } catch (NumberFormatException e) {
+        // too large, report as double
+      }
+    }
+    visitor.value(Double.parseDouble(text));
+  }
+}
@@ -69,7 +69,7 @@ public final class JtonTypeAdapter {
 				out.nullValue();
 			} else if (value.isJtonPrimitive()) {
 				JtonPrimitive primitive = value.getAsJtonPrimitive();
-				if (primitive.isJtonPrimitive()) {
+				if (primitive.isJtonTransient()) {
 					throw new IllegalStateException("transient type");
 				} else {
 					if (primitive.isNumber()) {
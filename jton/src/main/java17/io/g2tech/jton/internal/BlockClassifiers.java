@@ -0,0 +1,29 @@
+package io.g2tech.jton.internal;
+
+/**
+ * Selects the {@link BlockClassifier} implementation for the running JVM. This
+ * version is used on Java 17 and later. The SIMD classifier is picked when the
+ * {@code jdk.incubator.vector} module has been added to the boot layer (for
+ * example with {@code --add-modules jdk.incubator.vector}) and the platform has
+ * vectors of at least 128 bits; otherwise the scalar classifier is used.
+ * Setting the system property {@code io.g2tech.jton.vector} to {@code false}
+ * forces the scalar classifier.
+ */
+final class BlockClassifiers {
+  private BlockClassifiers() {
+    throw new UnsupportedOperationException();
+  }
+
+  static BlockClassifier select() {
+    if (Boolean.parseBoolean(System.getProperty("io.g2tech.jton.vector", "true"))
+        && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        return (BlockClassifier) Class.forName("io.g2tech.jton.internal.VectorBlockClassifier")
+            .getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+        // fall through to the scalar classifier
+      }
+    }
+    return new BlockClassifier();
+  }
+}
@@ -0,0 +1,42 @@
+package io.g2tech.jton.internal;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link BlockClassifier} that compares 16 to 64 bytes at a time using the
+ * Vector API.
+ */
+final class VectorBlockClassifier extends BlockClassifier {
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+  VectorBlockClassifier() {
+    if (SPECIES.vectorBitSize() < 128 || SPECIES.length() > 64) {
+      throw new UnsupportedOperationException(SPECIES.toString());
+    }
+  }
+
+  @Override
+  public void classify(byte[] buf, int off, long[] masks) {
+    long whitespace = 0;
+    long operator = 0;
+    long quote = 0;
+    long backslash = 0;
+    for (int i = 0; i < 64; i += SPECIES.length()) {
+      ByteVector v = ByteVector.fromArray(SPECIES, buf, off + i);
+      VectorMask<Byte> ws = v.eq((byte) ' ').or(v.eq((byte) '\t')).or(v.eq((byte) '\n'))
+          .or(v.eq((byte) '\r'));
+      VectorMask<Byte> op = v.eq((byte) '{').or(v.eq((byte) '}')).or(v.eq((byte) '['))
+          .or(v.eq((byte) ']')).or(v.eq((byte) ':')).or(v.eq((byte) ','));
+      whitespace |= ws.toLong() << i;
+      operator |= op.toLong() << i;
+      quote |= v.eq((byte) '"').toLong() << i;
+      backslash |= v.eq((byte) '\\').toLong() << i;
+    }
+    masks[WHITESPACE] = whitespace;
+    masks[OPERATOR] = operator;
+    masks[QUOTE] = quote;
+    masks[BACKSLASH] = backslash;
+  }
+}
@@ -0,0 +1,59 @@
+package io.g2tech.jton.bench;
+
+import java.lang.management.ManagementFactory;
+
+import io.g2tech.jton.JtonContext;
+import io.g2tech.jton.JtonElement;
+import io.g2tech.jton.JtonParser;
+
+/**
+ * Compares parsing and writing small messages through
+ * {@link JtonParser#parse(String)} and {@link JtonElement#toString()} with a
+ * reused {@link JtonContext}. Reports the time and the bytes allocated per
+ * message. Run with {@code java -cp ... io.g2tech.jton.bench.JtonContextBenchmark [iterations]}.
+ */
+public final class JtonContextBenchmark {
+  private static final String MESSAGE = "{\"id\":184467,\"type\":\"order.created\",\"timestamp\":\"2024-03-18T09:26:53.112Z\","
+      + "\"customer\":{\"id\":\"c-20931\",\"tier\":\"gold\",\"country\":\"DE\"},"
+      + "\"items\":[{\"sku\":\"A-1001\",\"qty\":2,\"price\":19.99},{\"sku\":\"B-2002\",\"qty\":1,\"price\":5.5}],"
+      + "\"total\":45.48,\"currency\":\"EUR\",\"express\":false,\"note\":null}";
+
+  private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+      .getThreadMXBean();
+
+  private static volatile Object sink;
+
+  private JtonContextBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    JtonContext context = new JtonContext();
+    JtonElement tree = JtonParser.parse(MESSAGE);
+    System.out.printf("message: %d bytes%n", MESSAGE.length());
+    for (int round = 0; round < 5; round++) {
+      boolean report = round >= 2;
+      run("parse(String)", iterations, report, () -> sink = JtonParser.parse(MESSAGE));
+      run("context.parse(String)", iterations, report, () -> sink = context.parse(MESSAGE));
+      run("toString()", iterations, report, () -> sink = tree.toString());
+      run("context.toString(tree)", iterations, report, () -> sink = context.toString(tree));
+      if (report) {
+        System.out.println();
+      }
+    }
+  }
+
+  private static void run(String name, int iterations, boolean report, Runnable body) {
+    long thread = Thread.currentThread().getId();
+    long allocated = THREADS.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      body.run();
+    }
+    long nanos = System.nanoTime() - start;
+    allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+    if (report) {
+      System.out.printf("%-24s %8.1f ns/op %8d B/op%n", name, (double) nanos / iterations, allocated / iterations);
+    }
+  }
+}